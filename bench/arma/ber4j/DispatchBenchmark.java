@@ -0,0 +1,97 @@
+package arma.ber4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fan-out of server messages to the handlers of a client.
+ * <ul>
+ * <li><tt>raw</tt>: {@link RawMessageHandler}s on the receiving thread, the message is never decoded</li>
+ * <li><tt>decoded</tt>: {@link MessageHandler}s on the receiving thread, the message is decoded once</li>
+ * <li><tt>dispatcher</tt>: {@link MessageHandler}s called by an {@link EventDispatcher} on another thread</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@Fork(value = 2, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DispatchBenchmark {
+
+    @Param({"raw", "decoded", "dispatcher"})
+    public String mode;
+
+    @Param({"1", "4", "16"})
+    public int handlerCount;
+
+    private DatagramChannel server;
+    private BattlEyeClient client;
+    private ExecutorService executor;
+    private ByteBuffer[] messages;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp(final Blackhole blackhole) throws IOException {
+        server = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        client = new BattlEyeClient((InetSocketAddress) server.getLocalAddress());
+        client.setAutoReconnect(false);
+        for (int i = 0; i < handlerCount; i++) {
+            if (mode.equals("raw")) {
+                client.addRawMessageHandler(new RawMessageHandler() {
+                    @Override
+                    public void onMessageReceived(ByteBuffer message) {
+                        blackhole.consume(message.get(message.position()));
+                    }
+                });
+            } else {
+                client.addMessageHandler(new MessageHandler() {
+                    @Override
+                    public void onMessageReceived(String message) {
+                        blackhole.consume(message);
+                    }
+                });
+            }
+        }
+        if (mode.equals("dispatcher")) {
+            executor = Executors.newSingleThreadExecutor();
+            client.setEventDispatcher(new EventDispatcher(executor, 4096, OverflowPolicy.Block));
+        }
+        client.connect("password");
+        client.processDatagram(Packets.login(true));
+        messages = new ByteBuffer[256];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = Packets.message(i, "Player #12 SomePlayer (127.0.0.1:2304) connected");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.disconnect();
+        server.close();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public boolean dispatch() throws IOException {
+        ByteBuffer message = messages[next++ & 0xFF];
+        message.position(0);
+        return client.processDatagram(message);
+    }
+}
@@ -0,0 +1,146 @@
+package arma.ber4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end latency against a server on the loopback interface: from sending a server message until the client's
+ * handler is called, and from executing a command until its future is completed.
+ */
+@State(Scope.Thread)
+@Fork(value = 2, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoopbackLatencyBenchmark {
+
+    @Param({"thread", "engine"})
+    public String mode;
+
+    private DatagramChannel server;
+    private Thread serverThread;
+    private volatile SocketAddress clientAddress;
+    private BattlEyeEngine engine;
+    private BattlEyeClient client;
+    private final AtomicLong receivedMessages = new AtomicLong();
+    private ByteBuffer[] messages;
+    private ByteBuffer[] responses;
+    private int messageSequenceNumber;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // encoded up front, so the server doesn't allocate while the latency is measured
+        messages = new ByteBuffer[256];
+        responses = new ByteBuffer[256];
+        for (int i = 0; i < 256; i++) {
+            messages[i] = Packets.message(i, "Player #12 SomePlayer disconnected");
+            responses[i] = Packets.commandResponse(i, "ok");
+        }
+        server = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "loopback server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        engine = mode.equals("engine") ? new BattlEyeEngine(1) : null;
+        client = new BattlEyeClient((InetSocketAddress) server.getLocalAddress(), engine);
+        client.setAutoReconnect(false);
+        client.addMessageHandler(new MessageHandler() {
+            @Override
+            public void onMessageReceived(String message) {
+                receivedMessages.incrementAndGet();
+            }
+        });
+        client.connect("password");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!client.isConnected()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("login failed");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.disconnect();
+        if (engine != null) {
+            engine.close();
+        }
+        server.close();
+    }
+
+    /**
+     * Answers logins and commands, ignores acknowledges.
+     */
+    private void serve() {
+        ByteBuffer buffer = ByteBuffer.allocate(PacketWriter.MAX_PACKET_SIZE);
+        try {
+            while (true) {
+                buffer.clear();
+                SocketAddress address = server.receive(buffer);
+                buffer.flip();
+                if (buffer.remaining() < 8) {
+                    continue;
+                }
+                byte type = buffer.get(7);
+                if (type == BattlEyePacketType.Login.getType()) {
+                    clientAddress = address;
+                    server.send(Packets.login(true), address);
+                } else if (type == BattlEyePacketType.Command.getType() && buffer.remaining() >= 9) {
+                    ByteBuffer response = responses[buffer.get(8) & 0xFF];
+                    response.position(0);
+                    server.send(response, address);
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // trial finished
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Benchmark
+    public long messageLatency() throws IOException {
+        long expected = receivedMessages.get() + 1;
+        ByteBuffer message = messages[messageSequenceNumber++ & 0xFF];
+        message.position(0);
+        server.send(message, clientAddress);
+        long count;
+        while ((count = receivedMessages.get()) < expected) {
+            // spin, parking would add the wakeup latency of this thread
+        }
+        return count;
+    }
+
+    @Benchmark
+    public String commandRoundTrip() throws ExecutionException, InterruptedException {
+        return client.execute(BattlEyeCommand.Players).get();
+    }
+}
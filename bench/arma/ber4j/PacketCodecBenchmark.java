@@ -0,0 +1,102 @@
+package arma.ber4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Encoding of command packets and decoding of server messages and command responses.
+ * <p>The decoding benchmarks run the client's receive path without handlers, including the acknowledge of every
+ * server message, which is sent to a local socket that is never read.</p>
+ */
+@State(Scope.Thread)
+@Fork(value = 2, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PacketCodecBenchmark {
+
+    @Param({"16", "512"})
+    public int payloadLength;
+
+    private String payload;
+    private ByteBuffer buffer;
+    private CharsetEncoder encoder;
+    private CRC32 crc;
+
+    private DatagramChannel server;
+    private BattlEyeClient client;
+    private ByteBuffer[] messages;
+    private ByteBuffer response;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        payload = Packets.text(payloadLength);
+        buffer = ByteBuffer.allocateDirect(PacketWriter.MAX_PACKET_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        encoder = StandardCharsets.ISO_8859_1.newEncoder();
+        crc = new CRC32();
+
+        server = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        client = new BattlEyeClient((InetSocketAddress) server.getLocalAddress());
+        client.setAutoReconnect(false);
+        client.connect("password");
+        client.processDatagram(Packets.login(true));
+        messages = new ByteBuffer[256];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = Packets.message(i, payload);
+        }
+        response = Packets.commandResponse(0, payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.disconnect();
+        server.close();
+    }
+
+    @Benchmark
+    public ByteBuffer encodeCommand() {
+        BattlEyeCodec.encode(buffer, BattlEyePacketType.Command, 1, payload, encoder, crc);
+        return buffer;
+    }
+
+    @Benchmark
+    public long checksum() {
+        ByteBuffer packet = messages[0];
+        packet.position(6);
+        crc.reset();
+        crc.update(packet);
+        packet.position(0);
+        return crc.getValue();
+    }
+
+    @Benchmark
+    public boolean decodeMessage() throws IOException {
+        // a new sequence number every time, otherwise the message is suppressed as duplicate
+        ByteBuffer message = messages[next++ & 0xFF];
+        message.position(0);
+        return client.processDatagram(message);
+    }
+
+    @Benchmark
+    public boolean decodeCommandResponse() throws IOException {
+        response.position(0);
+        return client.processDatagram(response);
+    }
+}
@@ -0,0 +1,63 @@
+package arma.ber4j;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Encodes the packets a server sends, with the client's own encoder.
+ */
+final class Packets {
+
+    private Packets() {
+    }
+
+    static ByteBuffer login(boolean success) {
+        return encode(BattlEyePacketType.Login, -1, success ? "\u0001" : "\u0000");
+    }
+
+    static ByteBuffer message(int sequenceNumber, String message) {
+        return encode(BattlEyePacketType.Acknowledge, sequenceNumber & 0xFF, message);
+    }
+
+    static ByteBuffer commandResponse(int sequenceNumber, String response) {
+        return encode(BattlEyePacketType.Command, sequenceNumber & 0xFF, response);
+    }
+
+    /**
+     * Splits the response into the given number of parts of a multi packet response.
+     */
+    static ByteBuffer[] multiPacketResponse(int sequenceNumber, String response, int packetCount) {
+        ByteBuffer[] packets = new ByteBuffer[packetCount];
+        int partLength = (response.length() + packetCount - 1) / packetCount;
+        for (int i = 0; i < packetCount; i++) {
+            String part = response.substring(Math.min(response.length(), i * partLength),
+                    Math.min(response.length(), (i + 1) * partLength));
+            packets[i] = encode(BattlEyePacketType.Command, sequenceNumber & 0xFF,
+                    "\u0000" + (char) packetCount + (char) i + part);
+        }
+        return packets;
+    }
+
+    /**
+     * Encodes one packet into an exactly sized buffer, every char of the payload is one byte.
+     */
+    static ByteBuffer encode(BattlEyePacketType type, int sequenceNumber, String payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(PacketWriter.MAX_PACKET_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        CharsetEncoder encoder = StandardCharsets.ISO_8859_1.newEncoder();
+        BattlEyeCodec.encode(buffer, type, sequenceNumber, payload, encoder, new CRC32());
+        ByteBuffer packet = ByteBuffer.allocate(buffer.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+        packet.put(buffer).flip();
+        return packet;
+    }
+
+    static String text(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+}
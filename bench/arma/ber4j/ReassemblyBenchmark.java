@@ -0,0 +1,61 @@
+package arma.ber4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reassembly of multi packet command responses, e.g. the player or ban list of a busy server.
+ */
+@State(Scope.Thread)
+@Fork(value = 2, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ReassemblyBenchmark {
+
+    @Param({"2", "8", "32"})
+    public int packetCount;
+
+    @Param({"1000"})
+    public int partLength;
+
+    @Param({"false", "true"})
+    public boolean reversed; // parts received in reverse order
+
+    private ResponseAssembler assembler;
+    private ByteBuffer[] parts;
+    private Charset charset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        assembler = new ResponseAssembler(new BufferPool(PacketWriter.MAX_PACKET_SIZE, 64, false), 5000);
+        charset = StandardCharsets.UTF_8;
+        parts = new ByteBuffer[packetCount];
+        String part = Packets.text(partLength);
+        for (int i = 0; i < packetCount; i++) {
+            parts[i] = ByteBuffer.wrap(part.getBytes(charset));
+        }
+    }
+
+    @Benchmark
+    public String reassemble() {
+        String response = null;
+        for (int i = 0; i < packetCount; i++) {
+            int index = reversed ? packetCount - 1 - i : i;
+            ByteBuffer part = parts[index];
+            part.rewind();
+            response = assembler.add(1, packetCount, index, part, charset, 0);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,30 @@
+#!/bin/sh
+# Compiles the library and the JMH benchmarks and runs them, arguments are passed to JMH, e.g.
+#   bench/run.sh                                   all benchmarks
+#   bench/run.sh Dispatch -prof gc                 matching benchmarks with allocation per operation
+#   bench/run.sh -rf json -rff out/bench/result.json
+# The JMH jars are downloaded from Maven Central into lib/jmh on the first run.
+set -e
+cd "$(dirname "$0")/.."
+
+JMH_VERSION=1.37
+LIB=lib/jmh
+OUT=out/bench
+
+fetch() {
+    if [ ! -f "$LIB/$2" ]; then
+        curl -sSfL -o "$LIB/$2" "https://repo1.maven.org/maven2/$1/$2"
+    fi
+}
+
+mkdir -p "$LIB"
+fetch org/openjdk/jmh/jmh-core/$JMH_VERSION jmh-core-$JMH_VERSION.jar
+fetch org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION jmh-generator-annprocess-$JMH_VERSION.jar
+fetch net/sf/jopt-simple/jopt-simple/5.0.4 jopt-simple-5.0.4.jar
+fetch org/apache/commons/commons-math3/3.6.1 commons-math3-3.6.1.jar
+
+CLASSPATH="lib/slf4j/*:$LIB/*"
+rm -rf "$OUT"
+mkdir -p "$OUT"
+javac -encoding UTF-8 -cp "$CLASSPATH" -d "$OUT" $(find src bench -name '*.java')
+java -cp "$OUT:$CLASSPATH" org.openjdk.jmh.Main "$@"
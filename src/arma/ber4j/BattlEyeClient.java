@@ -9,11 +9,16 @@ import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.DatagramChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.CRC32;
@@ -21,46 +26,140 @@ import java.util.zip.CRC32;
 public class BattlEyeClient {
     private static final Logger log = LoggerFactory.getLogger(BattlEyeClient.class);
 
-    private static final int MONITOR_INTERVAL = 1000;
-    private static final int TIMEOUT_DELAY = 5000;
+    private static final int TIMEOUT_DELAY = 5000; // min time without response until the connection is lost
+    private static final int MAX_TIMEOUT_DELAY = 15000;
     private static final int KEEP_ALIVE_DELAY = 30000;
-    private static final int RECONNECT_DELAY = 2000;
+    private static final int SERVER_TIMEOUT_DELAY = 45000; // the server drops clients which didn't send anything
+    private static final int RETRANSMISSIONS_UNTIL_TIMEOUT = 3;
+    private static final int MULTI_PACKET_TIMEOUT = 5000;
 
-    private final CRC32 CRC = new CRC32(); // don't share with other clients
+    // pooled buffers for the parts of multi packet responses, shared by all clients
+    private static final BufferPool PACKET_BUFFER_POOL = new BufferPool(4096, 1024, false);
 
     private final InetSocketAddress host;
+    private final BattlEyeEngine.EventLoop eventLoop; // null if this client uses its own threads
+    private final Executor clientExecutor; // the event loop, or a serial executor on the task threads
     private DatagramChannel datagramChannel;
-    private ByteBuffer sendBuffer;
+    private PacketWriter packetWriter;
     private ByteBuffer receiveBuffer;
+    private ByteBuffer receiveView; // read-only view of the receive buffer passed to RawMessageHandlers
+    private final CRC32 receiveCrc; // only used by the receiving thread
+    private Charset charset;
 
     private AtomicBoolean connected;
-    private boolean autoReconnect = true;
+    private volatile boolean autoReconnect = true;
+    private volatile ReconnectPolicy reconnectPolicy = ReconnectPolicy.DEFAULT;
+    private volatile long reconnectDelay; // delay of the last automatic reconnect, 0 after a successful login
+    private final AtomicBoolean reconnectHandshake; // an automatic reconnect waits for the login response
+    private volatile boolean reconnectScheduled; // cleared by disconnect to cancel the automatic reconnect
+    private final Object reconnectLock = new Object(); // the start and the abort of an automatic reconnect
+    private final AtomicLong reconnectAttempts;
+    private final AtomicLong successfulReconnects;
 
     private String password;
     int sequenceNumber;
     private AtomicLong lastSent;
     private AtomicLong lastReceived;
+    private final AtomicLong awaitingResponseSince; // first unanswered login or command packet, 0 if none
+    private final RttEstimator rttEstimator;
+    volatile long maxKeepAliveDelay = KEEP_ALIVE_DELAY; // shortened by tests
+    volatile boolean replaying; // set by the DatagramReplayer, which passes the datagrams instead of a receive thread
 
+    private volatile ThreadFactory threadFactory; // null for the default receive thread and the shared task threads
+    private volatile ClientMetrics metrics; // null while the metrics are disabled
+    private volatile CommandCache commandCache; // null if every command is sent
+    private volatile DatagramRecorder datagramRecorder; // null if not recording
     private Thread receiveDataThread;
-    private Thread monitorThread;
 
-    private final Queue<Command> commandQueue;
+    // one timeout per connection for the login timeout, the retransmissions, the connection timeout and the keep alive,
+    // the timer only hands the supervision to the client executor
+    private final Object supervisionLock = new Object();
+    private TimingWheel.Timeout supervisionTimeout; // guarded by supervisionLock
+    private long supervisionTime; // time of the supervision timeout, Long.MAX_VALUE if none (guarded by supervisionLock)
+    private final Runnable supervisionTask;
+
+    private final ResponseAssembler responseAssembler;
+    private final SequenceWindow messageWindow; // sequence numbers of the server messages of the current login
+
+    private final Object commandLock = new Object();
+    private final CommandQueue commandQueue; // commands waiting to be sent (guarded by commandLock)
+    private final Command[] commandSlots; // sent or queued commands by their sequence number (guarded by commandLock)
+    private int commandsInFlight; // guarded by commandLock
+    private int maxCommandsInFlight;
+    private int maxQueuedCommands;
+    private long queuedCommandTimeout; // 0 if queued commands don't expire
+    private TokenBucket tokenBucket; // null if the command rate is unlimited (guarded by commandLock)
+    private final AtomicLong expiredCommands;
+    private final AtomicLong invalidPackets;
     private boolean emptyCommandQueueOnConnect;
 
+    private volatile EventDispatcher eventDispatcher; // null if the handlers are called on the receiving thread
+
+    // copy on write, handlers may be added and removed while they are called
     private final List<ConnectionHandler> connectionHandlerList;
     private final List<CommandResponseHandler> commandResponseHandlerList;
     private final List<MessageHandler> messageHandlerList;
+    private final List<RawMessageHandler> rawMessageHandlerList;
 
     public BattlEyeClient(InetSocketAddress host) throws IOException {
+        this(host, null);
+    }
+
+    /**
+     * Creates a client which is driven by the given engine instead of its own receive thread.
+     * The engine may be <tt>null</tt>, in which case the client starts its own threads on connect.
+     */
+    public BattlEyeClient(InetSocketAddress host, BattlEyeEngine engine) throws IOException {
         this.host = host;
+        eventLoop = engine != null ? engine.nextEventLoop() : null;
+        clientExecutor = eventLoop != null ? eventLoop : new SerialExecutor(new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                ThreadFactory factory = threadFactory;
+                if (factory != null) {
+                    factory.newThread(task).start(); // runs the tasks queued until it ends
+                } else {
+                    BattlEyeThreads.TIMER_TASKS.execute(task);
+                }
+            }
+        });
+        receiveCrc = new CRC32();
         connected = new AtomicBoolean(false);
+        reconnectHandshake = new AtomicBoolean();
+        reconnectAttempts = new AtomicLong();
+        successfulReconnects = new AtomicLong();
 
-        commandQueue = new ConcurrentLinkedQueue<>();
+        commandQueue = new CommandQueue();
+        commandSlots = new Command[256];
+        maxCommandsInFlight = 1;
+        maxQueuedCommands = 128;
+        expiredCommands = new AtomicLong();
+        invalidPackets = new AtomicLong();
         emptyCommandQueueOnConnect = true;
+        responseAssembler = new ResponseAssembler(PACKET_BUFFER_POOL, MULTI_PACKET_TIMEOUT);
+        messageWindow = new SequenceWindow();
+        awaitingResponseSince = new AtomicLong();
+        rttEstimator = new RttEstimator();
+        charset = Charset.defaultCharset();
+        supervisionTime = Long.MAX_VALUE;
+        final Runnable supervise = new Runnable() {
+            @Override
+            public void run() {
+                supervise();
+            }
+        };
+        supervisionTask = new Runnable() {
+            @Override
+            public void run() {
+                // the supervision may call handlers and futures, which must not block the shared timer
+                clientExecutor.execute(supervise);
+            }
+        };
 
-        connectionHandlerList = new ArrayList<>();
-        commandResponseHandlerList = new ArrayList<>();
-        messageHandlerList = new ArrayList<>();
+        connectionHandlerList = new CopyOnWriteArrayList<>();
+        commandResponseHandlerList = new CopyOnWriteArrayList<>();
+        messageHandlerList = new CopyOnWriteArrayList<>();
+        rawMessageHandlerList = new CopyOnWriteArrayList<>();
     }
 
     public boolean connect(String password) throws IOException {
@@ -72,30 +171,46 @@ public class BattlEyeClient {
 
         datagramChannel = DatagramChannel.open();
 //        datagramChannel.configureBlocking(true); // remove?
-        datagramChannel.bind(new InetSocketAddress(host.getPort()));
+        datagramChannel.bind(new InetSocketAddress(0)); // ephemeral port, many servers may share the same port
 
-        sendBuffer = ByteBuffer.allocate(datagramChannel.getOption(StandardSocketOptions.SO_SNDBUF));
-        sendBuffer.order(ByteOrder.LITTLE_ENDIAN); // ArmA 2 server uses little endian
-
-        receiveBuffer = ByteBuffer.allocate(datagramChannel.getOption(StandardSocketOptions.SO_RCVBUF));
-        receiveBuffer.order(sendBuffer.order());
+        int receiveBufferSize = datagramChannel.getOption(StandardSocketOptions.SO_RCVBUF);
+        if (receiveBuffer == null || receiveBuffer.capacity() != receiveBufferSize) {
+            // kept for reconnects
+            receiveBuffer = ByteBuffer.allocate(receiveBufferSize);
+            receiveBuffer.order(ByteOrder.LITTLE_ENDIAN); // ArmA 2 server uses little endian
+            receiveView = receiveBuffer.asReadOnlyBuffer();
+        }
 
-        sequenceNumber = -1;
         long time = System.currentTimeMillis();
         lastSent = new AtomicLong(time);
         lastReceived = new AtomicLong(time);
+        awaitingResponseSince.set(0);
+        packetWriter = new PacketWriter(datagramChannel, charset, lastSent);
+        packetWriter.setRecorder(datagramRecorder);
 
-        if (emptyCommandQueueOnConnect) {
-            commandQueue.clear();
+        List<Command> cleared = null;
+        synchronized (commandLock) {
+            sequenceNumber = -1;
+            if (emptyCommandQueueOnConnect) {
+                cleared = clearCommands();
+            }
+        }
+        if (cleared != null) {
+            commandsCleared(cleared, "command queue emptied on connect");
         }
+        responseAssembler.clear();
+        messageWindow.reset();
 
         datagramChannel.connect(host);
 
-        startReceivingData();
-        startMonitorThread();
+        if (eventLoop != null) {
+            datagramChannel.configureBlocking(false);
+            eventLoop.register(this, datagramChannel);
+        } else if (!replaying) {
+            startReceivingData();
+        }
 
-        createPacket(BattlEyePacketType.Login, -1, password);
-        sendPacket();
+        sendPacket(BattlEyePacketType.Login, -1, password);
 
         return true;
     }
@@ -108,7 +223,22 @@ public class BattlEyeClient {
         return datagramChannel != null && datagramChannel.isConnected() && connected.get();
     }
 
+    /**
+     * Disconnects from the server and cancels a scheduled automatic reconnect. An automatic reconnect which waits for
+     * the login response is aborted without calling the connection handlers, they were told about the lost
+     * connection already.
+     */
     public void disconnect() throws IOException {
+        synchronized (reconnectLock) {
+            reconnectScheduled = false;
+            if (!isConnected() && reconnectHandshake.get()) {
+                log.trace("reconnect to {} aborted", host);
+                cancelSupervision();
+                closeChannel();
+                finishReconnectHandshake();
+                return;
+            }
+        }
         if (isConnected()) {
             doDisconnect(DisconnectType.Manual);
         }
@@ -117,10 +247,23 @@ public class BattlEyeClient {
     private void doDisconnect(DisconnectType disconnectType) throws IOException {
         log.trace("disconnecting from {}", host);
         connected.set(false);
-        if (monitorThread != null) {
-            monitorThread.interrupt();
-            monitorThread = null;
+        cancelSupervision();
+        closeChannel();
+        responseAssembler.clear();
+        finishReconnectHandshake();
+        requeueCommands(disconnectType);
+        EventDispatcher dispatcher = eventDispatcher;
+        if (dispatcher != null) {
+            dispatcher.disconnected(this, disconnectType);
+        } else {
+            fireDisconnected(disconnectType);
         }
+        if (disconnectType == DisconnectType.ConnectionLost && autoReconnect) {
+            scheduleReconnect();
+        }
+    }
+
+    private void closeChannel() throws IOException {
         if (receiveDataThread != null) {
             receiveDataThread.interrupt();
             receiveDataThread = null;
@@ -130,27 +273,116 @@ public class BattlEyeClient {
             datagramChannel.close();
             datagramChannel = null;
         }
-        sendBuffer = null;
-        receiveBuffer = null;
-        // fire ConnectionHandler.onDisconnected
-        for (ConnectionHandler connectionHandler : connectionHandlerList) {
-            connectionHandler.onDisconnected(disconnectType);
-        }
-        if (disconnectType == DisconnectType.ConnectionLost && autoReconnect) {
-            // wait before reconnect
-            new Thread() {
-                @Override
-                public void run() {
-                    try {
-                        Thread.sleep(RECONNECT_DELAY);
-                        reconnect();
-                    } catch (InterruptedException e) {
-                        log.warn("auto reconnect thread interrupted");
-                    } catch (IOException e) {
-                        log.error("error while trying to reconnect", e);
+        packetWriter = null;
+    }
+
+    private void scheduleReconnect() {
+        reconnectScheduled = true;
+        long delay = reconnectPolicy.nextDelay(reconnectDelay);
+        reconnectDelay = delay;
+        log.debug("reconnect to {} in {} ms", host, delay);
+        // wait without blocking a thread, then wait for a free handshake
+        TimingWheel.SHARED.schedule(new Runnable() {
+            @Override
+            public void run() {
+                ReconnectPolicy.startHandshake(new Runnable() {
+                    @Override
+                    public void run() {
+                        runOnClientThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                autoReconnect();
+                            }
+                        });
                     }
-                }
-            }.start();
+                });
+            }
+        }, delay);
+    }
+
+    // must hold a handshake of the ReconnectPolicy
+    private void autoReconnect() {
+        // a concurrent disconnect either cancels the reconnect or aborts it after the login was sent
+        synchronized (reconnectLock) {
+            if (!autoReconnect || !reconnectScheduled || isConnected()) {
+                // disabled, disconnected or reconnected manually in the meantime
+                ReconnectPolicy.handshakeFinished();
+                return;
+            }
+            reconnectScheduled = false;
+            reconnectHandshake.set(true);
+            reconnectAttempts.incrementAndGet();
+            try {
+                reconnect();
+            } catch (IOException e) {
+                log.error("error while trying to reconnect", e);
+                finishReconnectHandshake();
+                scheduleReconnect();
+            }
+        }
+    }
+
+    private void finishReconnectHandshake() {
+        if (reconnectHandshake.compareAndSet(true, false)) {
+            ReconnectPolicy.handshakeFinished();
+        }
+    }
+
+    // runs the task on the event loop of this client, or after the other tasks of this client on a timer task thread
+    private void runOnClientThread(Runnable task) {
+        clientExecutor.execute(task);
+    }
+
+    public ReconnectPolicy getReconnectPolicy() {
+        return reconnectPolicy;
+    }
+
+    /**
+     * Sets the delays of the automatic reconnect, defaults to {@link ReconnectPolicy#DEFAULT}.
+     */
+    public void setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+        if (reconnectPolicy == null) {
+            throw new NullPointerException("reconnectPolicy");
+        }
+        this.reconnectPolicy = reconnectPolicy;
+    }
+
+    /**
+     * @return the number of automatic reconnect attempts
+     */
+    public long getReconnectAttempts() {
+        return reconnectAttempts.get();
+    }
+
+    /**
+     * @return the number of automatic reconnect attempts which logged in successfully
+     */
+    public long getSuccessfulReconnects() {
+        return successfulReconnects.get();
+    }
+
+    /**
+     * @return the delay in milliseconds before the last automatic reconnect attempt, 0 if the client logged in since
+     */
+    public long getReconnectDelay() {
+        return reconnectDelay;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Sets the charset used to encode commands and to decode responses and messages, defaults to the platform charset.
+     */
+    public void setCharset(Charset charset) {
+        if (charset == null) {
+            throw new NullPointerException("charset");
+        }
+        this.charset = charset;
+        PacketWriter writer = packetWriter;
+        if (writer != null) {
+            writer.setCharset(charset);
         }
     }
 
@@ -164,53 +396,509 @@ public class BattlEyeClient {
 
     public int sendCommand(String command) throws IOException {
         log.debug("sendCommand: {}", command);
-        if (!isConnected()) {
-            return -1;
+        return enqueueCommand(new Command(command, null));
+    }
+
+    public int sendCommand(BattlEyeCommand command, String... params) throws IOException {
+        return sendCommand(buildCommand(command, params));
+    }
+
+    /**
+     * Sends a command to the server.
+     * <p>The returned future completes with the (possibly empty) response of the server. It completes exceptionally
+     * if the client is not connected, if the command queue is full or if the command is discarded because the
+     * connection was closed before the response was received. The future completes on the receive thread, dependent
+     * actions which block should use one of the async methods of the future.</p>
+     * <p>If a {@link CommandCache} is set, read-only commands may be answered with the response of an identical
+     * command.</p>
+     */
+    public CompletableFuture<String> execute(String command) {
+        CommandCache cache = commandCache;
+        if (cache != null) {
+            return cache.execute(command, this);
         }
-        Command cmd = new Command(command);
-        if (commandQueue.offer(cmd)) {
-            cmd.id = getNextSequenceNumber();
-        } else {
-            log.debug("command queue is full");
-            return -2;
+        return executeUncached(command);
+    }
+
+    /**
+     * Sends a command with the given priority instead of the default priority of the command, bypassing the
+     * {@link CommandCache}.
+     *
+     * @see #execute(String)
+     */
+    public CompletableFuture<String> execute(String command, CommandPriority priority) {
+        if (priority == null) {
+            throw new NullPointerException("priority");
         }
-        if (commandQueue.size() == 1) {
-            // enqueue and send this command immediately
-            createPacket(BattlEyePacketType.Command, cmd.id, command);
-            sendPacket();
-        } else {
-            // only enqueue this command
-            log.trace("command enqueued: {}", cmd);
+        return executeUncached(command, priority);
+    }
+
+    CompletableFuture<String> executeUncached(String command) {
+        return executeUncached(command, null);
+    }
+
+    private CompletableFuture<String> executeUncached(String command, CommandPriority priority) {
+        log.debug("execute: {}", command);
+        CompletableFuture<String> future = new CompletableFuture<>();
+        try {
+            Command queued = new Command(command, future);
+            queued.priority = priority;
+            int id = enqueueCommand(queued);
+            if (id == -1) {
+                future.completeExceptionally(new IOException("not connected"));
+            } else if (id == -2) {
+                future.completeExceptionally(new IOException("command queue is full"));
+            }
+        } catch (IOException e) {
+            future.completeExceptionally(e);
         }
-        return cmd.id;
+        return future;
     }
 
-    public int sendCommand(BattlEyeCommand command, String... params) throws IOException {
+    public CompletableFuture<String> execute(BattlEyeCommand command, String... params) {
+        return execute(buildCommand(command, params));
+    }
+
+    /**
+     * Sends a command to the server and passes its response to the handler part by part as the packets arrive.
+     * <p>The response is never merged or decoded as a whole and is not passed to the CommandResponseHandlers, so
+     * large responses like the ban list don't have to be kept in memory. The returned future completes after the
+     * last part was handled, or exceptionally like the future returned by {@link #execute(String)}.</p>
+     */
+    public CompletableFuture<Void> stream(String command, ResponsePartHandler handler) {
+        log.debug("stream: {}", command);
+        if (handler == null) {
+            throw new NullPointerException("handler");
+        }
+        CompletableFuture<String> future = new CompletableFuture<>();
+        try {
+            int id = enqueueCommand(new Command(command, future, handler));
+            if (id == -1) {
+                future.completeExceptionally(new IOException("not connected"));
+            } else if (id == -2) {
+                future.completeExceptionally(new IOException("command queue is full"));
+            }
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future.thenApply(response -> null);
+    }
+
+    public CompletableFuture<Void> stream(BattlEyeCommand command, ResponsePartHandler handler, String... params) {
+        return stream(buildCommand(command, params), handler);
+    }
+
+    static String buildCommand(BattlEyeCommand command, String... params) {
         StringBuilder commandBuilder = new StringBuilder(command.getCommandString());
         for (String param : params) {
             commandBuilder.append(' ');
             commandBuilder.append(param);
         }
-        return sendCommand(commandBuilder.toString());
+        return commandBuilder.toString();
+    }
+
+    private int enqueueCommand(Command command) throws IOException {
+        if (!isConnected()) {
+            return -1;
+        }
+        if (command.priority == null) {
+            command.priority = CommandPriority.of(command.command);
+        }
+        synchronized (commandLock) {
+            // keep alive packets are never rejected
+            int id = commandQueue.size() < maxQueuedCommands || command.isKeepAlive() ? getNextSequenceNumber() : -1;
+            if (id == -1) {
+                log.debug("command queue is full");
+                return -2;
+            }
+            command.id = id;
+            command.expiry = queuedCommandTimeout > 0 && !command.isKeepAlive()
+                    ? System.currentTimeMillis() + queuedCommandTimeout : Long.MAX_VALUE;
+            commandSlots[id] = command;
+            commandQueue.offer(command);
+        }
+        log.trace("command enqueued: {}", command);
+        CommandCache cache = commandCache;
+        if (cache != null) {
+            cache.commandSent(command.command);
+        }
+        sendQueuedCommands();
+        return command.id;
+    }
+
+    /**
+     * Sends queued commands by priority while the max commands in flight and the rate limit allow it, and fails the
+     * commands which expired in the queue.
+     */
+    private void sendQueuedCommands() throws IOException {
+        List<Command> expired = null;
+        long wakeup;
+        while (true) {
+            Command command;
+            synchronized (commandLock) {
+                long time = System.currentTimeMillis();
+                expired = commandQueue.removeExpired(time, commandSlots, expired);
+                if (commandsInFlight >= maxCommandsInFlight || commandQueue.isEmpty()) {
+                    wakeup = commandQueue.nextExpiry();
+                    break;
+                }
+                TokenBucket bucket = tokenBucket;
+                // keep alive packets don't take a token, the rate limit must not cost the connection
+                if (bucket != null && !commandQueue.peek().isKeepAlive() && !bucket.tryAcquire(time)) {
+                    wakeup = Math.min(bucket.nextTokenTime(time), commandQueue.nextExpiry());
+                    break;
+                }
+                command = commandQueue.poll();
+                commandsInFlight++;
+            }
+            log.trace("send enqueued command: {}", command);
+            sendCommandPacket(command);
+        }
+        if (expired != null) {
+            commandsExpired(expired);
+        }
+        if (wakeup != Long.MAX_VALUE) {
+            superviseAt(wakeup);
+        }
     }
 
-    private void sendNextCommand(int id) throws IOException {
-        Command command = commandQueue.poll();
+    private void commandsExpired(List<Command> expired) {
+        IOException e = new IOException("command expired in the queue");
+        for (Command command : expired) {
+            log.debug("command expired in the queue: {}", command);
+            expiredCommands.incrementAndGet();
+            if (command.future != null) {
+                command.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void sendCommandPacket(Command command) throws IOException {
+        long time = System.currentTimeMillis();
+        long deadline;
+        ClientMetrics m = metrics;
+        synchronized (commandLock) {
+            command.transmissions++;
+            command.sentTime = time;
+            if (m != null) {
+                if (command.transmissions == 1) {
+                    command.sentNanos = System.nanoTime();
+                    m.commandsSent.increment();
+                } else {
+                    m.retransmissions.increment();
+                }
+            }
+            deadline = time + rttEstimator.getRto(command.transmissions);
+            command.deadline = deadline;
+        }
+        sendPacket(BattlEyePacketType.Command, command.id, command.command);
+        superviseAt(deadline);
+    }
+
+    /**
+     * Sends the commands again which didn't receive a response within the retransmission timeout.
+     *
+     * @return the time of the next retransmission, or <tt>Long.MAX_VALUE</tt> if there are no sent commands
+     */
+    long retransmitCommands(long time) throws IOException {
+        if (!isConnected()) {
+            return Long.MAX_VALUE;
+        }
+        List<Command> retransmit = null;
+        long next = Long.MAX_VALUE;
+        synchronized (commandLock) {
+            for (Command command : commandSlots) {
+                if (command == null || command.transmissions == 0) {
+                    continue; // not sent yet
+                }
+                if (command.deadline <= time) {
+                    if (retransmit == null) {
+                        retransmit = new ArrayList<>();
+                    }
+                    retransmit.add(command);
+                } else if (command.deadline < next) {
+                    next = command.deadline;
+                }
+            }
+        }
+        if (retransmit != null) {
+            for (Command command : retransmit) {
+                log.debug("retransmit command: {}", command);
+                sendCommandPacket(command);
+                next = Math.min(next, command.deadline);
+            }
+        }
+        return next;
+    }
+
+    // a part of a multi packet response was received, don't retransmit while the response is still arriving
+    private void extendCommandDeadline(int id, long time) {
+        synchronized (commandLock) {
+            Command command = commandSlots[id];
+            if (command != null && command.transmissions > 0) {
+                command.deadline = Math.max(command.deadline, time + rttEstimator.getRto(command.transmissions));
+            }
+        }
+    }
+
+    // single packet response, only decoded if anyone is interested in it
+    private void commandResponseReceived(int id, ByteBuffer payload) throws IOException {
+        Command command = removeCommand(id);
         if (command == null) {
-            log.error("command queue empty");
+            commandResponseReceived(id, null, null);
             return;
         }
-        if (command.id != id) {
-            log.warn("invalid command id");
+        if (command.transmissions == 1) {
+            rttEstimator.sample(lastReceived.get() - command.sentTime);
         }
-        if (!commandQueue.isEmpty()) {
-            command = commandQueue.peek();
-            log.trace("send enqueued command: {}", command);
-            createPacket(BattlEyePacketType.Command, command.id, command.command);
-            sendPacket();
+        if (command.partHandler != null) {
+            if (payload.hasRemaining()) {
+                receiveView.limit(payload.limit());
+                receiveView.position(payload.position());
+                command.partHandler.onResponsePart(receiveView);
+            }
+            commandResponseReceived(id, command, null);
+            return;
+        }
+        String commandResponse = null;
+        if (!commandResponseHandlerList.isEmpty() || command.future != null) {
+            commandResponse = decode(payload);
+        }
+        commandResponseReceived(id, command, commandResponse);
+    }
+
+    // returns the sent command with the given id if its response is streamed
+    private Command getStreamedCommand(int id) {
+        synchronized (commandLock) {
+            Command command = commandSlots[id];
+            return command != null && command.partHandler != null && command.transmissions > 0 ? command : null;
+        }
+    }
+
+    private void commandResponseReceived(int id, Command command, String commandResponse) throws IOException {
+        ClientMetrics m = metrics;
+        if (m != null && command != null) {
+            m.commandResponses.increment();
+            if (command.transmissions == 1 && command.sentNanos != 0) {
+                m.commandRtt.recordSince(command.sentNanos);
+            }
+        }
+        if (command == null) {
+            // the answer to another transmission of a command which was answered already, the handlers saw it
+            log.trace("command response without pending command dropped: {}", id);
+            return;
+        }
+        if (command.partHandler != null) {
+            command.partHandler.onResponseComplete();
+            command.future.complete(null);
+        } else if (commandResponse != null && !command.isKeepAlive()) {
+            fireCommandResponseHandler(commandResponse, id);
+            if (command.future != null) {
+                command.future.complete(commandResponse);
+            }
+        }
+        sendQueuedCommands();
+    }
+
+    // returns null for a queued command, a late response to a previous command with the same id must not complete it
+    private Command removeCommand(int id) {
+        synchronized (commandLock) {
+            Command command = commandSlots[id];
+            if (command == null || command.transmissions == 0) {
+                return null;
+            }
+            commandSlots[id] = null;
+            commandsInFlight--;
+            return command;
+        }
+    }
+
+    // moves sent commands back into the queue, they are sent again after reconnecting
+    private void requeueCommands(DisconnectType disconnectType) {
+        List<Command> cleared = null;
+        synchronized (commandLock) {
+            if (emptyCommandQueueOnConnect) {
+                cleared = clearCommands();
+            } else {
+                List<Command> queued = commandQueue.drain();
+                for (Command command : commandSlots) {
+                    if (command != null && !queued.contains(command)) {
+                        commandQueue.offer(command); // sent before the queued commands of the same priority
+                    }
+                }
+                for (Command command : queued) {
+                    commandQueue.offer(command);
+                }
+                for (Command command : commandSlots) {
+                    if (command != null) {
+                        command.transmissions = 0;
+                        command.sentNanos = 0;
+                    }
+                }
+                commandsInFlight = 0;
+            }
+        }
+        if (cleared != null) {
+            commandsCleared(cleared, "disconnected: " + disconnectType);
         }
     }
 
+    // must hold commandLock, the futures are failed by commandsCleared after releasing it
+    private List<Command> clearCommands() {
+        List<Command> cleared = new ArrayList<>();
+        for (int i = 0; i < commandSlots.length; i++) {
+            Command command = commandSlots[i];
+            if (command == null) {
+                continue;
+            }
+            commandSlots[i] = null;
+            responseAssembler.remove(i);
+            if (command.future != null) {
+                cleared.add(command);
+            }
+        }
+        commandQueue.clear();
+        commandsInFlight = 0;
+        return cleared;
+    }
+
+    private void commandsCleared(List<Command> cleared, String reason) {
+        if (cleared.isEmpty()) {
+            return;
+        }
+        IOException e = new IOException(reason);
+        for (Command command : cleared) {
+            command.future.completeExceptionally(e);
+        }
+    }
+
+    public int getMaxCommandsInFlight() {
+        return maxCommandsInFlight;
+    }
+
+    /**
+     * Sets the number of commands which are sent to the server without waiting for the responses of the previous
+     * commands. Defaults to 1, which sends the queued commands one after another.
+     */
+    public void setMaxCommandsInFlight(int maxCommandsInFlight) throws IOException {
+        if (maxCommandsInFlight < 1 || maxCommandsInFlight > 255) {
+            throw new IllegalArgumentException("maxCommandsInFlight must be between 1 and 255");
+        }
+        this.maxCommandsInFlight = maxCommandsInFlight;
+        if (isConnected()) {
+            sendQueuedCommands();
+        }
+    }
+
+    public int getMaxQueuedCommands() {
+        return maxQueuedCommands;
+    }
+
+    /**
+     * Sets the number of commands which may wait to be sent, defaults to 128. Further commands are rejected as long as
+     * the queue is full, {@link #sendCommand(String)} returns -2 and the future of {@link #execute(String)} completes
+     * exceptionally.
+     */
+    public void setMaxQueuedCommands(int maxQueuedCommands) {
+        if (maxQueuedCommands < 1 || maxQueuedCommands > 255) {
+            throw new IllegalArgumentException("maxQueuedCommands must be between 1 and 255");
+        }
+        synchronized (commandLock) {
+            this.maxQueuedCommands = maxQueuedCommands;
+        }
+    }
+
+    public long getQueuedCommandTimeout() {
+        return queuedCommandTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds after which a command which is still waiting to be sent expires, its future
+     * completes exceptionally. Defaults to 0, queued commands don't expire. Commands which were sent and keep alive
+     * packets are not affected.
+     */
+    public void setQueuedCommandTimeout(long queuedCommandTimeout) {
+        if (queuedCommandTimeout < 0) {
+            throw new IllegalArgumentException("queuedCommandTimeout must not be negative");
+        }
+        synchronized (commandLock) {
+            this.queuedCommandTimeout = queuedCommandTimeout;
+        }
+    }
+
+    /**
+     * @return the number of commands which expired in the queue
+     */
+    public long getExpiredCommands() {
+        return expiredCommands.get();
+    }
+
+    /**
+     * @return the max number of commands sent per second, 0 if unlimited
+     */
+    public double getCommandRateLimit() {
+        synchronized (commandLock) {
+            return tokenBucket != null ? tokenBucket.getCommandsPerSecond() : 0;
+        }
+    }
+
+    /**
+     * Limits the rate of sent commands with a token bucket, so bursts of commands don't flood the server. Defaults to
+     * unlimited. Retransmissions and keep alive packets are not limited.
+     *
+     * @param commandsPerSecond the average number of commands per second, 0 for unlimited
+     * @param burst             the number of commands which may be sent at once after a quiet period
+     */
+    public void setCommandRateLimit(double commandsPerSecond, int burst) throws IOException {
+        if (commandsPerSecond < 0 || (commandsPerSecond > 0 && burst < 1)) {
+            throw new IllegalArgumentException("commandsPerSecond must not be negative and burst must be positive");
+        }
+        synchronized (commandLock) {
+            tokenBucket = commandsPerSecond > 0 ? new TokenBucket(commandsPerSecond, burst, System.currentTimeMillis()) : null;
+        }
+        if (isConnected()) {
+            sendQueuedCommands();
+        }
+    }
+
+    /**
+     * @return the smoothed round trip time of commands in milliseconds, or -1 if no round trip was measured yet
+     */
+    public long getRoundTripTime() {
+        return rttEstimator.getSmoothedRtt();
+    }
+
+    /**
+     * @return the current timeout in milliseconds after which unanswered commands are sent again
+     */
+    public long getRetransmissionTimeout() {
+        return rttEstimator.getRto();
+    }
+
+    /**
+     * @return the time in milliseconds without a response until the connection is considered lost, at least
+     * {@value #TIMEOUT_DELAY} ms, longer if the round trip time doesn't allow {@value #RETRANSMISSIONS_UNTIL_TIMEOUT}
+     * retransmissions within that time
+     */
+    public long getConnectionTimeout() {
+        if (rttEstimator.getSmoothedRtt() < 0) {
+            return TIMEOUT_DELAY; // nothing measured yet
+        }
+        long timeout = 0;
+        for (int transmissions = 1; transmissions <= RETRANSMISSIONS_UNTIL_TIMEOUT + 1; transmissions++) {
+            timeout += rttEstimator.getRto(transmissions);
+        }
+        return Math.min(MAX_TIMEOUT_DELAY, Math.max(TIMEOUT_DELAY, timeout));
+    }
+
+    /**
+     * @return the idle time in milliseconds after which a keep alive packet is sent, shortened on slow connections
+     * so the keep alive and its retransmissions reach the server before it drops this client
+     */
+    public long getKeepAliveDelay() {
+        return Math.min(maxKeepAliveDelay, SERVER_TIMEOUT_DELAY - 2 * getConnectionTimeout());
+    }
+
     public boolean isEmptyCommandQueueOnConnect() {
         return emptyCommandQueueOnConnect;
     }
@@ -267,119 +955,302 @@ public class BattlEyeClient {
         messageHandlerList.clear();
     }
 
+    public List<RawMessageHandler> getAllRawMessageHandlers() {
+        return rawMessageHandlerList;
+    }
+
+    public boolean addRawMessageHandler(RawMessageHandler handler) {
+        return rawMessageHandlerList.add(handler);
+    }
+
+    public boolean removeRawMessageHandler(RawMessageHandler handler) {
+        return rawMessageHandlerList.remove(handler);
+    }
+
+    public void removeAllRawMessageHandlers() {
+        rawMessageHandlerList.clear();
+    }
+
+    public EventDispatcher getEventDispatcher() {
+        return eventDispatcher;
+    }
+
+    /**
+     * Sets the dispatcher which calls the connection, command response and message handlers, or <tt>null</tt> to
+     * call them on the receiving thread (default). A dispatcher may be shared by many clients.
+     */
+    public void setEventDispatcher(EventDispatcher eventDispatcher) {
+        this.eventDispatcher = eventDispatcher;
+    }
+
+    /**
+     * Creates a publisher of the server messages, which is registered as a message handler while it has subscribers.
+     *
+     * @param bufferSize     the max number of messages per subscriber which were not requested yet
+     * @param overflowPolicy {@link OverflowPolicy#Block} to wait for the subscribers (lossless), or one of the
+     *                       policies which drop messages (lossy)
+     * @see EventPublisher
+     */
+    public EventPublisher<String> messagePublisher(int bufferSize, OverflowPolicy overflowPolicy) {
+        return new EventPublisher<String>(bufferSize, overflowPolicy) {
+            private final MessageHandler handler = new MessageHandler() {
+                @Override
+                public void onMessageReceived(String message) {
+                    publish(message);
+                }
+            };
+
+            @Override
+            void attach() {
+                addMessageHandler(handler);
+            }
+
+            @Override
+            void detach() {
+                removeMessageHandler(handler);
+            }
+        };
+    }
+
+    /**
+     * Creates a publisher of the command responses, which is registered as a command response handler while it has
+     * subscribers.
+     *
+     * @see #messagePublisher(int, OverflowPolicy)
+     */
+    public EventPublisher<CommandResponse> commandResponsePublisher(int bufferSize, OverflowPolicy overflowPolicy) {
+        return new EventPublisher<CommandResponse>(bufferSize, overflowPolicy) {
+            private final CommandResponseHandler handler = new CommandResponseHandler() {
+                @Override
+                public void onCommandResponseReceived(String commandResponse, int id) {
+                    publish(new CommandResponse(commandResponse, id));
+                }
+            };
+
+            @Override
+            void attach() {
+                addCommandResponseHandler(handler);
+            }
+
+            @Override
+            void detach() {
+                removeCommandResponseHandler(handler);
+            }
+        };
+    }
+
+    /**
+     * Creates a publisher of the connects and disconnects, which is registered as a connection handler while it has
+     * subscribers.
+     *
+     * @see #messagePublisher(int, OverflowPolicy)
+     */
+    public EventPublisher<ConnectionEvent> connectionEventPublisher(int bufferSize, OverflowPolicy overflowPolicy) {
+        return new EventPublisher<ConnectionEvent>(bufferSize, overflowPolicy) {
+            private final ConnectionHandler handler = new ConnectionHandler() {
+                @Override
+                public void onConnected() {
+                    publish(new ConnectionEvent(null));
+                }
+
+                @Override
+                public void onDisconnected(DisconnectType disconnectType) {
+                    publish(new ConnectionEvent(disconnectType));
+                }
+            };
+
+            @Override
+            void attach() {
+                addConnectionHandler(handler);
+            }
+
+            @Override
+            void detach() {
+                removeConnectionHandler(handler);
+            }
+        };
+    }
+
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Sets the factory of the threads of this client, or <tt>null</tt> for a platform receive thread and the shared
+     * task threads (default). The factory creates the receive thread which reads the datagrams and calls the handlers
+     * with the next connect, and a thread for every burst of monitoring work, like the retransmissions, the keep
+     * alives, the connection timeout and the reconnects, which may call handlers and futures as well. Use
+     * {@link BattlEyeThreads#virtualThreadFactory(String)} to run all of them on virtual threads on Java 21 and later.
+     * The shared timer thread of all clients only hands the work over. Ignored by clients driven by an engine, which
+     * run on its event loops.
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    public CommandCache getCommandCache() {
+        return commandCache;
+    }
+
+    /**
+     * Sets the cache which shares the responses of read-only commands executed by {@link #execute(String)}, or
+     * <tt>null</tt> to send every command (default). A cache must only be used by one client.
+     */
+    public void setCommandCache(CommandCache commandCache) {
+        this.commandCache = commandCache;
+    }
+
+    public DatagramRecorder getDatagramRecorder() {
+        return datagramRecorder;
+    }
+
+    // see DatagramRecorder.attach
+    void setDatagramRecorder(DatagramRecorder datagramRecorder) {
+        this.datagramRecorder = datagramRecorder;
+        PacketWriter writer = packetWriter;
+        if (writer != null) {
+            writer.setRecorder(datagramRecorder);
+        }
+    }
+
+    public boolean isMetricsEnabled() {
+        return metrics != null;
+    }
+
+    /**
+     * Enables or disables the counters and latency histograms of this client, disabled by default. Enabling starts
+     * with zeroed metrics, disabled metrics cost a single volatile read per packet.
+     *
+     * @see MetricsRegistry
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        if (metricsEnabled) {
+            if (metrics == null) {
+                metrics = new ClientMetrics();
+            }
+        } else {
+            metrics = null;
+        }
+    }
+
+    /**
+     * @return the current metrics, or <tt>null</tt> if they are disabled
+     */
+    public MetricsSnapshot getMetricsSnapshot() {
+        ClientMetrics m = metrics;
+        if (m == null) {
+            return null;
+        }
+        int queueDepth;
+        int inFlight;
+        synchronized (commandLock) {
+            queueDepth = commandQueue.size();
+            inFlight = commandsInFlight;
+        }
+        return new MetricsSnapshot(this, m, queueDepth, inFlight);
+    }
+
     private void fireCommandResponseHandler(String commandResponse, int id) {
+        if (commandResponseHandlerList.isEmpty()) {
+            return;
+        }
+        EventDispatcher dispatcher = eventDispatcher;
+        if (dispatcher != null) {
+            dispatcher.commandResponse(this, commandResponse, id);
+        } else {
+            fireCommandResponse(commandResponse, id);
+        }
+    }
+
+    void fireConnected() {
+        for (ConnectionHandler connectionHandler : connectionHandlerList) {
+            connectionHandler.onConnected();
+        }
+    }
+
+    void fireDisconnected(DisconnectType disconnectType) {
+        for (ConnectionHandler connectionHandler : connectionHandlerList) {
+            connectionHandler.onDisconnected(disconnectType);
+        }
+    }
+
+    void fireCommandResponse(String commandResponse, int id) {
+        ClientMetrics m = metrics;
+        long start = m != null ? System.nanoTime() : 0;
         // also send empty command response
         for (CommandResponseHandler commandResponseHandler : commandResponseHandlerList) {
             commandResponseHandler.onCommandResponseReceived(commandResponse, id);
         }
+        if (m != null) {
+            m.handlerTime.recordSince(start);
+        }
     }
 
-    private void fireMessageHandler(String message) {
-        if (message == null || message.isEmpty()) {
-            return;
-        }
+    void fireMessage(String message) {
+        ClientMetrics m = metrics;
+        long start = m != null ? System.nanoTime() : 0;
         for (MessageHandler messageHandler : messageHandlerList) {
             messageHandler.onMessageReceived(message);
         }
+        if (m != null) {
+            m.handlerTime.recordSince(start);
+        }
+    }
+
+    private void fireMessageHandler(int sequenceNumber, ByteBuffer payload) {
+        if (!payload.hasRemaining()) {
+            return;
+        }
+        ClientMetrics m = metrics;
+        if (m != null) {
+            m.messageReceived(lastReceived.get());
+        }
+        if (!rawMessageHandlerList.isEmpty()) {
+            long start = m != null ? System.nanoTime() : 0;
+            int position = payload.position();
+            int limit = payload.limit();
+            for (RawMessageHandler rawMessageHandler : rawMessageHandlerList) {
+                receiveView.limit(limit);
+                receiveView.position(position); // reset, the previous handler may have consumed the view
+                rawMessageHandler.onMessageReceived(sequenceNumber, receiveView);
+            }
+            if (m != null) {
+                m.handlerTime.recordSince(start);
+            }
+        }
+        if (!messageHandlerList.isEmpty()) {
+            String message = decode(payload);
+            EventDispatcher dispatcher = eventDispatcher;
+            if (dispatcher != null) {
+                dispatcher.message(this, message);
+            } else {
+                fireMessage(message);
+            }
+        }
+    }
+
+    private String decode(ByteBuffer payload) {
+        return new String(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining(), charset);
     }
 
     private void startReceivingData() {
-        receiveDataThread = new Thread("ber4j receive data thread") {
+        Runnable receiveData = new Runnable() {
             @Override
             public void run() {
                 log.trace("start receive data thread");
-                String[] multiPacketCache = null; // use separate cache for every sequence number? possible overlap?
-                int multiPacketCounter = 0;
+                Thread thread = Thread.currentThread();
                 try {
-                    while (!isInterrupted()) {
+                    while (!thread.isInterrupted()) {
                         if (!readPacket() || receiveBuffer.remaining() < 2) {
-                            log.warn("invalid data received");
+                            packetRejected();
                             continue;
                         }
-                        if (this != receiveDataThread) {
+                        if (thread != receiveDataThread) {
                             log.debug("instance thread changed (receive data thread)");
                             break; // exit thread
                         }
-                        byte packetType = receiveBuffer.get();
-                        switch (packetType) {
-                            case 0x00: {
-                                // login response
-                                // 0x00 | (0x01 (successfully logged in) OR 0x00 (failed))
-                                if (receiveBuffer.remaining() != 1) {
-                                    log.error("unexpected login response received");
-                                    doDisconnect(DisconnectType.ConnectionFailed);
-                                    return; // exit thread
-                                }
-                                connected.set(receiveBuffer.get() == 0x01);
-                                if (connected.get()) {
-                                    log.debug("connected to {}", host);
-                                    // fire ConnectionHandler.onConnected()
-                                    for (ConnectionHandler connectionHandler : connectionHandlerList) {
-                                        connectionHandler.onConnected();
-                                    }
-                                } else {
-                                    log.debug("connection failed to {}", host);
-                                    doDisconnect(DisconnectType.ConnectionFailed);
-                                    return; // exit thread
-                                }
-                                break;
-                            }
-                            case 0x01: {
-                                // command response
-                                // 0x01 | received 1-byte sequence number | (possible header and/or response (ASCII string without null-terminator) OR nothing)
-                                byte sn = receiveBuffer.get();
-                                if (receiveBuffer.hasRemaining()) {
-                                    if (receiveBuffer.get() == 0x00) {
-                                        // multi packet response
-                                        log.trace("multi packet command response received: {}", sn);
-                                        // 0x00 | number of packets for this response | 0-based index of the current packet
-                                        byte packetCount = receiveBuffer.get();
-                                        byte packetIndex = receiveBuffer.get();
-                                        if (multiPacketCounter == 0) {
-                                            // first packet received
-                                            multiPacketCache = new String[packetCount];
-                                        }
-                                        multiPacketCache[packetIndex] = new String(receiveBuffer.array(), receiveBuffer.position(), receiveBuffer.remaining());
-                                        if (++multiPacketCounter == packetCount) {
-                                            // last packet received
-                                            // merge packet data
-                                            StringBuilder sb = new StringBuilder(1024 * packetCount); // estimated size
-                                            for (String commandResponsePart : multiPacketCache) {
-                                                sb.append(commandResponsePart);
-                                            }
-                                            multiPacketCache = null;
-                                            multiPacketCounter = 0;
-                                            fireCommandResponseHandler(sb.toString(), sn);
-                                            sendNextCommand(sn);
-                                        }
-                                    } else {
-                                        // single packet response
-                                        log.trace("single packet command response received: {}", sn);
-                                        // position -1 and remaining +1 because the call to receiveBuffer.get() increments the position!
-                                        String commandResponse = new String(receiveBuffer.array(), receiveBuffer.position() - 1, receiveBuffer.remaining() + 1);
-                                        fireCommandResponseHandler(commandResponse, sn);
-                                        sendNextCommand(sn);
-                                    }
-                                } else {
-                                    log.trace("empty command response received: {}", sn);
-                                }
-                                break;
-                            }
-                            case 0x02: {
-                                // server message
-                                // 0x02 | 1-byte sequence number (starting at 0) | server message (ASCII string without null-terminator)
-                                byte sn = receiveBuffer.get();
-                                log.trace("server message received: {}", sn);
-                                String message = new String(receiveBuffer.array(), receiveBuffer.position(), receiveBuffer.remaining());
-                                createPacket(BattlEyePacketType.Acknowledge, sn, null);
-                                sendPacket();
-                                fireMessageHandler(message);
-                                break;
-                            }
-                            default:
-                                // should not happen!
-                                log.warn("invalid packet type received: {}", packetType);
-                                break;
+                        if (!processPacket()) {
+                            return; // exit thread
                         }
                     }
                 } catch (IOException e) {
@@ -392,110 +1263,483 @@ public class BattlEyeClient {
                 log.trace("exit receive data thread");
             }
         };
+        ThreadFactory factory = threadFactory;
+        receiveDataThread = factory != null
+                ? factory.newThread(receiveData)
+                : new Thread(receiveData, "ber4j receive data thread");
         receiveDataThread.start();
     }
 
-    private void startMonitorThread() {
-        monitorThread = new Thread("ber4j monitor thread") {
-            @Override
-            public void run() {
-                log.trace("start monitor thread");
-                try {
-                    while (!isInterrupted()) {
-                        Thread.sleep(MONITOR_INTERVAL);
-                        if (this != monitorThread) {
-                            log.debug("instance thread changed (monitor thread)");
-                            break; // exit thread
+    // called by the engine's event loop if the channel has pending datagrams
+    void processReadable(DatagramChannel channel) throws IOException {
+        while (channel == datagramChannel) {
+            receiveBuffer.clear();
+            int read = channel.read(receiveBuffer);
+            if (read == 0) {
+                break; // no more pending datagrams
+            }
+            if (!checkPacket(read) || receiveBuffer.remaining() < 2) {
+                packetRejected();
+                continue;
+            }
+            if (!processPacket()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Handles the remaining bytes of the buffer as if they were read from the channel, on the calling thread. Used by
+     * the benchmarks and the {@link DatagramReplayer} to drive the decoding and dispatching without a server. Shares
+     * the receive buffer with the receive thread, which isn't started for a replaying client.
+     *
+     * @return <tt>false</tt> if the packet was invalid or the connection was closed while processing it
+     */
+    boolean processDatagram(ByteBuffer datagram) throws IOException {
+        receiveBuffer.clear();
+        int read = datagram.remaining();
+        receiveBuffer.put(datagram);
+        if (!checkPacket(read) || receiveBuffer.remaining() < 2) {
+            packetRejected();
+            return false;
+        }
+        return processPacket();
+    }
+
+    private void packetRejected() {
+        log.warn("invalid data received");
+        invalidPackets.incrementAndGet();
+        ClientMetrics m = metrics;
+        if (m != null) {
+            m.packetsRejected.increment();
+        }
+    }
+
+    /**
+     * @return the number of received packets which were dropped because of an invalid header or checksum
+     */
+    public long getInvalidPackets() {
+        return invalidPackets.get();
+    }
+
+    /**
+     * Handles the packet in the receive buffer.
+     *
+     * @return <tt>false</tt> if the connection was closed while processing the packet
+     */
+    private boolean processPacket() throws IOException {
+        byte packetType = receiveBuffer.get();
+        switch (packetType) {
+            case 0x00: {
+                // login response
+                // 0x00 | (0x01 (successfully logged in) OR 0x00 (failed))
+                if (receiveBuffer.remaining() != 1) {
+                    log.error("unexpected login response received");
+                    doDisconnect(DisconnectType.ConnectionFailed);
+                    return false;
+                }
+                connected.set(receiveBuffer.get() == 0x01);
+                if (connected.get()) {
+                    log.debug("connected to {}", host);
+                    if (reconnectHandshake.get()) {
+                        successfulReconnects.incrementAndGet();
+                        finishReconnectHandshake();
+                    }
+                    reconnectDelay = 0;
+                    EventDispatcher dispatcher = eventDispatcher;
+                    if (dispatcher != null) {
+                        dispatcher.connected(this);
+                    } else {
+                        fireConnected();
+                    }
+                    sendQueuedCommands(); // commands kept from the previous connection
+                } else {
+                    log.debug("connection failed to {}", host);
+                    doDisconnect(DisconnectType.ConnectionFailed);
+                    return false;
+                }
+                break;
+            }
+            case 0x01: {
+                // command response
+                // 0x01 | received 1-byte sequence number | (possible header and/or response (ASCII string without null-terminator) OR nothing)
+                int sn = receiveBuffer.get() & 0xFF;
+                if (receiveBuffer.hasRemaining()) {
+                    if (receiveBuffer.get(receiveBuffer.position()) == 0x00) {
+                        // multi packet response
+                        log.trace("multi packet command response received: {}", sn);
+                        // 0x00 | number of packets for this response | 0-based index of the current packet
+                        if (receiveBuffer.remaining() < 3) {
+                            log.warn("invalid multi packet header");
+                            break;
                         }
-                        if (lastSent.get() - lastReceived.get() > TIMEOUT_DELAY) {
-                            log.debug("connection to server lost");
-                            doDisconnect(DisconnectType.ConnectionLost);
-                            break; // exit thread
+                        receiveBuffer.get();
+                        int packetCount = receiveBuffer.get() & 0xFF;
+                        int packetIndex = receiveBuffer.get() & 0xFF;
+                        extendCommandDeadline(sn, lastReceived.get());
+                        Command streamedCommand = getStreamedCommand(sn);
+                        if (streamedCommand != null) {
+                            if (responseAssembler.stream(sn, packetCount, packetIndex, receiveBuffer, lastReceived.get(), streamedCommand.partHandler)) {
+                                // last packet handled
+                                commandResponseReceived(sn, removeCommand(sn), null);
+                            }
+                            break;
                         }
-                        if (System.currentTimeMillis() - lastSent.get() > KEEP_ALIVE_DELAY) {
-                            // send empty command packet to keep the connection alive
-                            log.trace("send empty command packet");
-                            createPacket(BattlEyePacketType.Command, getNextSequenceNumber(), null);
-                            sendPacket();
+                        String commandResponse = responseAssembler.add(sn, packetCount, packetIndex, receiveBuffer, charset, lastReceived.get());
+                        if (commandResponse != null) {
+                            // last packet received
+                            commandResponseReceived(sn, removeCommand(sn), commandResponse);
                         }
+                    } else {
+                        // single packet response
+                        log.trace("single packet command response received: {}", sn);
+                        commandResponseReceived(sn, receiveBuffer);
                     }
-                } catch (InterruptedException e) {
-                    log.trace("monitor thread interrupted");
-                } catch (IOException e) {
-                    log.error("unhandled exception in monitor thread", e);
+                } else {
+                    log.trace("empty command response received: {}", sn);
+                    commandResponseReceived(sn, receiveBuffer);
                 }
-                log.trace("exit monitor thread");
+                break;
             }
-        };
-        monitorThread.start();
+            case 0x02: {
+                // server message
+                // 0x02 | 1-byte sequence number (starting at 0) | server message (ASCII string without null-terminator)
+                int sn = receiveBuffer.get() & 0xFF;
+                if (log.isTraceEnabled()) {
+                    log.trace("server message received: {}", sn);
+                }
+                // always acknowledge, a duplicate means that the previous acknowledge was lost
+                sendPacket(BattlEyePacketType.Acknowledge, sn, null);
+                if (!messageWindow.mark(sn)) {
+                    if (log.isTraceEnabled()) {
+                        log.trace("duplicate server message received: {}", sn);
+                    }
+                    ClientMetrics m = metrics;
+                    if (m != null) {
+                        m.duplicateMessages.increment();
+                    }
+                    break;
+                }
+                fireMessageHandler(sn, receiveBuffer);
+                break;
+            }
+            default:
+                // should not happen!
+                log.warn("invalid packet type received: {}", packetType);
+                break;
+        }
+        return true;
     }
 
-    private int getNextSequenceNumber() {
-        sequenceNumber = sequenceNumber == 255 ? 0 : sequenceNumber + 1;
-        return sequenceNumber;
+    /**
+     * Arms the supervision timeout of this connection unless it is already armed for the given time or earlier.
+     * Deadlines which move to a later time, like the keep alive after every sent packet, are not rescheduled, the
+     * supervision computes the next deadline when it runs.
+     */
+    private void superviseAt(long time) {
+        synchronized (supervisionLock) {
+            if (time >= supervisionTime) {
+                return;
+            }
+            if (supervisionTimeout != null) {
+                supervisionTimeout.cancel();
+            }
+            supervisionTime = time;
+            supervisionTimeout = TimingWheel.SHARED.schedule(supervisionTask, time - System.currentTimeMillis());
+        }
     }
 
-    // 'B'(0x42) | 'E'(0x45) | 4-byte CRC32 checksum of the subsequent bytes | 0xFF
-    private void createPacket(BattlEyePacketType type, int sequenceNumber, String command) {
-        sendBuffer.clear();
-        sendBuffer.put((byte) 'B');
-        sendBuffer.put((byte) 'E');
-        sendBuffer.position(6); // skip checksum
-        sendBuffer.put((byte) 0xFF);
-        sendBuffer.put(type.getType());
+    private void cancelSupervision() {
+        synchronized (supervisionLock) {
+            if (supervisionTimeout != null) {
+                supervisionTimeout.cancel();
+                supervisionTimeout = null;
+            }
+            supervisionTime = Long.MAX_VALUE;
+        }
+    }
 
-        if (sequenceNumber >= 0) {
-            sendBuffer.put((byte) sequenceNumber);
+    private void supervise() {
+        synchronized (supervisionLock) {
+            supervisionTimeout = null;
+            supervisionTime = Long.MAX_VALUE;
         }
+        if (datagramChannel == null) {
+            return; // disconnected in the meantime
+        }
+        try {
+            long time = System.currentTimeMillis();
+            long next = retransmitCommands(time);
+            if (!checkConnection(time)) {
+                return;
+            }
+            if (isConnected()) {
+                sendQueuedCommands(); // rate limited or expiring commands
+            }
+            superviseAt(Math.min(next, nextConnectionCheck()));
+        } catch (IOException e) {
+            log.error("unhandled exception while supervising connection", e);
+        }
+    }
 
-        if (command != null && !command.isEmpty()) {
-            byte[] payload = command.getBytes();
-            sendBuffer.put(payload);
+    /**
+     * Detects a lost connection and keeps the connection alive.
+     *
+     * @return <tt>false</tt> if the connection to the server was lost
+     */
+    private boolean checkConnection(long time) throws IOException {
+        responseAssembler.evictExpired(time);
+        long since = awaitingResponseSince.get();
+        if (since != 0 && time - since > getConnectionTimeout()) {
+            log.debug("connection to server lost");
+            doDisconnect(DisconnectType.ConnectionLost);
+            return false;
+        }
+        if (time - lastSent.get() > getKeepAliveDelay() && !isKeepAlivePending()) {
+            // send empty command packet to keep the connection alive, retransmitted like any other command
+            log.trace("send empty command packet");
+            enqueueCommand(new Command("", null));
         }
+        return true;
+    }
 
-        CRC.reset();
-        CRC.update(sendBuffer.array(), 6, sendBuffer.position() - 6);
-        int checksum = (int) CRC.getValue();
-        sendBuffer.putInt(2, checksum);
+    // a queued or sent keep alive packet, which is retransmitted until it is answered
+    private boolean isKeepAlivePending() {
+        synchronized (commandLock) {
+            for (Command command : commandSlots) {
+                if (command != null && command.isKeepAlive()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 
-        sendBuffer.flip();
+    // time of the next connection timeout, keep alive or multi packet timeout check
+    private long nextConnectionCheck() {
+        long next = lastSent.get() + getKeepAliveDelay() + 1;
+        long since = awaitingResponseSince.get();
+        if (since != 0) {
+            next = Math.min(next, since + getConnectionTimeout() + 1);
+        }
+        return Math.min(next, responseAssembler.getNextDeadline());
     }
 
-    private void sendPacket() throws IOException {
-        int write = datagramChannel.write(sendBuffer);
-        log.trace("{} bytes written to the channel", write);
-        lastSent.set(System.currentTimeMillis());
+    /**
+     * Returns the next sequence number which is not used by a pending command, or -1 if all are in use.
+     * Must hold the <tt>commandLock</tt>.
+     */
+    private int getNextSequenceNumber() {
+        for (int i = 0; i < commandSlots.length; i++) {
+            sequenceNumber = sequenceNumber == 255 ? 0 : sequenceNumber + 1;
+            if (commandSlots[sequenceNumber] == null) {
+                return sequenceNumber;
+            }
+        }
+        return -1;
+    }
+
+    private void sendPacket(BattlEyePacketType type, int sequenceNumber, String payload) throws IOException {
+        PacketWriter writer = packetWriter;
+        if (writer == null) {
+            throw new ClosedChannelException();
+        }
+        if (type != BattlEyePacketType.Acknowledge) {
+            long time = System.currentTimeMillis();
+            if (awaitingResponseSince.compareAndSet(0, time)) {
+                superviseAt(time + getConnectionTimeout() + 1);
+            }
+        }
+        writer.send(type, sequenceNumber, payload);
+        ClientMetrics m = metrics;
+        if (m != null) {
+            m.packetsSent.increment();
+        }
     }
 
     private boolean readPacket() throws IOException {
         receiveBuffer.clear();
         int read = datagramChannel.read(receiveBuffer);
-        log.trace("{} bytes read from the channel", read);
-        if (read < 7) {
-            log.warn("invalid header size");
-            return false;
+        return checkPacket(read);
+    }
+
+    private boolean checkPacket(int read) {
+        if (log.isTraceEnabled()) {
+            log.trace("{} bytes read from the channel", read);
         }
-        receiveBuffer.flip();
-        if (receiveBuffer.get() != (byte) 'B' || receiveBuffer.get() != (byte) 'E') {
-            log.warn("invalid header");
-            return false;
+        ClientMetrics m = metrics;
+        if (m != null) {
+            m.packetsReceived.increment();
         }
-        int checksum = receiveBuffer.getInt();
-        if (receiveBuffer.get() != (byte) 0xFF) {
-            log.warn("invalid header");
+        DatagramRecorder recorder = datagramRecorder;
+        if (recorder != null) {
+            recorder.received(receiveBuffer, read);
+        }
+        receiveBuffer.flip();
+        if (!BattlEyeCodec.verify(receiveBuffer, receiveCrc)) {
+            log.warn("invalid header or checksum");
             return false;
         }
-        // TODO validate received packet
+        receiveBuffer.position(receiveBuffer.position() + BattlEyeCodec.HEADER_SIZE - 1); // up to the packet type
         lastReceived.set(System.currentTimeMillis());
+        awaitingResponseSince.set(0);
         return true;
     }
 
+    /**
+     * Commands waiting to be sent, one FIFO queue per priority class. A keep alive packet is sent before all of them
+     * and never expires.
+     */
+    private static final class CommandQueue {
+        private final List<ArrayDeque<Command>> queues;
+        private Command keepAlive; // null if none is queued
+        private int size;
+
+        CommandQueue() {
+            queues = new ArrayList<>();
+            for (int i = 0; i < CommandPriority.values().length; i++) {
+                queues.add(new ArrayDeque<Command>());
+            }
+        }
+
+        void offer(Command command) {
+            if (command.isKeepAlive() && keepAlive == null) {
+                keepAlive = command;
+            } else {
+                queues.get(command.priority.ordinal()).offer(command);
+            }
+            size++;
+        }
+
+        /**
+         * @return the command which is polled next, or <tt>null</tt> if the queue is empty
+         */
+        Command peek() {
+            if (keepAlive != null) {
+                return keepAlive;
+            }
+            for (ArrayDeque<Command> queue : queues) {
+                Command command = queue.peek();
+                if (command != null) {
+                    return command;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the keep alive packet or the first command of the highest priority class, or <tt>null</tt> if the
+         * queue is empty
+         */
+        Command poll() {
+            if (keepAlive != null) {
+                Command command = keepAlive;
+                keepAlive = null;
+                size--;
+                return command;
+            }
+            for (ArrayDeque<Command> queue : queues) {
+                Command command = queue.poll();
+                if (command != null) {
+                    size--;
+                    return command;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Removes the expired commands from the queue and their sequence numbers from the slots. Commands expire in
+         * the order they were queued, only the heads of the priority classes are checked.
+         *
+         * @return the given list with the expired commands added, a new list if it was <tt>null</tt>
+         */
+        List<Command> removeExpired(long time, Command[] slots, List<Command> expired) {
+            for (ArrayDeque<Command> queue : queues) {
+                Command command;
+                while ((command = queue.peek()) != null && command.expiry <= time) {
+                    queue.poll();
+                    size--;
+                    slots[command.id] = null;
+                    if (expired == null) {
+                        expired = new ArrayList<>();
+                    }
+                    expired.add(command);
+                }
+            }
+            return expired;
+        }
+
+        /**
+         * @return the time the next command expires, <tt>Long.MAX_VALUE</tt> if none
+         */
+        long nextExpiry() {
+            long next = Long.MAX_VALUE;
+            for (ArrayDeque<Command> queue : queues) {
+                Command command = queue.peek();
+                if (command != null && command.expiry < next) {
+                    next = command.expiry;
+                }
+            }
+            return next;
+        }
+
+        /**
+         * Removes all commands.
+         *
+         * @return the removed commands by priority
+         */
+        List<Command> drain() {
+            List<Command> commands = new ArrayList<>(size);
+            if (keepAlive != null) {
+                commands.add(keepAlive);
+                keepAlive = null;
+            }
+            for (ArrayDeque<Command> queue : queues) {
+                commands.addAll(queue);
+                queue.clear();
+            }
+            size = 0;
+            return commands;
+        }
+
+        void clear() {
+            drain();
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
     private static class Command {
         public final String command;
+        public final CompletableFuture<String> future; // null if the command was sent by sendCommand
+        public final ResponsePartHandler partHandler; // not null if the response is streamed
         public int id = -1;
+        public int transmissions; // guarded by commandLock
+        public long sentTime; // time of the last transmission
+        public long sentNanos; // nano time of the first transmission, 0 if the metrics were disabled (guarded by commandLock)
+        public CommandPriority priority; // the default priority of the command if null
+        public long expiry; // time the command expires while it is queued
+        public long deadline; // time of the next retransmission
+
+        public Command(String command, CompletableFuture<String> future) {
+            this(command, future, null);
+        }
 
-        public Command(String command) {
+        public Command(String command, CompletableFuture<String> future, ResponsePartHandler partHandler) {
             this.command = command;
+            this.future = future;
+            this.partHandler = partHandler;
+        }
+
+        public boolean isKeepAlive() {
+            return command.isEmpty();
         }
 
         @Override
@@ -503,6 +1747,7 @@ public class BattlEyeClient {
             return "Command{" +
                     "command='" + command + '\'' +
                     ", id=" + id +
+                    ", transmissions=" + transmissions +
                     '}';
         }
     }
@@ -0,0 +1,103 @@
+package arma.ber4j;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.zip.CRC32;
+
+/**
+ * Encodes and verifies BattlEye RCon packets, for both directions.
+ * <p>'B'(0x42) | 'E'(0x45) | 4-byte CRC32 checksum of the subsequent bytes | 0xFF | type | [sequence number] | [payload]</p>
+ * <p>The checksum is little endian regardless of the byte order of the buffer.</p>
+ */
+public final class BattlEyeCodec {
+
+    public static final int MAX_PACKET_SIZE = 65507; // max UDP payload
+    public static final int HEADER_SIZE = 8; // up to and including the packet type
+
+    private BattlEyeCodec() {
+    }
+
+    /**
+     * Clears the buffer and writes the header up to the sequence number, the payload is put after it.
+     *
+     * @param sequenceNumber the sequence number, or -1 for packets without one like the login
+     */
+    public static void writeHeader(ByteBuffer buffer, BattlEyePacketType type, int sequenceNumber) {
+        buffer.clear();
+        buffer.put((byte) 'B');
+        buffer.put((byte) 'E');
+        buffer.position(6); // skip checksum
+        buffer.put((byte) 0xFF);
+        buffer.put(type.getType());
+
+        if (sequenceNumber >= 0) {
+            buffer.put((byte) sequenceNumber);
+        }
+    }
+
+    /**
+     * Flips the buffer after the payload was put and writes the checksum.
+     */
+    public static void writeChecksum(ByteBuffer buffer, CRC32 crc) {
+        buffer.flip();
+        buffer.position(6);
+        crc.reset();
+        crc.update(buffer);
+        int checksum = (int) crc.getValue();
+        buffer.put(2, (byte) checksum);
+        buffer.put(3, (byte) (checksum >> 8));
+        buffer.put(4, (byte) (checksum >> 16));
+        buffer.put(5, (byte) (checksum >> 24));
+        buffer.position(0);
+    }
+
+    /**
+     * Encodes a packet into the given buffer and flips it.
+     *
+     * @throws BufferOverflowException if the packet doesn't fit into the buffer
+     */
+    public static void encode(ByteBuffer buffer, BattlEyePacketType type, int sequenceNumber, CharSequence payload,
+                              CharsetEncoder encoder, CRC32 crc) {
+        writeHeader(buffer, type, sequenceNumber);
+
+        if (payload != null && payload.length() > 0) {
+            encoder.reset();
+            CoderResult result = encoder.encode(CharBuffer.wrap(payload), buffer, true);
+            if (result.isUnderflow()) {
+                result = encoder.flush(buffer);
+            }
+            if (result.isOverflow()) {
+                throw new BufferOverflowException();
+            }
+        }
+
+        writeChecksum(buffer, crc);
+    }
+
+    /**
+     * Checks the header and the checksum of the packet between the position and the limit of the buffer, without
+     * changing the position.
+     *
+     * @return <tt>true</tt> if the packet is valid
+     */
+    public static boolean verify(ByteBuffer packet, CRC32 crc) {
+        int start = packet.position();
+        if (packet.remaining() < HEADER_SIZE
+                || packet.get(start) != (byte) 'B' || packet.get(start + 1) != (byte) 'E'
+                || packet.get(start + 6) != (byte) 0xFF) {
+            return false;
+        }
+        int checksum = (packet.get(start + 2) & 0xFF)
+                | (packet.get(start + 3) & 0xFF) << 8
+                | (packet.get(start + 4) & 0xFF) << 16
+                | (packet.get(start + 5) & 0xFF) << 24;
+        ByteBuffer data = packet.duplicate();
+        data.position(start + 6);
+        crc.reset();
+        crc.update(data);
+        return (int) crc.getValue() == checksum;
+    }
+}
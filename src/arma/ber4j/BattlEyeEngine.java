@@ -0,0 +1,195 @@
+package arma.ber4j;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared event loop engine for many {@link BattlEyeClient}s.
+ * <p>Every client created with an engine registers its non-blocking channel on one of the engine's selectors
+ * instead of starting its own receive thread. Clients are sharded round-robin over the event loops and stay on
+ * their event loop for their whole lifetime, so all handlers of one client are called from the same thread. The
+ * timeouts of the clients are kept by a shared timing wheel, which passes them to the client's event loop, so an
+ * idle event loop doesn't wake up at all.</p>
+ */
+public class BattlEyeEngine implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(BattlEyeEngine.class);
+
+    private final EventLoop[] eventLoops;
+    private final AtomicInteger nextEventLoop;
+
+    public BattlEyeEngine() throws IOException {
+        this(1);
+    }
+
+    public BattlEyeEngine(int eventLoopCount) throws IOException {
+        if (eventLoopCount < 1) {
+            throw new IllegalArgumentException("eventLoopCount must be positive");
+        }
+        eventLoops = new EventLoop[eventLoopCount];
+        nextEventLoop = new AtomicInteger();
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops[i] = new EventLoop("ber4j event loop " + i);
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.thread.start();
+        }
+    }
+
+    public int getEventLoopCount() {
+        return eventLoops.length;
+    }
+
+    EventLoop nextEventLoop() {
+        int index = (nextEventLoop.getAndIncrement() & Integer.MAX_VALUE) % eventLoops.length;
+        return eventLoops[index];
+    }
+
+    /**
+     * Disconnects all registered clients and stops the event loop threads.
+     */
+    @Override
+    public void close() throws IOException {
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            if (eventLoop.inEventLoop()) {
+                continue; // closed from a handler, can't wait for ourselves
+            }
+            try {
+                eventLoop.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the event loops to terminate");
+            }
+        }
+    }
+
+    static final class EventLoop implements Runnable, Executor {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> taskQueue;
+        private volatile boolean running;
+
+        private EventLoop(String name) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            taskQueue = new ConcurrentLinkedQueue<>();
+            running = true;
+        }
+
+        boolean inEventLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        void register(final BattlEyeClient client, final DatagramChannel channel) {
+            // always deferred to the event loop thread, registering blocks while a select is in progress
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        channel.register(selector, SelectionKey.OP_READ, client);
+                    } catch (ClosedChannelException e) {
+                        log.debug("channel closed before it could be registered");
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            taskQueue.offer(task);
+            if (!inEventLoop()) {
+                selector.wakeup();
+            }
+        }
+
+        private void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            log.trace("start {}", thread.getName());
+            while (running) {
+                try {
+                    if (taskQueue.isEmpty()) {
+                        selector.select(); // woken up by execute
+                    } else {
+                        selector.selectNow();
+                    }
+                    processSelectedKeys();
+                    runTasks();
+                } catch (IOException e) {
+                    log.error("unhandled exception in event loop", e);
+                }
+            }
+            closeClients();
+            log.trace("exit {}", thread.getName());
+        }
+
+        private void processSelectedKeys() {
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                if (!key.isValid() || !key.isReadable()) {
+                    continue;
+                }
+                BattlEyeClient client = (BattlEyeClient) key.attachment();
+                try {
+                    client.processReadable((DatagramChannel) key.channel());
+                } catch (Exception e) {
+                    log.error("unhandled exception while receiving data", e);
+                }
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = taskQueue.poll()) != null) {
+                runTask(task);
+            }
+        }
+
+        private void runTask(Runnable task) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("unhandled exception in event loop task", e);
+            }
+        }
+
+        private void closeClients() {
+            for (SelectionKey key : selector.keys().toArray(new SelectionKey[0])) {
+                BattlEyeClient client = (BattlEyeClient) key.attachment();
+                try {
+                    client.setAutoReconnect(false);
+                    client.disconnect();
+                } catch (Exception e) {
+                    log.error("error while disconnecting client", e);
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.error("error while closing selector", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package arma.ber4j;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * A named group of clients, usually one per game server, which receive the same commands.
+ * <p>A command is enqueued at every client before any response is awaited, so it reaches all servers in parallel and
+ * the result is complete after the slowest round trip instead of the sum of all round trips. The result collects
+ * the response or the failure of every server and is completed at the deadline with the servers which didn't
+ * respond yet marked as timed out.</p>
+ * <pre>
+ * fleet.execute(BattlEyeCommand.Say, "-1", "server restart in 5 minutes")
+ *         .thenAccept(result -&gt; log.info("announced on {} servers, failed: {}",
+ *                 result.getResponses().size(), result.getFailures().keySet()));
+ * </pre>
+ */
+public class BattlEyeFleet {
+    private static final Logger log = LoggerFactory.getLogger(BattlEyeFleet.class);
+
+    private final Map<String, BattlEyeClient> clients;
+    private volatile long timeout;
+
+    public BattlEyeFleet() {
+        clients = new ConcurrentHashMap<>();
+        timeout = 5000;
+    }
+
+    /**
+     * Adds a client to the fleet, replacing the client of the same name.
+     */
+    public void add(String name, BattlEyeClient client) {
+        if (name == null || client == null) {
+            throw new NullPointerException(name == null ? "name" : "client");
+        }
+        clients.put(name, client);
+    }
+
+    public BattlEyeClient remove(String name) {
+        return clients.remove(name);
+    }
+
+    public BattlEyeClient get(String name) {
+        return clients.get(name);
+    }
+
+    /**
+     * @return the clients by their names, a snapshot which doesn't change with the fleet
+     */
+    public Map<String, BattlEyeClient> getClients() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(clients));
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the time in milliseconds after which the result of a command is completed without the servers which
+     * didn't respond yet, defaults to 5000 ms.
+     */
+    public void setTimeout(long timeout) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+        this.timeout = timeout;
+    }
+
+    public CompletableFuture<FleetResult> execute(BattlEyeCommand command, String... params) {
+        return execute(BattlEyeClient.buildCommand(command, params), timeout);
+    }
+
+    public CompletableFuture<FleetResult> execute(String command) {
+        return execute(command, timeout);
+    }
+
+    /**
+     * Sends a command to every server of the fleet.
+     * <p>The returned future never completes exceptionally, failures are reported per server in the result. It
+     * completes on the receive thread of the last response or on a timer task thread at the deadline, dependent
+     * actions which block should use one of the async methods of the future. A command which times out is not
+     * cancelled, it may still be executed by its server.</p>
+     *
+     * @param timeout the deadline in milliseconds from now
+     */
+    public CompletableFuture<FleetResult> execute(String command, long timeout) {
+        Map<String, BattlEyeClient> targets = new LinkedHashMap<>(clients);
+        log.debug("execute on {} servers: {}", targets.size(), command);
+        FanOut fanOut = new FanOut(command, targets.keySet());
+        if (targets.isEmpty()) {
+            fanOut.complete();
+            return fanOut.future;
+        }
+        fanOut.timeout = TimingWheel.SHARED.schedule(fanOut, timeout);
+        for (Map.Entry<String, BattlEyeClient> target : targets.entrySet()) {
+            fanOut.await(target.getKey(), target.getValue().execute(command));
+        }
+        return fanOut.future;
+    }
+
+    // collects the responses of one command, runs as the deadline timeout
+    private static class FanOut implements Runnable {
+        final String command;
+        final CompletableFuture<FleetResult> future;
+        final long startTime;
+        final Map<String, String> responses;
+        final Map<String, Throwable> failures;
+        final Set<String> servers;
+        final AtomicInteger remaining;
+        final AtomicBoolean completed;
+        volatile TimingWheel.Timeout timeout;
+
+        FanOut(String command, Set<String> servers) {
+            this.command = command;
+            future = new CompletableFuture<>();
+            startTime = System.currentTimeMillis();
+            responses = new ConcurrentHashMap<>();
+            failures = new ConcurrentHashMap<>();
+            this.servers = servers;
+            remaining = new AtomicInteger(servers.size());
+            completed = new AtomicBoolean();
+        }
+
+        void await(final String name, CompletableFuture<String> response) {
+            response.whenComplete(new BiConsumer<String, Throwable>() {
+                @Override
+                public void accept(String value, Throwable throwable) {
+                    if (completed.get()) {
+                        return; // after the deadline
+                    }
+                    if (throwable != null) {
+                        failures.put(name, throwable);
+                    } else {
+                        responses.put(name, value);
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        complete();
+                    }
+                }
+            });
+        }
+
+        // deadline, the callbacks of the future must not block the shared timer
+        @Override
+        public void run() {
+            BattlEyeThreads.TIMER_TASKS.execute(new Runnable() {
+                @Override
+                public void run() {
+                    complete();
+                }
+            });
+        }
+
+        void complete() {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            TimingWheel.Timeout t = timeout;
+            if (t != null) {
+                t.cancel();
+            }
+            // a response may arrive while copying, it is either copied or its server counts as timed out
+            Map<String, String> responseCopy = new LinkedHashMap<>(responses);
+            Map<String, Throwable> failureCopy = new LinkedHashMap<>(failures);
+            long elapsed = System.currentTimeMillis() - startTime;
+            for (String name : servers) {
+                if (!responseCopy.containsKey(name) && !failureCopy.containsKey(name)) {
+                    failureCopy.put(name, new TimeoutException("no response within " + elapsed + " ms"));
+                }
+            }
+            FleetResult result = new FleetResult(command, responseCopy, failureCopy, elapsed);
+            if (!failureCopy.isEmpty()) {
+                log.debug("command failed on {} of {} servers: {}", failureCopy.size(), result.getServerCount(), command);
+            }
+            future.complete(result);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package arma.ber4j;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * The server side of the BattlEye RCon protocol on a local UDP port, shared by the
+ * {@link arma.ber4j.sim.ServerSimulator} and the {@link arma.ber4j.gateway.BattlEyeGateway}.
+ * <p>The server answers logins with the configured password, acknowledges keep alive packets and passes the commands
+ * to {@link #commandReceived}. Server messages are retransmitted until they are acknowledged. Sessions which don't
+ * send any packet within the session timeout, or don't acknowledge a message after {@value #MAX_TRANSMISSIONS}
+ * transmissions, are dropped. One receive thread and one timer thread serve all sessions.</p>
+ */
+public abstract class BattlEyeServer<S extends ServerSession> implements Closeable {
+    public static final int MAX_TRANSMISSIONS = 5;
+    private static final long RETRANSMIT_DELAY = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final String name;
+    private final InetSocketAddress bindAddress;
+    private final String password;
+    private final long tick;
+    private final int maxUnacknowledged;
+    private final Map<SocketAddress, S> sessions;
+    private final ThreadLocal<Encoder> encoders;
+    private DatagramChannel channel;
+    private Thread receiveThread;
+    private ScheduledExecutorService timer;
+    private volatile boolean closed;
+
+    private volatile int maxPayloadSize;
+    private volatile long sessionTimeout;
+
+    private final AtomicLong receivedPackets;
+    private final AtomicLong invalidPackets;
+    private final AtomicLong logins;
+    private final AtomicLong acknowledges;
+    private final AtomicLong retransmissions;
+    private final AtomicLong droppedSessions;
+
+    /**
+     * @param name              names the threads, e.g. <tt>simulator</tt>
+     * @param tick              interval of the retransmissions and the session supervision in milliseconds
+     * @param maxUnacknowledged sessions with as many unacknowledged messages are dropped
+     */
+    protected BattlEyeServer(String name, InetSocketAddress bindAddress, String password, long tick,
+                             int maxUnacknowledged) {
+        this.name = name;
+        this.bindAddress = bindAddress;
+        this.password = password;
+        this.tick = tick;
+        this.maxUnacknowledged = maxUnacknowledged;
+        sessions = new ConcurrentHashMap<>();
+        encoders = new ThreadLocal<Encoder>() {
+            @Override
+            protected Encoder initialValue() {
+                return new Encoder();
+            }
+        };
+        maxPayloadSize = 1400;
+        sessionTimeout = 45000;
+
+        receivedPackets = new AtomicLong();
+        invalidPackets = new AtomicLong();
+        logins = new AtomicLong();
+        acknowledges = new AtomicLong();
+        retransmissions = new AtomicLong();
+        droppedSessions = new AtomicLong();
+    }
+
+    public synchronized void start() throws IOException {
+        if (channel != null) {
+            throw new IllegalStateException("already started");
+        }
+        channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, 4 << 20); // one socket for all sessions
+        channel.bind(bindAddress);
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "ber4j " + name + " timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        timer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick();
+                } catch (Exception e) {
+                    log.error("unhandled exception in " + name + " timer", e);
+                }
+            }
+        }, tick, tick, TimeUnit.MILLISECONDS);
+        receiveThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                receive();
+            }
+        }, "ber4j " + name + " receive thread");
+        receiveThread.setDaemon(true);
+        receiveThread.start();
+        log.debug("{} listening on {}", name, getAddress());
+    }
+
+    /**
+     * @return the address the clients connect to
+     */
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed || channel == null) {
+            return;
+        }
+        closed = true;
+        timer.shutdownNow();
+        channel.close();
+        sessions.clear();
+    }
+
+    /**
+     * Creates the session of a client which logged in.
+     */
+    protected abstract S newSession(SocketAddress address);
+
+    /**
+     * Called on the receive thread for every command of a logged in session, including the empty keep alive
+     * commands.
+     */
+    protected abstract void commandReceived(S session, int sequenceNumber, String command) throws IOException;
+
+    /**
+     * Called on the receive thread before a login is checked.
+     *
+     * @return <tt>false</tt> to leave the login unanswered
+     */
+    protected boolean acceptLogin(SocketAddress address) {
+        return true;
+    }
+
+    /**
+     * Called on the timer thread for every session which is kept.
+     */
+    protected void tick(S session, long now) throws IOException {
+    }
+
+    /**
+     * Lets a subclass lose received packets on purpose.
+     */
+    protected boolean dropReceived() {
+        return false;
+    }
+
+    /**
+     * @return the charset of the passwords, commands and responses
+     */
+    protected Charset getCharset() {
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Sends a packet, all packets of the server pass this method. The packet is not modified.
+     */
+    protected void send(SocketAddress address, ByteBuffer packet) throws IOException {
+        channel.send(packet.duplicate(), address);
+    }
+
+    protected final void send(SocketAddress address, ByteBuffer[] packets) throws IOException {
+        for (ByteBuffer packet : packets) {
+            send(address, packet);
+        }
+    }
+
+    /**
+     * Runs a task on the timer thread after the delay in milliseconds.
+     */
+    protected final void schedule(Runnable task, long delay) {
+        timer.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends a server message with the next sequence number of the session.
+     *
+     * @return <tt>false</tt> if the message was not sent because too many messages are unacknowledged
+     */
+    protected final boolean sendMessage(S session, byte[] message) {
+        ByteBuffer packet = session.nextMessage(encoders.get(), message, maxUnacknowledged,
+                System.currentTimeMillis());
+        if (packet == null) {
+            return false; // dropped by the next tick
+        }
+        try {
+            send(session.getAddress(), packet);
+        } catch (IOException e) {
+            log.debug(name + " could not send message", e);
+        }
+        return true;
+    }
+
+    /**
+     * Splits a response into packets of at most {@link #getMaxPayloadSize()} bytes.
+     */
+    protected final ByteBuffer[] encodeResponse(int sequenceNumber, byte[] bytes) {
+        int partSize = maxPayloadSize;
+        Encoder encoder = encoders.get();
+        if (bytes.length <= partSize) {
+            encoder.begin(BattlEyePacketType.Command, sequenceNumber).put(bytes);
+            return new ByteBuffer[]{encoder.finish()};
+        }
+        // 0x01 | sequence number | 0x00 | number of packets | index | part
+        int packetCount = Math.min(255, (bytes.length + partSize - 1) / partSize);
+        partSize = (bytes.length + packetCount - 1) / packetCount;
+        ByteBuffer[] packets = new ByteBuffer[packetCount];
+        for (int i = 0; i < packetCount; i++) {
+            int offset = i * partSize;
+            encoder.begin(BattlEyePacketType.Command, sequenceNumber)
+                    .put((byte) 0x00).put((byte) packetCount).put((byte) i)
+                    .put(bytes, offset, Math.min(partSize, bytes.length - offset));
+            packets[i] = encoder.finish();
+        }
+        return packets;
+    }
+
+    /**
+     * @return the logged in sessions, removing a session drops it
+     */
+    protected final Collection<S> getSessions() {
+        return sessions.values();
+    }
+
+    /**
+     * @return <tt>true</tt> if the session was not dropped or replaced by a new login
+     */
+    protected final boolean isLoggedIn(S session) {
+        return sessions.get(session.getAddress()) == session;
+    }
+
+    private void receive() {
+        log.trace("start {} receive thread", name);
+        ByteBuffer buffer = ByteBuffer.allocate(BattlEyeCodec.MAX_PACKET_SIZE);
+        CRC32 crc = new CRC32();
+        while (!closed) {
+            try {
+                buffer.clear();
+                SocketAddress address = channel.receive(buffer);
+                buffer.flip();
+                receivedPackets.incrementAndGet();
+                if (dropReceived()) {
+                    continue;
+                }
+                if (!BattlEyeCodec.verify(buffer, crc)) {
+                    log.debug("invalid packet received from {}", address);
+                    invalidPackets.incrementAndGet();
+                    continue;
+                }
+                handlePacket(address, buffer);
+            } catch (AsynchronousCloseException e) {
+                break;
+            } catch (Exception e) {
+                log.error("unhandled exception in " + name, e);
+            }
+        }
+        log.trace("exit {} receive thread", name);
+    }
+
+    private void handlePacket(SocketAddress address, ByteBuffer packet) throws IOException {
+        byte type = packet.get(7);
+        if (type == BattlEyePacketType.Login.getType()) {
+            // 0x00 | password
+            if (!acceptLogin(address)) {
+                return;
+            }
+            boolean success = password.equals(decode(packet, 8));
+            if (success) {
+                logins.incrementAndGet();
+                sessions.put(address, newSession(address)); // a new login starts over
+                log.debug("{} logged in: {}", name, address);
+            }
+            Encoder encoder = encoders.get();
+            encoder.begin(BattlEyePacketType.Login, -1).put((byte) (success ? 0x01 : 0x00));
+            send(address, encoder.finish());
+            return;
+        }
+        S session = sessions.get(address);
+        if (session == null || packet.remaining() < 9) {
+            return; // not logged in
+        }
+        session.lastReceived = System.currentTimeMillis();
+        int sequenceNumber = packet.get(8) & 0xFF;
+        if (type == BattlEyePacketType.Command.getType()) {
+            // 0x01 | sequence number | command
+            commandReceived(session, sequenceNumber, decode(packet, 9));
+        } else if (type == BattlEyePacketType.Acknowledge.getType()) {
+            // 0x02 | sequence number
+            if (session.acknowledge(sequenceNumber)) {
+                acknowledges.incrementAndGet();
+            }
+        }
+    }
+
+    private void tick() throws IOException {
+        long now = System.currentTimeMillis();
+        long timeout = sessionTimeout;
+        List<ByteBuffer> packets = new ArrayList<>();
+        for (Iterator<S> it = sessions.values().iterator(); it.hasNext(); ) {
+            S session = it.next();
+            packets.clear();
+            if (now - session.lastReceived > timeout
+                    || !session.retransmit(now, RETRANSMIT_DELAY, MAX_TRANSMISSIONS, maxUnacknowledged, packets)) {
+                log.debug("{} dropped session {}", name, session.getAddress());
+                droppedSessions.incrementAndGet();
+                it.remove();
+                continue;
+            }
+            for (ByteBuffer packet : packets) {
+                retransmissions.incrementAndGet();
+                send(session.getAddress(), packet);
+            }
+            tick(session, now);
+        }
+    }
+
+    private String decode(ByteBuffer packet, int offset) {
+        byte[] bytes = new byte[Math.max(0, packet.limit() - offset)];
+        ByteBuffer payload = packet.duplicate();
+        payload.position(offset);
+        payload.get(bytes);
+        return new String(bytes, getCharset());
+    }
+
+    public int getMaxPayloadSize() {
+        return maxPayloadSize;
+    }
+
+    /**
+     * Sets the max size of a response packet's payload, longer responses are split, defaults to 1400 bytes.
+     */
+    public void setMaxPayloadSize(int maxPayloadSize) {
+        if (maxPayloadSize < 1 || maxPayloadSize > BattlEyeCodec.MAX_PACKET_SIZE - BattlEyeCodec.HEADER_SIZE - 4) {
+            throw new IllegalArgumentException("invalid max payload size: " + maxPayloadSize);
+        }
+        this.maxPayloadSize = maxPayloadSize;
+    }
+
+    public long getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds after which a session which didn't send any packet is dropped, defaults to
+     * 45000 ms like a game server.
+     */
+    public void setSessionTimeout(long sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public long getReceivedPackets() {
+        return receivedPackets.get();
+    }
+
+    /**
+     * @return the number of received packets with an invalid header or checksum
+     */
+    public long getInvalidPackets() {
+        return invalidPackets.get();
+    }
+
+    public long getLogins() {
+        return logins.get();
+    }
+
+    public long getAcknowledges() {
+        return acknowledges.get();
+    }
+
+    public long getRetransmissions() {
+        return retransmissions.get();
+    }
+
+    /**
+     * @return the number of sessions dropped because they timed out or didn't acknowledge the server messages
+     */
+    public long getDroppedSessions() {
+        return droppedSessions.get();
+    }
+
+    /**
+     * Encodes the packets of one thread.
+     */
+    static final class Encoder {
+        private final ByteBuffer buffer = ByteBuffer.allocate(BattlEyeCodec.MAX_PACKET_SIZE);
+        private final CRC32 crc = new CRC32();
+
+        ByteBuffer begin(BattlEyePacketType type, int sequenceNumber) {
+            BattlEyeCodec.writeHeader(buffer, type, sequenceNumber);
+            return buffer;
+        }
+
+        /**
+         * @return a copy of the encoded packet
+         */
+        ByteBuffer finish() {
+            BattlEyeCodec.writeChecksum(buffer, crc);
+            ByteBuffer packet = ByteBuffer.allocate(buffer.remaining());
+            packet.put(buffer).flip();
+            return packet;
+        }
+    }
+}
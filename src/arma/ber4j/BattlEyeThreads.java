@@ -0,0 +1,108 @@
+package arma.ber4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factories for the threads started by the clients and the engine.
+ * <p>On Java 21 and later {@link #virtualThreadFactory(String)} creates virtual threads. A client which receives on
+ * a virtual thread blocks in <tt>DatagramChannel.read</tt> and calls its handlers without occupying a platform
+ * thread, so thousands of clients with blocking handlers don't need thousands of platform threads. The virtual
+ * thread API is looked up by reflection: the library is compiled for Java 9, which it needs for the
+ * {@link java.util.concurrent.Flow} publishers, and <tt>Thread.ofVirtual</tt> only exists since Java 21.</p>
+ */
+public final class BattlEyeThreads {
+    /**
+     * Runs the work of the timeouts of the shared timer, like the supervision and the reconnects of the clients
+     * without an engine or thread factory, so blocking handlers and callbacks don't delay the timer. Threads are
+     * started on demand and end after a minute without work.
+     */
+    static final ExecutorService TIMER_TASKS = Executors.newCachedThreadPool(
+            platformThreadFactory("ber4j client task ", true));
+
+    private static final Method OF_VIRTUAL; // Thread.ofVirtual(), null before Java 21
+    private static final Method NAME; // Thread.Builder.name(String, long)
+    private static final Method FACTORY; // Thread.Builder.factory()
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR; // Executors.newVirtualThreadPerTaskExecutor()
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        Method newExecutor = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            newExecutor = Class.forName("java.util.concurrent.Executors").getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (ReflectiveOperationException e) {
+            ofVirtual = null; // not supported by this runtime
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = newExecutor;
+    }
+
+    private BattlEyeThreads() {
+    }
+
+    /**
+     * @return <tt>true</tt> if the runtime supports virtual threads
+     */
+    public static boolean isVirtualThreadSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Creates platform threads named by the given prefix and a counter.
+     */
+    public static ThreadFactory platformThreadFactory(final String prefix, final boolean daemon) {
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, prefix + counter.getAndIncrement());
+                thread.setDaemon(daemon);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Creates virtual threads named by the given prefix and a counter.
+     *
+     * @throws UnsupportedOperationException if the runtime doesn't support virtual threads
+     */
+    public static ThreadFactory virtualThreadFactory(String prefix) {
+        if (!isVirtualThreadSupported()) {
+            throw new UnsupportedOperationException("virtual threads require Java 21 or later");
+        }
+        try {
+            Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("virtual threads are not available", e);
+        }
+    }
+
+    /**
+     * Creates an executor which runs every task on a new virtual thread, e.g. for an {@link EventDispatcher}.
+     *
+     * @throws UnsupportedOperationException if the runtime doesn't support virtual threads
+     */
+    public static ExecutorService virtualThreadPerTaskExecutor() {
+        if (!isVirtualThreadSupported()) {
+            throw new UnsupportedOperationException("virtual threads require Java 21 or later");
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("virtual threads are not available", e);
+        }
+    }
+}
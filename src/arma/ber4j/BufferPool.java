@@ -0,0 +1,68 @@
+package arma.ber4j;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread safe pool of equally sized byte buffers.
+ * <p>Buffers with a different capacity are never pooled, so callers can fall back to allocating a larger buffer and
+ * release it like any other buffer.</p>
+ */
+final class BufferPool {
+    private final int bufferSize;
+    private final int maxPooledBuffers;
+    private final boolean direct;
+    private final Queue<ByteBuffer> buffers;
+    private final AtomicInteger pooledBuffers;
+
+    BufferPool(int bufferSize, int maxPooledBuffers, boolean direct) {
+        this.bufferSize = bufferSize;
+        this.maxPooledBuffers = maxPooledBuffers;
+        this.direct = direct;
+        buffers = new ConcurrentLinkedQueue<>();
+        pooledBuffers = new AtomicInteger();
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns a cleared little endian buffer with at least the given capacity.
+     */
+    ByteBuffer acquire(int capacity) {
+        if (capacity > bufferSize) {
+            return allocate(capacity);
+        }
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return allocate(bufferSize);
+        }
+        pooledBuffers.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    ByteBuffer acquire() {
+        return acquire(bufferSize);
+    }
+
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || buffer.isDirect() != direct) {
+            return; // not allocated by this pool
+        }
+        if (pooledBuffers.incrementAndGet() > maxPooledBuffers) {
+            pooledBuffers.decrementAndGet();
+            return; // pool is full, leave the buffer to the garbage collector
+        }
+        buffers.offer(buffer);
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        return buffer.order(ByteOrder.LITTLE_ENDIAN); // ArmA 2 server uses little endian
+    }
+}
@@ -0,0 +1,120 @@
+package arma.ber4j;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Reusable {@link CharSequence} view of a byte buffer region, mapping every byte to one char (ISO-8859-1).
+ * <p>Server messages are mostly ASCII, so this view allows to match messages without decoding them. Bytes of
+ * multi-byte characters show up as separate chars, use {@link #toString(Charset)} to decode the region properly.
+ * Instances are not thread safe.</p>
+ */
+public final class ByteCharSequence implements CharSequence {
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    public ByteCharSequence() {
+    }
+
+    public ByteCharSequence(ByteBuffer buffer) {
+        wrap(buffer);
+    }
+
+    /**
+     * Points this sequence at the remaining bytes of the given buffer, the buffer's position is not changed.
+     */
+    public ByteCharSequence wrap(ByteBuffer buffer) {
+        return wrap(buffer, buffer.position(), buffer.remaining());
+    }
+
+    public ByteCharSequence wrap(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+        }
+        return (char) (buffer.get(offset + index) & 0xFF);
+    }
+
+    @Override
+    public ByteCharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length);
+        }
+        return new ByteCharSequence().wrap(buffer, offset + start, end - start);
+    }
+
+    public boolean startsWith(CharSequence prefix) {
+        return regionMatches(0, prefix);
+    }
+
+    public boolean endsWith(CharSequence suffix) {
+        return regionMatches(length - suffix.length(), suffix);
+    }
+
+    public boolean regionMatches(int index, CharSequence s) {
+        int n = s.length();
+        if (index < 0 || index + n > length) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if ((buffer.get(offset + index + i) & 0xFF) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int indexOf(char c) {
+        return indexOf(c, 0);
+    }
+
+    public int indexOf(char c, int fromIndex) {
+        for (int i = Math.max(fromIndex, 0); i < length; i++) {
+            if ((buffer.get(offset + i) & 0xFF) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int indexOf(CharSequence s) {
+        for (int i = 0, max = length - s.length(); i <= max; i++) {
+            if (regionMatches(i, s)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(CharSequence s) {
+        return indexOf(s) >= 0;
+    }
+
+    public String toString(Charset charset) {
+        ByteBuffer region = buffer.duplicate();
+        region.limit(offset + length).position(offset);
+        return charset.decode(region).toString();
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (buffer.get(offset + i) & 0xFF);
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,54 @@
+package arma.ber4j;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms of one client, only allocated while its metrics are enabled.
+ */
+final class ClientMetrics {
+
+    private static final int RATE_SECONDS = 10; // messages per second are averaged over the last complete seconds
+
+    final LongAdder packetsSent = new LongAdder();
+    final LongAdder packetsReceived = new LongAdder();
+    final LongAdder packetsRejected = new LongAdder();
+    final LongAdder messages = new LongAdder();
+    final LongAdder duplicateMessages = new LongAdder();
+    final LongAdder commandsSent = new LongAdder();
+    final LongAdder commandResponses = new LongAdder();
+    final LongAdder retransmissions = new LongAdder();
+    final LatencyHistogram commandRtt = new LatencyHistogram();
+    final LatencyHistogram handlerTime = new LatencyHistogram();
+
+    // messages of the last seconds, slot i counts the second stored in messageSeconds at i
+    private final AtomicLongArray messageSeconds = new AtomicLongArray(RATE_SECONDS + 2);
+    private final AtomicLongArray messageCounts = new AtomicLongArray(RATE_SECONDS + 2);
+
+    void messageReceived(long time) {
+        messages.increment();
+        long second = time / 1000;
+        int slot = (int) (second % messageSeconds.length());
+        long slotSecond = messageSeconds.get(slot);
+        if (slotSecond != second) {
+            if (slotSecond < second && messageSeconds.compareAndSet(slot, slotSecond, second)) {
+                messageCounts.set(slot, 0);
+            } else if (messageSeconds.get(slot) != second) {
+                return; // lost a race with a newer second, doesn't affect the average noticeably
+            }
+        }
+        messageCounts.incrementAndGet(slot);
+    }
+
+    double getMessagesPerSecond(long time) {
+        long second = time / 1000;
+        long count = 0;
+        for (int i = 0; i < messageSeconds.length(); i++) {
+            long slotSecond = messageSeconds.get(i);
+            if (slotSecond < second && slotSecond >= second - RATE_SECONDS) {
+                count += messageCounts.get(i);
+            }
+        }
+        return (double) count / RATE_SECONDS;
+    }
+}
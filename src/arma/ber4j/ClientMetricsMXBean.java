@@ -0,0 +1,60 @@
+package arma.ber4j;
+
+/**
+ * JMX view of the metrics of one client, or of all clients of a {@link MetricsRegistry}. Latencies are in
+ * microseconds.
+ */
+public interface ClientMetricsMXBean {
+
+    int getClients();
+
+    int getConnectedClients();
+
+    long getPacketsSent();
+
+    long getPacketsReceived();
+
+    long getPacketsRejected();
+
+    long getMessages();
+
+    long getDuplicateMessages();
+
+    double getMessagesPerSecond();
+
+    long getCommandsSent();
+
+    long getCommandResponses();
+
+    long getRetransmissions();
+
+    int getCommandQueueDepth();
+
+    int getCommandsInFlight();
+
+    long getReconnectAttempts();
+
+    long getSuccessfulReconnects();
+
+    long getCommandRttCount();
+
+    double getCommandRttMean();
+
+    long getCommandRtt50thPercentile();
+
+    long getCommandRtt99thPercentile();
+
+    long getCommandRtt999thPercentile();
+
+    long getCommandRttMax();
+
+    long getHandlerTimeCount();
+
+    double getHandlerTimeMean();
+
+    long getHandlerTime50thPercentile();
+
+    long getHandlerTime99thPercentile();
+
+    long getHandlerTimeMax();
+}
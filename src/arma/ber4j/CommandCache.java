@@ -0,0 +1,213 @@
+package arma.ber4j;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Shares the responses of read-only commands executed by {@link BattlEyeClient#execute(String)} of one client.
+ * <p>Identical read-only commands which are executed while the first one is still waiting for its response share
+ * that response instead of being sent again. The response is cached for the time to live, the least recently used
+ * responses are evicted beyond the max number of entries. By default <tt>players</tt>, <tt>bans</tt> and
+ * <tt>missions</tt> are read-only.</p>
+ * <p>Any other command sent by the client, with the exception of <tt>say</tt> and keep alive packets, may change the
+ * state of the server and clears the cache, no matter which method of the client sent it. A response which was
+ * requested before the state changing command was sent is still passed to the callers which waited for it, but it
+ * is not cached.</p>
+ */
+public class CommandCache {
+    private static final Logger log = LoggerFactory.getLogger(CommandCache.class);
+
+    private static final Function<String, String> IDENTITY = new Function<String, String>() {
+        @Override
+        public String apply(String response) {
+            return response;
+        }
+    };
+
+    private final long timeToLive;
+    private final Set<String> readOnlyCommands;
+    private final Set<String> passiveCommands; // neither cached nor clearing the cache
+    private final Map<String, CachedResponse> entries; // guarded by this, in access order
+
+    private final AtomicLong hits;
+    private final AtomicLong coalesced;
+    private final AtomicLong misses;
+    private final AtomicLong invalidations;
+
+    /**
+     * Creates a cache which keeps responses for 1 s, for up to 64 distinct commands.
+     */
+    public CommandCache() {
+        this(1000, 64);
+    }
+
+    /**
+     * @param timeToLive the time in milliseconds a response is cached after it was received, 0 to only share
+     *                   responses of concurrent commands
+     * @param maxEntries the max number of cached responses
+     */
+    public CommandCache(long timeToLive, final int maxEntries) {
+        if (timeToLive < 0 || maxEntries < 1) {
+            throw new IllegalArgumentException("timeToLive must not be negative and maxEntries must be positive");
+        }
+        this.timeToLive = timeToLive;
+        readOnlyCommands = new HashSet<>(Arrays.asList(BattlEyeCommand.Players.getCommandString(),
+                BattlEyeCommand.Bans.getCommandString(), BattlEyeCommand.Missions.getCommandString()));
+        passiveCommands = new HashSet<>(Arrays.asList(BattlEyeCommand.Say.getCommandString()));
+        entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        hits = new AtomicLong();
+        coalesced = new AtomicLong();
+        misses = new AtomicLong();
+        invalidations = new AtomicLong();
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * @return <tt>true</tt> if the command only reads the state of the server, the name of the command is compared
+     * case-insensitively
+     */
+    protected boolean isReadOnly(String name) {
+        return readOnlyCommands.contains(name);
+    }
+
+    /**
+     * @return <tt>true</tt> if the command can't change the cached responses and is not cached either
+     */
+    protected boolean isPassive(String name) {
+        return passiveCommands.contains(name);
+    }
+
+    /**
+     * Returns the shared or cached response of a read-only command, or executes it with the given client.
+     */
+    CompletableFuture<String> execute(final String command, BattlEyeClient client) {
+        String name = name(command);
+        if (!isReadOnly(name)) {
+            return client.executeUncached(command);
+        }
+        final String key = name + command.trim().substring(name.length());
+        final CachedResponse entry;
+        synchronized (this) {
+            CachedResponse cached = entries.get(key);
+            if (cached != null) {
+                if (!cached.future.isDone()) {
+                    coalesced.incrementAndGet();
+                    return cached.future.thenApply(IDENTITY);
+                }
+                if (System.currentTimeMillis() < cached.expiry) {
+                    hits.incrementAndGet();
+                    return cached.future.thenApply(IDENTITY);
+                }
+            }
+            misses.incrementAndGet();
+            entry = new CachedResponse();
+            entries.put(key, entry);
+        }
+        // executed outside of the lock, the response may complete on the calling thread
+        CompletableFuture<String> future = client.executeUncached(command);
+        future.whenComplete(new BiConsumer<String, Throwable>() {
+            @Override
+            public void accept(String response, Throwable throwable) {
+                synchronized (CommandCache.this) {
+                    if (throwable == null && timeToLive > 0) {
+                        entry.expiry = System.currentTimeMillis() + timeToLive;
+                    } else if (entries.get(key) == entry) {
+                        entries.remove(key);
+                    }
+                }
+                if (throwable != null) {
+                    entry.future.completeExceptionally(throwable);
+                } else {
+                    entry.future.complete(response);
+                }
+            }
+        });
+        return entry.future.thenApply(IDENTITY);
+    }
+
+    /**
+     * Called for every command the client sends, clears the cache if the command may change the state of the server.
+     */
+    void commandSent(String command) {
+        if (command.isEmpty()) {
+            return; // keep alive
+        }
+        String name = name(command);
+        if (isReadOnly(name) || isPassive(name)) {
+            return;
+        }
+        synchronized (this) {
+            if (entries.isEmpty()) {
+                return;
+            }
+            entries.clear();
+        }
+        invalidations.incrementAndGet();
+        log.trace("command cache cleared by: {}", name);
+    }
+
+    /**
+     * Removes all cached responses, responses which are still awaited are shared but not cached.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static String name(String command) {
+        String trimmed = command.trim();
+        int end = trimmed.indexOf(' ');
+        return (end < 0 ? trimmed : trimmed.substring(0, end)).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the number of commands answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of commands which shared the response of an identical command that was already sent
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return the number of read-only commands which were sent to the server
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of times the cache was cleared by a command
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    private static final class CachedResponse {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        long expiry; // guarded by the cache, 0 until the response was received
+    }
+}
@@ -0,0 +1,50 @@
+package arma.ber4j;
+
+import java.util.Locale;
+
+/**
+ * Priority class of a queued command. Queued commands are sent in the order of their priority classes, commands of
+ * the same class in the order they were queued.
+ */
+public enum CommandPriority {
+
+    /**
+     * Moderation like <tt>kick</tt> and the ban commands, locking the server and keep alive packets.
+     */
+    High,
+
+    /**
+     * All commands which are neither high nor low.
+     */
+    Normal,
+
+    /**
+     * Chat announcements with <tt>say</tt>.
+     */
+    Low;
+
+    /**
+     * @return the default priority of the command by its name
+     */
+    public static CommandPriority of(String command) {
+        String trimmed = command.trim();
+        if (trimmed.isEmpty()) {
+            return High; // keep alive
+        }
+        int end = trimmed.indexOf(' ');
+        String name = (end < 0 ? trimmed : trimmed.substring(0, end)).toLowerCase(Locale.ROOT);
+        switch (name) {
+            case "kick":
+            case "ban":
+            case "addban":
+            case "removeban":
+            case "#lock":
+            case "#shutdown":
+                return High;
+            case "say":
+                return Low;
+            default:
+                return Normal;
+        }
+    }
+}
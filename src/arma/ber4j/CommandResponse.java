@@ -0,0 +1,33 @@
+package arma.ber4j;
+
+/**
+ * A command response published by {@link BattlEyeClient#commandResponsePublisher}.
+ */
+public final class CommandResponse {
+    private final String response;
+    private final int id;
+
+    CommandResponse(String response, int id) {
+        this.response = response;
+        this.id = id;
+    }
+
+    /**
+     * @return the response, empty if the command has no response
+     */
+    public String getResponse() {
+        return response;
+    }
+
+    /**
+     * @return the sequence number of the command
+     */
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return id + ": " + response;
+    }
+}
@@ -0,0 +1,28 @@
+package arma.ber4j;
+
+/**
+ * A connect or disconnect published by {@link BattlEyeClient#connectionEventPublisher}.
+ */
+public final class ConnectionEvent {
+    private final DisconnectType disconnectType;
+
+    ConnectionEvent(DisconnectType disconnectType) {
+        this.disconnectType = disconnectType;
+    }
+
+    public boolean isConnected() {
+        return disconnectType == null;
+    }
+
+    /**
+     * @return how the client was disconnected, <tt>null</tt> if it connected
+     */
+    public DisconnectType getDisconnectType() {
+        return disconnectType;
+    }
+
+    @Override
+    public String toString() {
+        return disconnectType == null ? "Connected" : "Disconnected: " + disconnectType;
+    }
+}
@@ -0,0 +1,176 @@
+package arma.ber4j;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records the raw datagrams a client receives and sends into a file, for a later {@link DatagramReplayer replay}.
+ * <p>The file starts with the magic <tt>BERC</tt>, a version byte and the start time in milliseconds since the epoch.
+ * Every datagram is stored as</p>
+ * <pre>direction (0 received, 1 sent) | nanoseconds since the previous datagram (varint) | length (varint) | bytes</pre>
+ * <p>The records are collected in a buffer and written when it is full, the thread of the datagram which fills the
+ * buffer writes it. Received datagrams are recorded before they are checked, including invalid ones. A recorder
+ * records one client, it stops recording after a write error.</p>
+ */
+public class DatagramRecorder implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(DatagramRecorder.class);
+
+    static final int MAGIC = 0x42455243; // "BERC"
+    static final byte VERSION = 1;
+    static final byte RECEIVED = 0;
+    static final byte SENT = 1;
+    static final int HEADER_SIZE = 4 + 1 + 8;
+
+    private static final int BUFFER_SIZE = 1 << 18;
+    private static final int MAX_RECORD_HEADER_SIZE = 1 + 10 + 5;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer; // guarded by this
+    private long lastNanos;
+    private long recordCount;
+    private long byteCount;
+    private boolean closed;
+
+    /**
+     * Creates the file, an existing file is overwritten.
+     */
+    public DatagramRecorder(Path file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.putInt(MAGIC).put(VERSION).putLong(System.currentTimeMillis());
+        lastNanos = System.nanoTime();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Starts recording the datagrams of the client, including the datagrams of later connections.
+     */
+    public void attach(BattlEyeClient client) {
+        client.setDatagramRecorder(this);
+    }
+
+    public void detach(BattlEyeClient client) {
+        client.setDatagramRecorder(null);
+    }
+
+    // called by the client with the datagram between 0 and the given length of the buffer
+    void received(ByteBuffer datagram, int length) {
+        record(RECEIVED, datagram, length);
+    }
+
+    void sent(ByteBuffer datagram, int length) {
+        record(SENT, datagram, length);
+    }
+
+    private synchronized void record(byte direction, ByteBuffer datagram, int length) {
+        if (closed) {
+            return;
+        }
+        long nanos = System.nanoTime();
+        try {
+            if (buffer.remaining() < MAX_RECORD_HEADER_SIZE + length) {
+                flushBuffer();
+            }
+            buffer.put(direction);
+            putVarLong(buffer, Math.max(0, nanos - lastNanos));
+            putVarLong(buffer, length);
+            if (length > buffer.remaining()) {
+                // larger than the buffer, the buffer is empty after the flush
+                flushBuffer();
+                ByteBuffer data = datagram.duplicate();
+                data.limit(length).position(0);
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            } else {
+                ByteBuffer data = datagram.duplicate();
+                data.limit(length).position(0);
+                buffer.put(data);
+            }
+            lastNanos = nanos;
+            recordCount++;
+            byteCount += length;
+        } catch (IOException e) {
+            log.error("recording stopped, could not write to {}", file, e);
+            closed = true;
+            closeQuietly();
+        }
+    }
+
+    // must hold this
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Writes the recorded datagrams to the file.
+     */
+    public synchronized void flush() throws IOException {
+        if (!closed) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * @return the number of recorded datagrams
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return the number of bytes of the recorded datagrams
+     */
+    public synchronized long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Writes the remaining datagrams and closes the file. Datagrams of a client which is still attached are ignored.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("could not close {}", file, e);
+        }
+    }
+}
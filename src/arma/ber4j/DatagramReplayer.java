@@ -0,0 +1,230 @@
+package arma.ber4j;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Replays the datagrams recorded by a {@link DatagramRecorder} through the decoding and dispatching of a client, at
+ * the recorded speed or as fast as possible.
+ * <p>The client is connected to a local socket of the replayer which discards the packets the client sends, the
+ * recorded sent datagrams are skipped. The replayer logs the client in before the first datagram and skips the
+ * recorded login responses. The handlers of the client are called on the replaying thread, or by its event
+ * dispatcher. Recorded command responses are dropped like any response without a pending command, the replaying
+ * client didn't send the commands.</p>
+ * <pre>
+ * try (DatagramReplayer replayer = new DatagramReplayer(file)) {
+ *     BattlEyeClient client = replayer.createClient();
+ *     client.addMessageHandler(handler);
+ *     replayer.replay(client, false);
+ *     log.info("{} datagrams per second", replayer.getReplayedDatagrams() * 1e9 / replayer.getElapsedNanos());
+ * }
+ * </pre>
+ * <p>The timers of the client keep running during the replay. A recording without received datagrams for longer
+ * than the connection timeout after the client sent a keep alive ends the replay with a lost connection.</p>
+ */
+public class DatagramReplayer implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(DatagramReplayer.class);
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path file;
+    private final long recordingStartTime;
+    private final DatagramChannel sink;
+
+    private long replayedDatagrams;
+    private long replayedBytes;
+    private long skippedDatagrams;
+    private long elapsedNanos;
+
+    /**
+     * Opens the recording and the local socket the replaying clients connect to.
+     *
+     * @throws IOException if the file is not a recording
+     */
+    public DatagramReplayer(Path file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(DatagramRecorder.HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the complete header
+            }
+            header.flip();
+            if (header.remaining() < DatagramRecorder.HEADER_SIZE || header.getInt() != DatagramRecorder.MAGIC) {
+                throw new IOException("not a datagram recording: " + file);
+            }
+            byte version = header.get();
+            if (version != DatagramRecorder.VERSION) {
+                throw new IOException("unsupported recording version " + version + ": " + file);
+            }
+            recordingStartTime = header.getLong();
+        }
+        sink = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    /**
+     * @return the time the recording started in milliseconds since the epoch
+     */
+    public long getRecordingStartTime() {
+        return recordingStartTime;
+    }
+
+    /**
+     * Creates a client which can replay the recording, it is connected by {@link #replay}. The client doesn't start a
+     * receive thread, the replay passes the datagrams to it.
+     */
+    public BattlEyeClient createClient() throws IOException {
+        BattlEyeClient client = new BattlEyeClient((InetSocketAddress) sink.getLocalAddress());
+        client.replaying = true;
+        return client;
+    }
+
+    /**
+     * Passes the received datagrams of the recording to the client, on the calling thread.
+     *
+     * @param client        a client created by {@link #createClient()}
+     * @param originalSpeed <tt>true</tt> to keep the recorded time between the datagrams, <tt>false</tt> to replay
+     *                      as fast as possible
+     * @return the number of replayed datagrams
+     */
+    public long replay(BattlEyeClient client, boolean originalSpeed) throws IOException {
+        replayedDatagrams = 0;
+        replayedBytes = 0;
+        skippedDatagrams = 0;
+        if (!client.isConnected()) {
+            client.setAutoReconnect(false);
+            client.connect("replay");
+            client.processDatagram(loginResponse());
+        }
+        long start = System.nanoTime();
+        long recordTime = 0; // nanoseconds since the start of the recording
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(DatagramRecorder.HEADER_SIZE);
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            while (true) {
+                if (buffer.remaining() < 1 + 10 + 5) {
+                    fill(channel, buffer);
+                    if (!buffer.hasRemaining()) {
+                        break;
+                    }
+                }
+                int recordStart = buffer.position();
+                byte direction = buffer.get();
+                long delta = getVarLong(buffer);
+                int length = (int) getVarLong(buffer);
+                if (delta < 0 || length < 0 || length > BattlEyeCodec.MAX_PACKET_SIZE) {
+                    log.warn("replay stopped, corrupt or truncated record in {}", file);
+                    break;
+                }
+                if (buffer.remaining() < length) {
+                    buffer.position(recordStart);
+                    if (!fill(channel, buffer)) {
+                        log.warn("replay stopped, truncated record at the end of {}", file);
+                        break;
+                    }
+                    continue; // read the record again
+                }
+                recordTime += delta;
+                ByteBuffer datagram = buffer.slice();
+                datagram.limit(length);
+                buffer.position(buffer.position() + length);
+                if (direction != DatagramRecorder.RECEIVED || isLoginResponse(datagram)) {
+                    skippedDatagrams++;
+                    continue;
+                }
+                if (originalSpeed) {
+                    long wait;
+                    while ((wait = start + recordTime - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                client.processDatagram(datagram);
+                replayedDatagrams++;
+                replayedBytes += length;
+                if (!client.isConnected()) {
+                    log.warn("replay stopped, the client disconnected");
+                    break;
+                }
+            }
+        } finally {
+            elapsedNanos = System.nanoTime() - start;
+        }
+        log.debug("replayed {} datagrams of {} in {} ms", replayedDatagrams, file, elapsedNanos / 1000000);
+        return replayedDatagrams;
+    }
+
+    // compacts the buffer and reads more of the file, false if nothing was read at the end of the file
+    private static boolean fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.compact();
+        int read = channel.read(buffer);
+        buffer.flip();
+        return read > 0;
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64 && buffer.hasRemaining(); shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isLoginResponse(ByteBuffer datagram) {
+        return datagram.remaining() >= BattlEyeCodec.HEADER_SIZE
+                && datagram.get(BattlEyeCodec.HEADER_SIZE - 1) == BattlEyePacketType.Login.getType();
+    }
+
+    private static ByteBuffer loginResponse() {
+        ByteBuffer packet = ByteBuffer.allocate(BattlEyeCodec.HEADER_SIZE + 1).order(ByteOrder.LITTLE_ENDIAN);
+        BattlEyeCodec.writeHeader(packet, BattlEyePacketType.Login, -1);
+        packet.put((byte) 0x01);
+        BattlEyeCodec.writeChecksum(packet, new CRC32());
+        return packet;
+    }
+
+    /**
+     * @return the number of datagrams passed to the client by the last replay
+     */
+    public long getReplayedDatagrams() {
+        return replayedDatagrams;
+    }
+
+    public long getReplayedBytes() {
+        return replayedBytes;
+    }
+
+    /**
+     * @return the number of sent datagrams and login responses skipped by the last replay
+     */
+    public long getSkippedDatagrams() {
+        return skippedDatagrams;
+    }
+
+    /**
+     * @return the duration of the last replay in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        sink.close();
+    }
+}
@@ -0,0 +1,293 @@
+package arma.ber4j;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Calls the connection, command response and message handlers of one or more clients on an executor instead of
+ * the receiving thread, so slow handlers don't delay the acknowledges and the command responses.
+ * <p>Events are copied into a bounded ring buffer of preallocated slots and handled one after another in the order
+ * they were received, at most one executor task runs at a time. If the buffer is full, messages and command
+ * responses are handled according to the {@link OverflowPolicy}. Connection events may exceed the capacity by
+ * {@value #CONNECTION_EVENT_RESERVE} events and block beyond that. A blocked receiving thread, which may be the event
+ * loop of an engine shared with other clients, waits at most 10 seconds and drops the event if the handlers don't
+ * make room in time or the thread is interrupted, e.g. by a disconnect.</p>
+ * <p>{@link RawMessageHandler}s are still called on the receiving thread, they get a view of the receive buffer
+ * which is only valid during the call. Command futures are completed on the receiving thread as well.</p>
+ */
+public class EventDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(EventDispatcher.class);
+
+    static final int CONNECTION_EVENT_RESERVE = 8;
+    private static final int MAX_EVENTS_PER_TASK = 256; // be fair to other tasks of a shared executor
+    private static final long MAX_BLOCK_TIME = TimeUnit.SECONDS.toNanos(10); // per event, then it is dropped
+
+    private final Executor executor;
+    private final OverflowPolicy overflowPolicy;
+    private final int capacity;
+
+    private final ReentrantLock lock;
+    private final Condition notFull;
+    private final Event[] ring; // guarded by lock
+    private int head; // index of the oldest event
+    private int size;
+    private boolean scheduled; // a drain task was submitted and didn't finish yet
+    private volatile Thread drainingThread;
+    private final Runnable drainTask;
+
+    private final AtomicLong dispatchedCount;
+    private final AtomicLong droppedOldestCount;
+    private final AtomicLong droppedNewestCount;
+    private final AtomicLong blockedCount;
+
+    public EventDispatcher(Executor executor, int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (executor == null || overflowPolicy == null) {
+            throw new NullPointerException();
+        }
+        this.executor = executor;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        lock = new ReentrantLock();
+        notFull = lock.newCondition();
+        ring = new Event[capacity + CONNECTION_EVENT_RESERVE];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new Event();
+        }
+        drainTask = new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+        dispatchedCount = new AtomicLong();
+        droppedOldestCount = new AtomicLong();
+        droppedNewestCount = new AtomicLong();
+        blockedCount = new AtomicLong();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * @return the number of events waiting to be handled
+     */
+    public int getSize() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of events passed to the handlers
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * @return the number of waiting events discarded for newer events by {@link OverflowPolicy#DropOldest}
+     */
+    public long getDroppedOldestCount() {
+        return droppedOldestCount.get();
+    }
+
+    /**
+     * @return the number of new events discarded by {@link OverflowPolicy#DropNewest}, or by the other policies if
+     * the buffer is full and neither the oldest event can be dropped nor the current thread can wait, or the wait
+     * timed out or was interrupted
+     */
+    public long getDroppedNewestCount() {
+        return droppedNewestCount.get();
+    }
+
+    /**
+     * @return how often the receiving thread had to wait for free space
+     */
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    void connected(BattlEyeClient client) {
+        publish(client, EventType.Connected, null, -1, null);
+    }
+
+    void disconnected(BattlEyeClient client, DisconnectType disconnectType) {
+        publish(client, EventType.Disconnected, null, -1, disconnectType);
+    }
+
+    void commandResponse(BattlEyeClient client, String commandResponse, int id) {
+        publish(client, EventType.CommandResponse, commandResponse, id, null);
+    }
+
+    void message(BattlEyeClient client, String message) {
+        publish(client, EventType.Message, message, -1, null);
+    }
+
+    private void publish(BattlEyeClient client, EventType type, String text, int id, DisconnectType disconnectType) {
+        boolean droppable = type == EventType.CommandResponse || type == EventType.Message;
+        boolean schedule;
+        lock.lock();
+        try {
+            int limit = droppable ? capacity : ring.length;
+            long nanos = MAX_BLOCK_TIME;
+            while (size >= limit) {
+                if (droppable && overflowPolicy == OverflowPolicy.DropOldest && ring[head].droppable()) {
+                    ring[head].clear();
+                    head = (head + 1) % ring.length;
+                    size--;
+                    droppedOldestCount.incrementAndGet();
+                    break;
+                }
+                if ((droppable && overflowPolicy != OverflowPolicy.Block) || Thread.currentThread() == drainingThread) {
+                    // a handler can't wait for itself
+                    droppedNewestCount.incrementAndGet();
+                    if (log.isTraceEnabled()) {
+                        log.trace("event dropped: {}", type);
+                    }
+                    return;
+                }
+                if (nanos <= 0) {
+                    log.warn("handlers didn't make room for {} ms, event dropped: {}",
+                            TimeUnit.NANOSECONDS.toMillis(MAX_BLOCK_TIME), type);
+                    droppedNewestCount.incrementAndGet();
+                    return;
+                }
+                blockedCount.incrementAndGet();
+                try {
+                    nanos = notFull.awaitNanos(nanos);
+                } catch (InterruptedException e) {
+                    // the client disconnects or stops the thread
+                    Thread.currentThread().interrupt();
+                    droppedNewestCount.incrementAndGet();
+                    return;
+                }
+            }
+            Event event = ring[(head + size) % ring.length];
+            event.client = client;
+            event.type = type;
+            event.text = text;
+            event.id = id;
+            event.disconnectType = disconnectType;
+            size++;
+            schedule = !scheduled;
+            scheduled = true;
+        } finally {
+            lock.unlock();
+        }
+        if (schedule) {
+            submit();
+        }
+    }
+
+    private void submit() {
+        try {
+            executor.execute(drainTask);
+        } catch (RuntimeException e) {
+            log.error("event dispatcher task rejected", e);
+            lock.lock();
+            try {
+                scheduled = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void drain() {
+        drainingThread = Thread.currentThread();
+        BattlEyeClient client;
+        EventType type;
+        String text;
+        int id;
+        DisconnectType disconnectType;
+        for (int n = 0; ; n++) {
+            lock.lock();
+            try {
+                if (size == 0 || n == MAX_EVENTS_PER_TASK) {
+                    // cleared under the lock, the next task may already run on another thread afterwards
+                    drainingThread = null;
+                    if (size == 0) {
+                        scheduled = false;
+                        return;
+                    }
+                    break;
+                }
+                Event event = ring[head];
+                client = event.client;
+                type = event.type;
+                text = event.text;
+                id = event.id;
+                disconnectType = event.disconnectType;
+                event.clear();
+                head = (head + 1) % ring.length;
+                size--;
+                notFull.signalAll(); // waiting connection events have a higher limit
+            } finally {
+                lock.unlock();
+            }
+            dispatchedCount.incrementAndGet();
+            try {
+                switch (type) {
+                    case Connected:
+                        client.fireConnected();
+                        break;
+                    case Disconnected:
+                        client.fireDisconnected(disconnectType);
+                        break;
+                    case CommandResponse:
+                        client.fireCommandResponse(text, id);
+                        break;
+                    case Message:
+                        client.fireMessage(text);
+                        break;
+                }
+            } catch (Exception e) {
+                log.error("unhandled exception in handler", e);
+            }
+        }
+        submit(); // continue in a new task
+    }
+
+    private enum EventType {
+        Connected,
+        Disconnected,
+        CommandResponse,
+        Message
+    }
+
+    private static final class Event {
+        BattlEyeClient client;
+        EventType type;
+        String text;
+        int id;
+        DisconnectType disconnectType;
+
+        boolean droppable() {
+            return type == EventType.CommandResponse || type == EventType.Message;
+        }
+
+        void clear() {
+            client = null;
+            type = null;
+            text = null;
+            disconnectType = null;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package arma.ber4j;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes the messages, command responses or connection events of a client to {@link Flow.Subscriber}s which
+ * request them at their own pace. Created by {@link BattlEyeClient#messagePublisher},
+ * {@link BattlEyeClient#commandResponsePublisher} and {@link BattlEyeClient#connectionEventPublisher}.
+ * <p>Every subscription has a bounded buffer for the events which were not requested yet. If it is full, the
+ * {@link OverflowPolicy} decides:</p>
+ * <ul>
+ * <li>{@link OverflowPolicy#Block} is lossless unless the subscriber stalls: the thread which calls the handlers of
+ * the client waits until the subscriber requested more. Without an {@link EventDispatcher} that is the receiving
+ * thread, so the acknowledges and command responses are delayed and a subscriber which stops requesting for longer
+ * than the server waits for acknowledges loses the connection. With a dispatcher which blocks as well, the waiting
+ * dispatcher fills its buffer and the receiving thread waits for it. The event is dropped if the subscriber doesn't
+ * request it within 10 seconds, if the waiting thread is interrupted, e.g. by a disconnect, or if the publisher is
+ * closed.</li>
+ * <li>{@link OverflowPolicy#DropOldest} and {@link OverflowPolicy#DropNewest} are lossy: the receiving thread never
+ * waits and events are discarded while the subscriber is behind, see {@link #getDroppedCount()}.</li>
+ * </ul>
+ * <p>The publisher is registered as a handler of the client while it has subscribers. <tt>onNext</tt> is called on
+ * the thread which published the event if it was requested already, otherwise on the thread which requests it.
+ * Events published by a subscriber of the same subscription while it handles an event are dropped if the buffer is
+ * full, a subscriber can't wait for itself.</p>
+ */
+public abstract class EventPublisher<T> implements Flow.Publisher<T> {
+    private static final Logger log = LoggerFactory.getLogger(EventPublisher.class);
+
+    private static final long MAX_BLOCK_TIME = TimeUnit.SECONDS.toNanos(10); // per event, Block policy
+
+    private final int bufferSize;
+    private final OverflowPolicy overflowPolicy;
+    private final List<EventSubscription> subscriptions;
+    private boolean attached; // guarded by this
+    private boolean closed; // guarded by this
+
+    private final AtomicLong publishedCount;
+    private final AtomicLong droppedCount;
+    private final AtomicLong blockedCount;
+
+    EventPublisher(int bufferSize, OverflowPolicy overflowPolicy) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        if (overflowPolicy == null) {
+            throw new NullPointerException("overflowPolicy");
+        }
+        this.bufferSize = bufferSize;
+        this.overflowPolicy = overflowPolicy;
+        subscriptions = new CopyOnWriteArrayList<>();
+        publishedCount = new AtomicLong();
+        droppedCount = new AtomicLong();
+        blockedCount = new AtomicLong();
+    }
+
+    // adds or removes the handler which calls publish
+    abstract void attach();
+
+    abstract void detach();
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * @return the number of events passed to the subscriptions
+     */
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    /**
+     * @return the number of events discarded by full buffers of all subscriptions
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return how often a thread had to wait for a subscriber to request more events
+     */
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        EventSubscription subscription = new EventSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        synchronized (this) {
+            if (closed) {
+                subscription.complete();
+                return;
+            }
+            if (subscription.isCancelled()) {
+                return;
+            }
+            subscriptions.add(subscription);
+            if (!attached) {
+                attached = true;
+                attach();
+            }
+        }
+    }
+
+    /**
+     * Detaches the publisher from the client and completes the subscriptions after their buffered events were
+     * requested. Later subscribers are completed immediately.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (attached) {
+                attached = false;
+                detach();
+            }
+        }
+        for (EventSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    // called by the handler
+    void publish(T item) {
+        for (EventSubscription subscription : subscriptions) {
+            subscription.offer(item);
+        }
+    }
+
+    private synchronized void remove(EventSubscription subscription) {
+        if (subscriptions.remove(subscription) && subscriptions.isEmpty() && attached) {
+            attached = false;
+            detach();
+        }
+    }
+
+    private final class EventSubscription implements Flow.Subscription {
+        final Flow.Subscriber<? super T> subscriber;
+        final ReentrantLock lock;
+        final Condition notFull;
+        final Object[] ring; // guarded by lock
+        int head; // index of the oldest event
+        int size;
+        long demand;
+        boolean cancelled;
+        boolean completing;
+        Throwable error; // signalled instead of the next event
+        Thread drainingThread; // the thread which calls the subscriber, null if none
+
+        EventSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+            lock = new ReentrantLock();
+            notFull = lock.newCondition();
+            ring = new Object[bufferSize];
+        }
+
+        boolean isCancelled() {
+            lock.lock();
+            try {
+                return cancelled;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void offer(T item) {
+            lock.lock();
+            try {
+                long nanos = MAX_BLOCK_TIME;
+                while (size == ring.length && !cancelled && !completing) {
+                    if (overflowPolicy == OverflowPolicy.DropOldest) {
+                        ring[head] = null;
+                        head = (head + 1) % ring.length;
+                        size--;
+                        droppedCount.incrementAndGet();
+                        break;
+                    }
+                    if (overflowPolicy == OverflowPolicy.DropNewest || Thread.currentThread() == drainingThread) {
+                        droppedCount.incrementAndGet();
+                        return;
+                    }
+                    if (nanos <= 0) {
+                        log.warn("subscriber didn't request events for {} ms, event dropped",
+                                TimeUnit.NANOSECONDS.toMillis(MAX_BLOCK_TIME));
+                        droppedCount.incrementAndGet();
+                        return;
+                    }
+                    blockedCount.incrementAndGet();
+                    try {
+                        nanos = notFull.awaitNanos(nanos);
+                    } catch (InterruptedException e) {
+                        // the client disconnects or stops the thread
+                        Thread.currentThread().interrupt();
+                        droppedCount.incrementAndGet();
+                        return;
+                    }
+                }
+                if (cancelled || completing) {
+                    return;
+                }
+                ring[(head + size) % ring.length] = item;
+                size++;
+            } finally {
+                lock.unlock();
+            }
+            publishedCount.incrementAndGet();
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            lock.lock();
+            try {
+                if (cancelled) {
+                    return;
+                }
+                if (n <= 0) {
+                    error = new IllegalArgumentException("non-positive request: " + n);
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n; // unbounded on overflow
+                }
+            } finally {
+                lock.unlock();
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                clear();
+            } finally {
+                lock.unlock();
+            }
+            remove(this);
+        }
+
+        void complete() {
+            lock.lock();
+            try {
+                completing = true;
+                notFull.signalAll(); // blocked publishers give up
+            } finally {
+                lock.unlock();
+            }
+            drain();
+        }
+
+        // must hold lock
+        private void clear() {
+            for (int i = 0; i < size; i++) {
+                ring[(head + i) % ring.length] = null;
+            }
+            size = 0;
+            notFull.signalAll();
+        }
+
+        // calls the subscriber on one thread at a time, the thread which is calling it picks up the changes of others
+        @SuppressWarnings("unchecked")
+        private void drain() {
+            lock.lock();
+            try {
+                if (drainingThread != null) {
+                    return;
+                }
+                drainingThread = Thread.currentThread();
+                while (!cancelled) {
+                    Throwable e = error;
+                    if (e != null) {
+                        cancelled = true;
+                        clear();
+                        lock.unlock();
+                        try {
+                            subscriber.onError(e);
+                        } catch (RuntimeException ex) {
+                            log.error("unhandled exception in subscriber", ex);
+                        }
+                        lock.lock();
+                        break;
+                    }
+                    if (size > 0 && demand > 0) {
+                        T item = (T) ring[head];
+                        ring[head] = null;
+                        head = (head + 1) % ring.length;
+                        size--;
+                        if (demand != Long.MAX_VALUE) {
+                            demand--;
+                        }
+                        notFull.signalAll();
+                        lock.unlock();
+                        try {
+                            subscriber.onNext(item);
+                        } catch (RuntimeException ex) {
+                            log.error("subscriber failed, subscription cancelled", ex);
+                            lock.lock();
+                            cancelled = true;
+                            clear();
+                            break;
+                        }
+                        lock.lock();
+                    } else if (size == 0 && completing) {
+                        cancelled = true;
+                        lock.unlock();
+                        try {
+                            subscriber.onComplete();
+                        } catch (RuntimeException ex) {
+                            log.error("unhandled exception in subscriber", ex);
+                        }
+                        lock.lock();
+                    } else {
+                        break;
+                    }
+                }
+                drainingThread = null;
+            } finally {
+                lock.unlock();
+            }
+            if (isCancelled()) {
+                remove(this);
+            }
+        }
+    }
+}
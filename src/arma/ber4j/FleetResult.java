@@ -0,0 +1,87 @@
+package arma.ber4j;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Responses of the servers of a {@link BattlEyeFleet} to one command.
+ * <p>Every server of the fleet is either in the responses or in the failures. Servers which didn't respond before
+ * the deadline fail with a {@link TimeoutException}, servers which weren't connected or lost the connection fail with
+ * an {@link java.io.IOException}.</p>
+ */
+public final class FleetResult {
+
+    private final String command;
+    private final Map<String, String> responses;
+    private final Map<String, Throwable> failures;
+    private final long elapsed;
+
+    FleetResult(String command, Map<String, String> responses, Map<String, Throwable> failures, long elapsed) {
+        this.command = command;
+        this.responses = Collections.unmodifiableMap(responses);
+        this.failures = Collections.unmodifiableMap(failures);
+        this.elapsed = elapsed;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return the responses by the names of the servers which responded
+     */
+    public Map<String, String> getResponses() {
+        return responses;
+    }
+
+    /**
+     * @return the causes by the names of the servers which failed or timed out
+     */
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the names of the servers which didn't respond before the deadline
+     */
+    public Set<String> getTimedOut() {
+        Set<String> timedOut = new TreeSet<>();
+        for (Map.Entry<String, Throwable> failure : failures.entrySet()) {
+            if (failure.getValue() instanceof TimeoutException) {
+                timedOut.add(failure.getKey());
+            }
+        }
+        return timedOut;
+    }
+
+    /**
+     * @return <tt>true</tt> if every server responded
+     */
+    public boolean isSuccess() {
+        return failures.isEmpty();
+    }
+
+    public int getServerCount() {
+        return responses.size() + failures.size();
+    }
+
+    /**
+     * @return the time in milliseconds from sending the command until the last response or the deadline
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return "FleetResult{" +
+                "command='" + command + '\'' +
+                ", responses=" + responses.size() +
+                ", failures=" + failures.keySet() +
+                ", elapsed=" + elapsed +
+                '}';
+    }
+}
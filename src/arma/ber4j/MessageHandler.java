@@ -1,5 +1,9 @@
 package arma.ber4j;
 
+/**
+ * Receives decoded server messages. Every message is decoded once for all message handlers, use a
+ * {@link RawMessageHandler} to filter messages without decoding them.
+ */
 public interface MessageHandler {
     void onMessageReceived(String message);
 }
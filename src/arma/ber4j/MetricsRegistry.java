@@ -0,0 +1,327 @@
+package arma.ber4j;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Enables the metrics of named clients and publishes them as MXBeans, one per client as
+ * <tt>arma.ber4j:type=Client,name=&lt;name&gt;</tt> and the sum of all clients as <tt>arma.ber4j:type=Clients</tt>.
+ * <p>The MXBeans take a snapshot at most once per second, a JMX console which reads all attributes one after another
+ * sees consistent values. Snapshots can also be pulled directly.</p>
+ * <pre>
+ * MetricsRegistry registry = new MetricsRegistry();
+ * registry.register("server1", client);
+ * MetricsSnapshot all = registry.getAggregateSnapshot();
+ * </pre>
+ */
+public class MetricsRegistry implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    private static final long SNAPSHOT_INTERVAL = 1000;
+
+    private final MBeanServer server; // null if the metrics are only pulled
+    private final String domain;
+    private final Map<String, Entry> entries;
+    private ObjectName aggregateName; // null if not registered (guarded by this)
+
+    /**
+     * Creates a registry which publishes to the platform MBean server.
+     */
+    public MetricsRegistry() {
+        this(ManagementFactory.getPlatformMBeanServer(), "arma.ber4j");
+    }
+
+    /**
+     * @param server the MBean server, or <tt>null</tt> to not publish the metrics via JMX
+     * @param domain the domain of the object names, distinct registries on the same server need distinct domains
+     */
+    public MetricsRegistry(MBeanServer server, String domain) {
+        this.server = server;
+        this.domain = domain;
+        entries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Enables the metrics of the client and publishes them under the given name.
+     *
+     * @throws IllegalArgumentException if the name is already registered
+     */
+    public synchronized void register(String name, BattlEyeClient client) {
+        if (entries.containsKey(name)) {
+            throw new IllegalArgumentException("already registered: " + name);
+        }
+        Entry entry = new Entry(client, new View(client));
+        if (server != null) {
+            try {
+                // the aggregate first, a failure leaves no MBean of the client behind
+                if (aggregateName == null) {
+                    ObjectName objectName = new ObjectName(domain + ":type=Clients");
+                    server.registerMBean(new View(null), objectName);
+                    aggregateName = objectName;
+                }
+                ObjectName objectName = new ObjectName(domain + ":type=Client,name=" + ObjectName.quote(name));
+                server.registerMBean(entry.view, objectName);
+                entry.objectName = objectName;
+            } catch (InstanceAlreadyExistsException e) {
+                throw new IllegalArgumentException("MBean already registered: " + name, e);
+            } catch (JMException e) {
+                throw new IllegalStateException("failed to register MBean: " + name, e);
+            }
+        }
+        client.setMetricsEnabled(true);
+        entries.put(name, entry);
+    }
+
+    /**
+     * Removes the client from the registry and disables its metrics.
+     *
+     * @return <tt>false</tt> if no client was registered under the name
+     */
+    public synchronized boolean unregister(String name) {
+        Entry entry = entries.remove(name);
+        if (entry == null) {
+            return false;
+        }
+        entry.client.setMetricsEnabled(false);
+        unregisterMBean(entry.objectName);
+        return true;
+    }
+
+    /**
+     * @return the current metrics of the client, or <tt>null</tt> if no client is registered under the name
+     */
+    public MetricsSnapshot getSnapshot(String name) {
+        Entry entry = entries.get(name);
+        return entry != null ? entry.client.getMetricsSnapshot() : null;
+    }
+
+    /**
+     * @return the current metrics of all registered clients by their names
+     */
+    public Map<String, MetricsSnapshot> getSnapshots() {
+        Map<String, MetricsSnapshot> snapshots = new LinkedHashMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            MetricsSnapshot snapshot = entry.getValue().client.getMetricsSnapshot();
+            if (snapshot != null) {
+                snapshots.put(entry.getKey(), snapshot);
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * @return the sum of the current metrics of all registered clients
+     */
+    public MetricsSnapshot getAggregateSnapshot() {
+        List<MetricsSnapshot> snapshots = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            MetricsSnapshot snapshot = entry.client.getMetricsSnapshot();
+            if (snapshot != null) {
+                snapshots.add(snapshot);
+            }
+        }
+        return MetricsSnapshot.aggregate(snapshots);
+    }
+
+    /**
+     * Unregisters all clients and the MXBeans.
+     */
+    @Override
+    public synchronized void close() {
+        for (String name : new ArrayList<>(entries.keySet())) {
+            unregister(name);
+        }
+        unregisterMBean(aggregateName);
+        aggregateName = null;
+    }
+
+    private void unregisterMBean(ObjectName objectName) {
+        if (server == null || objectName == null) {
+            return;
+        }
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            log.warn("failed to unregister MBean {}", objectName, e);
+        }
+    }
+
+    private static class Entry {
+        final BattlEyeClient client;
+        final View view;
+        ObjectName objectName;
+
+        Entry(BattlEyeClient client, View view) {
+            this.client = client;
+            this.view = view;
+        }
+    }
+
+    // the MXBean of a client, or of all clients if the client is null
+    private class View implements ClientMetricsMXBean {
+        private final BattlEyeClient client;
+        private MetricsSnapshot snapshot; // guarded by this
+        private long snapshotTime;
+
+        View(BattlEyeClient client) {
+            this.client = client;
+        }
+
+        private synchronized MetricsSnapshot snapshot() {
+            long time = System.currentTimeMillis();
+            if (snapshot == null || time - snapshotTime >= SNAPSHOT_INTERVAL) {
+                MetricsSnapshot current = client != null ? client.getMetricsSnapshot() : getAggregateSnapshot();
+                if (current == null) {
+                    // disabled by the application after registering
+                    current = MetricsSnapshot.aggregate(new ArrayList<MetricsSnapshot>());
+                }
+                snapshot = current;
+                snapshotTime = time;
+            }
+            return snapshot;
+        }
+
+        @Override
+        public int getClients() {
+            return snapshot().getClients();
+        }
+
+        @Override
+        public int getConnectedClients() {
+            return snapshot().getConnectedClients();
+        }
+
+        @Override
+        public long getPacketsSent() {
+            return snapshot().getPacketsSent();
+        }
+
+        @Override
+        public long getPacketsReceived() {
+            return snapshot().getPacketsReceived();
+        }
+
+        @Override
+        public long getPacketsRejected() {
+            return snapshot().getPacketsRejected();
+        }
+
+        @Override
+        public long getMessages() {
+            return snapshot().getMessages();
+        }
+
+        @Override
+        public long getDuplicateMessages() {
+            return snapshot().getDuplicateMessages();
+        }
+
+        @Override
+        public double getMessagesPerSecond() {
+            return snapshot().getMessagesPerSecond();
+        }
+
+        @Override
+        public long getCommandsSent() {
+            return snapshot().getCommandsSent();
+        }
+
+        @Override
+        public long getCommandResponses() {
+            return snapshot().getCommandResponses();
+        }
+
+        @Override
+        public long getRetransmissions() {
+            return snapshot().getRetransmissions();
+        }
+
+        @Override
+        public int getCommandQueueDepth() {
+            return snapshot().getCommandQueueDepth();
+        }
+
+        @Override
+        public int getCommandsInFlight() {
+            return snapshot().getCommandsInFlight();
+        }
+
+        @Override
+        public long getReconnectAttempts() {
+            return snapshot().getReconnectAttempts();
+        }
+
+        @Override
+        public long getSuccessfulReconnects() {
+            return snapshot().getSuccessfulReconnects();
+        }
+
+        @Override
+        public long getCommandRttCount() {
+            return snapshot().getCommandRtt().getCount();
+        }
+
+        @Override
+        public double getCommandRttMean() {
+            return snapshot().getCommandRtt().getMean();
+        }
+
+        @Override
+        public long getCommandRtt50thPercentile() {
+            return snapshot().getCommandRtt().getValueAtPercentile(50);
+        }
+
+        @Override
+        public long getCommandRtt99thPercentile() {
+            return snapshot().getCommandRtt().getValueAtPercentile(99);
+        }
+
+        @Override
+        public long getCommandRtt999thPercentile() {
+            return snapshot().getCommandRtt().getValueAtPercentile(99.9);
+        }
+
+        @Override
+        public long getCommandRttMax() {
+            return snapshot().getCommandRtt().getMax();
+        }
+
+        @Override
+        public long getHandlerTimeCount() {
+            return snapshot().getHandlerTime().getCount();
+        }
+
+        @Override
+        public double getHandlerTimeMean() {
+            return snapshot().getHandlerTime().getMean();
+        }
+
+        @Override
+        public long getHandlerTime50thPercentile() {
+            return snapshot().getHandlerTime().getValueAtPercentile(50);
+        }
+
+        @Override
+        public long getHandlerTime99thPercentile() {
+            return snapshot().getHandlerTime().getValueAtPercentile(99);
+        }
+
+        @Override
+        public long getHandlerTimeMax() {
+            return snapshot().getHandlerTime().getMax();
+        }
+    }
+}
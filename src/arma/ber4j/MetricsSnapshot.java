@@ -0,0 +1,232 @@
+package arma.ber4j;
+
+import java.util.Collection;
+
+/**
+ * Metrics of one client at a point in time, or the sum of the metrics of several clients.
+ * <p>Counters count since the metrics of the client were enabled, latencies are in microseconds.</p>
+ *
+ * @see BattlEyeClient#getMetricsSnapshot()
+ */
+public final class MetricsSnapshot {
+
+    private final long time;
+    private final int clients;
+    private final int connectedClients;
+    private final long packetsSent;
+    private final long packetsReceived;
+    private final long packetsRejected;
+    private final long messages;
+    private final long duplicateMessages;
+    private final double messagesPerSecond;
+    private final long commandsSent;
+    private final long commandResponses;
+    private final long retransmissions;
+    private final int commandQueueDepth;
+    private final int commandsInFlight;
+    private final long reconnectAttempts;
+    private final long successfulReconnects;
+    private final LatencyHistogram.Snapshot commandRtt;
+    private final LatencyHistogram.Snapshot handlerTime;
+
+    MetricsSnapshot(BattlEyeClient client, ClientMetrics metrics, int commandQueueDepth, int commandsInFlight) {
+        time = System.currentTimeMillis();
+        clients = 1;
+        connectedClients = client.isConnected() ? 1 : 0;
+        packetsSent = metrics.packetsSent.sum();
+        packetsReceived = metrics.packetsReceived.sum();
+        packetsRejected = metrics.packetsRejected.sum();
+        messages = metrics.messages.sum();
+        duplicateMessages = metrics.duplicateMessages.sum();
+        messagesPerSecond = metrics.getMessagesPerSecond(time);
+        commandsSent = metrics.commandsSent.sum();
+        commandResponses = metrics.commandResponses.sum();
+        retransmissions = metrics.retransmissions.sum();
+        this.commandQueueDepth = commandQueueDepth;
+        this.commandsInFlight = commandsInFlight;
+        reconnectAttempts = client.getReconnectAttempts();
+        successfulReconnects = client.getSuccessfulReconnects();
+        commandRtt = metrics.commandRtt.snapshot();
+        handlerTime = metrics.handlerTime.snapshot();
+    }
+
+    private MetricsSnapshot(Collection<MetricsSnapshot> snapshots) {
+        long time = 0;
+        int clients = 0, connectedClients = 0, commandQueueDepth = 0, commandsInFlight = 0;
+        long packetsSent = 0, packetsReceived = 0, packetsRejected = 0, messages = 0, duplicateMessages = 0;
+        long commandsSent = 0, commandResponses = 0, retransmissions = 0, reconnectAttempts = 0, successfulReconnects = 0;
+        double messagesPerSecond = 0;
+        LatencyHistogram.Snapshot commandRtt = LatencyHistogram.Snapshot.EMPTY;
+        LatencyHistogram.Snapshot handlerTime = LatencyHistogram.Snapshot.EMPTY;
+        for (MetricsSnapshot snapshot : snapshots) {
+            time = Math.max(time, snapshot.time);
+            clients += snapshot.clients;
+            connectedClients += snapshot.connectedClients;
+            packetsSent += snapshot.packetsSent;
+            packetsReceived += snapshot.packetsReceived;
+            packetsRejected += snapshot.packetsRejected;
+            messages += snapshot.messages;
+            duplicateMessages += snapshot.duplicateMessages;
+            messagesPerSecond += snapshot.messagesPerSecond;
+            commandsSent += snapshot.commandsSent;
+            commandResponses += snapshot.commandResponses;
+            retransmissions += snapshot.retransmissions;
+            commandQueueDepth += snapshot.commandQueueDepth;
+            commandsInFlight += snapshot.commandsInFlight;
+            reconnectAttempts += snapshot.reconnectAttempts;
+            successfulReconnects += snapshot.successfulReconnects;
+            commandRtt = commandRtt.merge(snapshot.commandRtt);
+            handlerTime = handlerTime.merge(snapshot.handlerTime);
+        }
+        this.time = time != 0 ? time : System.currentTimeMillis();
+        this.clients = clients;
+        this.connectedClients = connectedClients;
+        this.packetsSent = packetsSent;
+        this.packetsReceived = packetsReceived;
+        this.packetsRejected = packetsRejected;
+        this.messages = messages;
+        this.duplicateMessages = duplicateMessages;
+        this.messagesPerSecond = messagesPerSecond;
+        this.commandsSent = commandsSent;
+        this.commandResponses = commandResponses;
+        this.retransmissions = retransmissions;
+        this.commandQueueDepth = commandQueueDepth;
+        this.commandsInFlight = commandsInFlight;
+        this.reconnectAttempts = reconnectAttempts;
+        this.successfulReconnects = successfulReconnects;
+        this.commandRtt = commandRtt;
+        this.handlerTime = handlerTime;
+    }
+
+    /**
+     * @return the sum of the given snapshots, the histograms are merged
+     */
+    public static MetricsSnapshot aggregate(Collection<MetricsSnapshot> snapshots) {
+        return new MetricsSnapshot(snapshots);
+    }
+
+    /**
+     * @return the time the snapshot was taken, the latest one of an aggregate
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return the number of clients in this snapshot, 1 unless aggregated
+     */
+    public int getClients() {
+        return clients;
+    }
+
+    public int getConnectedClients() {
+        return connectedClients;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    /**
+     * @return the number of received datagrams which were dropped because of an invalid header or size
+     */
+    public long getPacketsRejected() {
+        return packetsRejected;
+    }
+
+    /**
+     * @return the number of server messages passed to the handlers
+     */
+    public long getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return the number of server messages which were received again because an acknowledge was lost
+     */
+    public long getDuplicateMessages() {
+        return duplicateMessages;
+    }
+
+    /**
+     * @return the average number of server messages per second over the last 10 complete seconds
+     */
+    public double getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    /**
+     * @return the number of commands sent, including keep alive packets and excluding retransmissions
+     */
+    public long getCommandsSent() {
+        return commandsSent;
+    }
+
+    public long getCommandResponses() {
+        return commandResponses;
+    }
+
+    public long getRetransmissions() {
+        return retransmissions;
+    }
+
+    /**
+     * @return the number of commands waiting to be sent
+     */
+    public int getCommandQueueDepth() {
+        return commandQueueDepth;
+    }
+
+    /**
+     * @return the number of commands sent and waiting for their responses
+     */
+    public int getCommandsInFlight() {
+        return commandsInFlight;
+    }
+
+    public long getReconnectAttempts() {
+        return reconnectAttempts;
+    }
+
+    public long getSuccessfulReconnects() {
+        return successfulReconnects;
+    }
+
+    /**
+     * @return the times between sending a command and receiving its complete response, without retransmitted
+     * commands
+     */
+    public LatencyHistogram.Snapshot getCommandRtt() {
+        return commandRtt;
+    }
+
+    /**
+     * @return the times the handlers took for a message or a command response
+     */
+    public LatencyHistogram.Snapshot getHandlerTime() {
+        return handlerTime;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{" +
+                "clients=" + clients +
+                ", connectedClients=" + connectedClients +
+                ", packetsSent=" + packetsSent +
+                ", packetsReceived=" + packetsReceived +
+                ", packetsRejected=" + packetsRejected +
+                ", messages=" + messages +
+                ", messagesPerSecond=" + messagesPerSecond +
+                ", commandsSent=" + commandsSent +
+                ", commandResponses=" + commandResponses +
+                ", retransmissions=" + retransmissions +
+                ", commandQueueDepth=" + commandQueueDepth +
+                ", commandRtt=" + commandRtt +
+                ", handlerTime=" + handlerTime +
+                '}';
+    }
+}
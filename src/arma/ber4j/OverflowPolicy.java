@@ -0,0 +1,23 @@
+package arma.ber4j;
+
+/**
+ * What an {@link EventDispatcher} does with a new message or command response if its buffer is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Wait until the handlers made room. Slows down the receiving thread, and with it the acknowledges of the server
+     * messages, until the handlers catch up. The event is dropped if the wait takes longer than 10 seconds or the
+     * waiting thread is interrupted.
+     */
+    Block,
+
+    /**
+     * Discard the oldest waiting event to make room for the new one.
+     */
+    DropOldest,
+
+    /**
+     * Discard the new event.
+     */
+    DropNewest
+}
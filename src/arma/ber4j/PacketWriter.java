@@ -0,0 +1,134 @@
+package arma.ber4j;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Encodes and writes the packets of one connection.
+ * <p>Any thread may send packets. Packets are put on a lock-free queue and the thread which finds the writer idle
+ * becomes the single writer: it drains the queue, including the packets of concurrent senders, into a pooled direct
+ * buffer. So the encoder, the checksum and the buffer are never shared and no sender ever blocks on a lock.</p>
+ */
+final class PacketWriter {
+    private static final Logger log = LoggerFactory.getLogger(PacketWriter.class);
+
+    static final int MAX_PACKET_SIZE = BattlEyeCodec.MAX_PACKET_SIZE;
+
+    // shared by all clients, there is at most one buffer in use per writing connection
+    private static final BufferPool DIRECT_BUFFER_POOL = new BufferPool(MAX_PACKET_SIZE, 64, true);
+
+    private final DatagramChannel channel;
+    private final AtomicLong lastSent;
+    private final Queue<Packet> packetQueue;
+    private final AtomicInteger pendingPackets;
+    private volatile Charset charset;
+    private volatile DatagramRecorder recorder; // null if not recording
+
+    // only accessed by the current writer
+    private final CRC32 crc;
+    private CharsetEncoder encoder;
+
+    PacketWriter(DatagramChannel channel, Charset charset, AtomicLong lastSent) {
+        this.channel = channel;
+        this.charset = charset;
+        this.lastSent = lastSent;
+        packetQueue = new ConcurrentLinkedQueue<>();
+        pendingPackets = new AtomicInteger();
+        crc = new CRC32();
+    }
+
+    void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    void setRecorder(DatagramRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Sends a packet, either immediately or by handing it over to the thread which is currently writing.
+     * Write errors are thrown by the thread which writes the packet.
+     */
+    void send(BattlEyePacketType type, int sequenceNumber, String payload) throws IOException {
+        packetQueue.offer(new Packet(type, sequenceNumber, payload));
+        if (pendingPackets.getAndIncrement() != 0) {
+            return; // the current writer will send this packet
+        }
+        drain();
+    }
+
+    private void drain() throws IOException {
+        IOException exception = null;
+        ByteBuffer buffer = DIRECT_BUFFER_POOL.acquire();
+        try {
+            int missed = 1;
+            do {
+                Packet packet;
+                while ((packet = packetQueue.poll()) != null) {
+                    try {
+                        write(packet, buffer);
+                    } catch (IOException e) {
+                        // keep draining, otherwise the queued packets are never sent
+                        if (exception == null) {
+                            exception = e;
+                        }
+                    }
+                }
+                // packets sent in the meantime have been drained already or will be in the next round
+                missed = pendingPackets.addAndGet(-missed);
+            } while (missed != 0);
+        } finally {
+            DIRECT_BUFFER_POOL.release(buffer);
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private void write(Packet packet, ByteBuffer buffer) throws IOException {
+        if (encoder == null || !encoder.charset().equals(charset)) {
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        try {
+            BattlEyeCodec.encode(buffer, packet.type, packet.sequenceNumber, packet.payload, encoder, crc);
+        } catch (BufferOverflowException e) {
+            throw new IOException("packet exceeds " + MAX_PACKET_SIZE + " bytes");
+        }
+        DatagramRecorder r = recorder;
+        if (r != null) {
+            r.sent(buffer, buffer.limit());
+        }
+        int write = channel.write(buffer);
+        if (log.isTraceEnabled()) {
+            log.trace("{} bytes written to the channel", write);
+        }
+        lastSent.set(System.currentTimeMillis());
+    }
+
+    private static final class Packet {
+        final BattlEyePacketType type;
+        final int sequenceNumber;
+        final String payload;
+
+        Packet(BattlEyePacketType type, int sequenceNumber, String payload) {
+            this.type = type;
+            this.sequenceNumber = sequenceNumber;
+            this.payload = payload;
+        }
+    }
+}
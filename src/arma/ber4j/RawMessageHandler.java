@@ -0,0 +1,23 @@
+package arma.ber4j;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Low level variant of {@link MessageHandler} which receives the undecoded server message.
+ * <p>The buffer is a read-only view of the client's receive buffer, positioned at the first byte of the message and
+ * limited to its last byte. It is reused for every message and must not be retained after the call returns. Wrap it
+ * in a reusable {@link ByteCharSequence} to inspect the text without allocating, and only decode the messages which
+ * are actually needed.</p>
+ */
+public interface RawMessageHandler {
+    void onMessageReceived(ByteBuffer message);
+
+    /**
+     * Called by the client instead of {@link #onMessageReceived(ByteBuffer)} with the sequence number of the server
+     * message, 0 to 255, which wraps around and restarts with every login. Handlers which need it override this
+     * method, the default passes the message on.
+     */
+    default void onMessageReceived(int sequenceNumber, ByteBuffer message) {
+        onMessageReceived(message);
+    }
+}
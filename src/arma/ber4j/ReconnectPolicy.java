@@ -0,0 +1,133 @@
+package arma.ber4j;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delays of the automatic reconnect after a lost connection.
+ * <p>The delays grow exponentially with decorrelated jitter: every delay is a random time between the base delay
+ * and three times the previous delay, capped by the max delay. So clients which lost their connections at the same
+ * time, e.g. because the host of many game servers rebooted, spread their attempts instead of retrying in lockstep.
+ * The delay starts over at the base delay after a successful login.</p>
+ * <p>In addition the number of concurrent login handshakes of automatic reconnects is limited for the whole process.
+ * Attempts which exceed the limit wait until a running handshake succeeded or failed.</p>
+ */
+public class ReconnectPolicy {
+
+    public static final ReconnectPolicy DEFAULT = new ReconnectPolicy(2000, 60000);
+
+    private static final Queue<Runnable> waitingHandshakes = new ArrayDeque<>(); // guarded by ReconnectPolicy.class
+    private static int maxConcurrentHandshakes = 16;
+    private static int activeHandshakes;
+
+    private final long baseDelay;
+    private final long maxDelay;
+
+    public ReconnectPolicy(long baseDelay, long maxDelay) {
+        if (baseDelay < 0 || maxDelay < baseDelay) {
+            throw new IllegalArgumentException("0 <= baseDelay <= maxDelay required");
+        }
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    public long getBaseDelay() {
+        return baseDelay;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * @param previousDelay the previous delay, 0 for the first attempt after a successful login
+     * @return the delay in milliseconds until the next attempt
+     */
+    public long nextDelay(long previousDelay) {
+        long upper = Math.min(maxDelay, Math.max(baseDelay, previousDelay) * 3);
+        if (upper <= baseDelay) {
+            return baseDelay;
+        }
+        return ThreadLocalRandom.current().nextLong(baseDelay, upper + 1);
+    }
+
+    public static synchronized int getMaxConcurrentHandshakes() {
+        return maxConcurrentHandshakes;
+    }
+
+    /**
+     * Sets the max number of concurrent login handshakes of automatic reconnects in this process, defaults to 16.
+     */
+    public static void setMaxConcurrentHandshakes(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("max must be positive");
+        }
+        Runnable[] granted;
+        synchronized (ReconnectPolicy.class) {
+            maxConcurrentHandshakes = max;
+            granted = grantWaitingHandshakes();
+        }
+        run(granted);
+    }
+
+    /**
+     * @return the number of automatic reconnects which are currently waiting for the login response
+     */
+    public static synchronized int getActiveHandshakes() {
+        return activeHandshakes;
+    }
+
+    /**
+     * @return the number of automatic reconnects which wait for a running handshake to finish
+     */
+    public static synchronized int getWaitingHandshakes() {
+        return waitingHandshakes.size();
+    }
+
+    /**
+     * Runs the handshake now if the limit allows it, otherwise as soon as another handshake finished. The handshake
+     * must call {@link #handshakeFinished()} exactly once.
+     */
+    static void startHandshake(Runnable handshake) {
+        synchronized (ReconnectPolicy.class) {
+            if (activeHandshakes >= maxConcurrentHandshakes) {
+                waitingHandshakes.offer(handshake);
+                return;
+            }
+            activeHandshakes++;
+        }
+        handshake.run();
+    }
+
+    static void handshakeFinished() {
+        Runnable[] granted;
+        synchronized (ReconnectPolicy.class) {
+            activeHandshakes--;
+            granted = grantWaitingHandshakes();
+        }
+        run(granted);
+    }
+
+    // must hold the lock
+    private static Runnable[] grantWaitingHandshakes() {
+        int count = Math.min(waitingHandshakes.size(), maxConcurrentHandshakes - activeHandshakes);
+        if (count <= 0) {
+            return null;
+        }
+        Runnable[] granted = new Runnable[count];
+        for (int i = 0; i < count; i++) {
+            granted[i] = waitingHandshakes.poll();
+        }
+        activeHandshakes += count;
+        return granted;
+    }
+
+    private static void run(Runnable[] handshakes) {
+        if (handshakes != null) {
+            for (Runnable handshake : handshakes) {
+                handshake.run();
+            }
+        }
+    }
+}
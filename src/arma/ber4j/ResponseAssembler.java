@@ -0,0 +1,208 @@
+package arma.ber4j;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Reassembles multi packet command responses.
+ * <p>The parts are collected per sequence number, so responses to different commands may interleave. The payload of
+ * every part is copied into a pooled buffer and the response is decoded once after all parts have been received.
+ * Incomplete responses are evicted after a timeout and their buffers are returned to the pool.</p>
+ * <p>Streamed responses are not merged, every part is handed over to the {@link ResponsePartHandler} as soon as all
+ * previous parts have been handed over and its buffer is returned to the pool right afterwards.</p>
+ */
+final class ResponseAssembler {
+    private static final Logger log = LoggerFactory.getLogger(ResponseAssembler.class);
+
+    private final BufferPool bufferPool;
+    private final long timeout;
+    private final Entry[] entries;
+    private byte[] mergeBuffer;
+    private final ByteBuffer[] readyParts; // only used by the receiving thread
+
+    ResponseAssembler(BufferPool bufferPool, long timeout) {
+        this.bufferPool = bufferPool;
+        this.timeout = timeout;
+        entries = new Entry[256];
+        mergeBuffer = new byte[bufferPool.getBufferSize() * 4];
+        readyParts = new ByteBuffer[256];
+    }
+
+    /**
+     * Adds the remaining bytes of the given buffer as part of the response with the given sequence number.
+     *
+     * @return the complete response if this was the last missing part, otherwise <tt>null</tt>
+     */
+    synchronized String add(int sequenceNumber, int packetCount, int packetIndex, ByteBuffer payload, Charset charset, long time) {
+        Entry entry = addPart(sequenceNumber, packetCount, packetIndex, payload, time);
+        if (entry == null || entry.received < packetCount) {
+            return null;
+        }
+        // last packet received, merge packet data
+        if (mergeBuffer.length < entry.size) {
+            mergeBuffer = new byte[Math.max(entry.size, mergeBuffer.length * 2)];
+        }
+        int offset = 0;
+        for (int i = 0; i < packetCount; i++) {
+            ByteBuffer p = entry.parts[i];
+            int length = p.remaining();
+            p.get(mergeBuffer, offset, length);
+            offset += length;
+        }
+        entry.release(bufferPool);
+        return new String(mergeBuffer, 0, offset, charset);
+    }
+
+    /**
+     * Adds the remaining bytes of the given buffer as part of a streamed response and passes all parts which are
+     * next in order to the handler. The handler is called outside of the lock of this assembler.
+     *
+     * @return <tt>true</tt> if the last part was passed to the handler
+     */
+    boolean stream(int sequenceNumber, int packetCount, int packetIndex, ByteBuffer payload, long time,
+                   ResponsePartHandler handler) {
+        int readyCount = 0;
+        boolean complete = false;
+        synchronized (this) {
+            Entry entry = addPart(sequenceNumber, packetCount, packetIndex, payload, time);
+            if (entry == null) {
+                return false;
+            }
+            while (entry.nextIndex < packetCount && entry.parts[entry.nextIndex] != null) {
+                readyParts[readyCount++] = entry.parts[entry.nextIndex];
+                entry.parts[entry.nextIndex++] = null;
+            }
+            if (entry.nextIndex == packetCount) {
+                entry.release(bufferPool);
+                complete = true;
+            }
+        }
+        for (int i = 0; i < readyCount; i++) {
+            ByteBuffer part = readyParts[i];
+            readyParts[i] = null;
+            try {
+                handler.onResponsePart(part);
+            } finally {
+                bufferPool.release(part);
+            }
+        }
+        return complete;
+    }
+
+    // must hold the lock, returns null if the part was rejected
+    private Entry addPart(int sequenceNumber, int packetCount, int packetIndex, ByteBuffer payload, long time) {
+        if (packetCount == 0 || packetIndex >= packetCount) {
+            log.warn("invalid multi packet header: {}/{}", packetIndex, packetCount);
+            return null;
+        }
+        Entry entry = entries[sequenceNumber];
+        if (entry == null) {
+            entry = new Entry();
+            entries[sequenceNumber] = entry;
+        }
+        if (entry.packetCount != packetCount) {
+            if (entry.packetCount != 0) {
+                log.debug("discard incomplete multi packet response: {}", sequenceNumber);
+                entry.release(bufferPool);
+            }
+            entry.packetCount = packetCount;
+        }
+        if (packetIndex < entry.nextIndex || entry.parts[packetIndex] != null) {
+            log.debug("duplicate multi packet response part received: {}[{}]", sequenceNumber, packetIndex);
+            return null;
+        }
+        ByteBuffer part = bufferPool.acquire(payload.remaining());
+        part.put(payload);
+        part.flip();
+        entry.parts[packetIndex] = part;
+        entry.size += part.remaining();
+        entry.received++;
+        entry.deadline = time + timeout;
+        return entry;
+    }
+
+    /**
+     * Discards all incomplete responses which did not receive a part since the timeout. Streamed responses keep the
+     * position of the next part to hand over, so the parts which were already handed over are not repeated if the
+     * command is retransmitted.
+     *
+     * @return the number of discarded responses
+     */
+    synchronized int evictExpired(long time) {
+        int evicted = 0;
+        for (int i = 0; i < entries.length; i++) {
+            Entry entry = entries[i];
+            if (entry != null && entry.packetCount != 0 && entry.deadline <= time && entry.received > entry.nextIndex) {
+                log.debug("multi packet response timed out: {} ({}/{} parts received)", i, entry.received, entry.packetCount);
+                if (entry.nextIndex > 0) {
+                    entry.releaseBuffered(bufferPool);
+                } else {
+                    entry.release(bufferPool);
+                }
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * @return the time when the next incomplete response expires, or <tt>Long.MAX_VALUE</tt> if there is none
+     */
+    synchronized long getNextDeadline() {
+        long next = Long.MAX_VALUE;
+        for (Entry entry : entries) {
+            if (entry != null && entry.packetCount != 0 && entry.received > entry.nextIndex && entry.deadline < next) {
+                next = entry.deadline;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Discards the response with the given sequence number, e.g. because its command was discarded.
+     */
+    synchronized void remove(int sequenceNumber) {
+        Entry entry = entries[sequenceNumber];
+        if (entry != null) {
+            entry.release(bufferPool);
+        }
+    }
+
+    synchronized void clear() {
+        for (Entry entry : entries) {
+            if (entry != null) {
+                entry.release(bufferPool);
+            }
+        }
+    }
+
+    private static final class Entry {
+        final ByteBuffer[] parts = new ByteBuffer[256];
+        int packetCount;
+        int received;
+        int nextIndex; // next part to hand over to the handler of a streamed response
+        int size;
+        long deadline;
+
+        void releaseBuffered(BufferPool bufferPool) {
+            for (int i = nextIndex; i < packetCount; i++) {
+                if (parts[i] != null) {
+                    bufferPool.release(parts[i]);
+                    parts[i] = null;
+                }
+            }
+            received = nextIndex;
+            size = 0;
+        }
+
+        void release(BufferPool bufferPool) {
+            releaseBuffered(bufferPool);
+            packetCount = 0;
+            received = 0;
+            nextIndex = 0;
+        }
+    }
+}
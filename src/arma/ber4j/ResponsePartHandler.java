@@ -0,0 +1,23 @@
+package arma.ber4j;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the response of a command sent with {@link BattlEyeClient#stream} part by part, instead of the whole
+ * response after all parts have been received.
+ */
+public interface ResponsePartHandler {
+
+    /**
+     * Called for every part of the response in order. The buffer contains the raw payload of the part and is only
+     * valid during the call. Parts end at arbitrary positions, a line or a multi-byte character may continue in the
+     * next part.
+     */
+    void onResponsePart(ByteBuffer part);
+
+    /**
+     * Called after the last part was passed to {@link #onResponsePart}.
+     */
+    default void onResponseComplete() {
+    }
+}
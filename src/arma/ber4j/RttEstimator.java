@@ -0,0 +1,60 @@
+package arma.ber4j;
+
+/**
+ * Smoothed round trip time and retransmission timeout estimation as specified for TCP in RFC 6298.
+ * <p>Only responses to commands which were sent once may be sampled (Karn's algorithm), a response to a
+ * retransmitted command can't be matched to one of its transmissions.</p>
+ */
+final class RttEstimator {
+    static final long INITIAL_RTO = 1000;
+    static final long MIN_RTO = 100;
+    static final long MAX_RTO = 5000;
+    private static final long CLOCK_GRANULARITY = 10;
+
+    private long smoothedRtt = -1;
+    private long rttVariation;
+    private long rto = INITIAL_RTO;
+
+    synchronized void sample(long rtt) {
+        if (rtt < 0) {
+            return;
+        }
+        if (smoothedRtt < 0) {
+            smoothedRtt = rtt;
+            rttVariation = rtt / 2;
+        } else {
+            rttVariation = (3 * rttVariation + Math.abs(smoothedRtt - rtt)) / 4;
+            smoothedRtt = (7 * smoothedRtt + rtt) / 8;
+        }
+        rto = Math.min(MAX_RTO, Math.max(MIN_RTO, smoothedRtt + Math.max(CLOCK_GRANULARITY, 4 * rttVariation)));
+    }
+
+    /**
+     * @return the smoothed round trip time in milliseconds, or -1 if no round trip was measured yet
+     */
+    synchronized long getSmoothedRtt() {
+        return smoothedRtt;
+    }
+
+    synchronized long getRttVariation() {
+        return rttVariation;
+    }
+
+    /**
+     * @return the retransmission timeout in milliseconds
+     */
+    synchronized long getRto() {
+        return rto;
+    }
+
+    /**
+     * @return the retransmission timeout after the given number of transmissions, doubled for every retransmission
+     */
+    long getRto(int transmissions) {
+        long timeout = getRto();
+        for (int i = 1; i < transmissions && timeout < MAX_RTO; i++) {
+            timeout *= 2;
+        }
+        return Math.min(timeout, MAX_RTO);
+    }
+}
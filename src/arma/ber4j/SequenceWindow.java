@@ -0,0 +1,57 @@
+package arma.ber4j;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the recently seen 1-byte sequence numbers of server messages to detect retransmitted messages.
+ * <p>The window covers the 128 sequence numbers up to the highest one seen so far, taking the wraparound from 255
+ * to 0 into account. Sequence numbers up to 127 ahead of the highest one are new and move the window forward.
+ * Instances are not thread safe, they're only used by the receiving thread of a connection.</p>
+ */
+final class SequenceWindow {
+    private static final int WINDOW_SIZE = 128;
+
+    private final boolean[] seen;
+    private int highest;
+
+    SequenceWindow() {
+        seen = new boolean[256];
+        reset();
+    }
+
+    /**
+     * Forgets all sequence numbers, the server starts over at 0 after every login.
+     */
+    void reset() {
+        Arrays.fill(seen, false);
+        highest = -1;
+    }
+
+    /**
+     * Marks the sequence number as seen.
+     *
+     * @return <tt>false</tt> if the sequence number was already seen, i.e. the message is a duplicate
+     */
+    boolean mark(int sequenceNumber) {
+        if (highest < 0) {
+            highest = sequenceNumber;
+            seen[sequenceNumber] = true;
+            return true;
+        }
+        int distance = (sequenceNumber - highest) & 0xFF;
+        if (distance != 0 && distance < WINDOW_SIZE) {
+            // newer message, the sequence numbers skipped on the way were last used 256 messages ago
+            for (int i = 1; i <= distance; i++) {
+                seen[(highest + i) & 0xFF] = false;
+            }
+            highest = sequenceNumber;
+            seen[sequenceNumber] = true;
+            return true;
+        }
+        if (seen[sequenceNumber]) {
+            return false;
+        }
+        seen[sequenceNumber] = true; // older message which was missing so far
+        return true;
+    }
+}
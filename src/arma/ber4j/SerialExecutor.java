@@ -0,0 +1,63 @@
+package arma.ber4j;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks one after another in the order they were submitted, on the threads of a shared executor. The tasks of
+ * one serial executor never run concurrently, a task which blocks only delays the later tasks of the same serial
+ * executor.
+ */
+final class SerialExecutor implements Executor {
+    private static final Logger log = LoggerFactory.getLogger(SerialExecutor.class);
+
+    private final Executor executor;
+    private final Queue<Runnable> tasks; // guarded by this
+    private boolean scheduled; // a drain task was submitted and didn't finish yet (guarded by this)
+    private final Runnable drainTask;
+
+    SerialExecutor(Executor executor) {
+        this.executor = executor;
+        tasks = new ArrayDeque<>();
+        drainTask = new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (this) {
+            tasks.offer(task);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        executor.execute(drainTask);
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable task;
+            synchronized (this) {
+                task = tasks.poll();
+                if (task == null) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("unhandled exception in client task", e);
+            }
+        }
+    }
+}
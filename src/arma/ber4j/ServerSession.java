@@ -0,0 +1,99 @@
+package arma.ber4j;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The server side of one RCon session of a {@link BattlEyeServer}: the sequence numbers of the server messages and
+ * the messages which were not acknowledged yet. Subclasses add the state of their server, guarded by the session as
+ * well.
+ */
+public class ServerSession {
+    private final SocketAddress address;
+    volatile long lastReceived;
+    // guarded by this
+    private int nextSequenceNumber;
+    private final Map<Integer, PendingMessage> unacknowledged;
+
+    protected ServerSession(SocketAddress address) {
+        this.address = address;
+        lastReceived = System.currentTimeMillis();
+        unacknowledged = new HashMap<>();
+    }
+
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * @return the time of the last packet received from the client
+     */
+    public long getLastReceived() {
+        return lastReceived;
+    }
+
+    public synchronized int getUnacknowledgedCount() {
+        return unacknowledged.size();
+    }
+
+    synchronized boolean acknowledge(int sequenceNumber) {
+        return unacknowledged.remove(sequenceNumber) != null;
+    }
+
+    /**
+     * @return the packet with the next sequence number, which is retransmitted until it is acknowledged, or
+     * <tt>null</tt> if too many messages are unacknowledged
+     */
+    synchronized ByteBuffer nextMessage(BattlEyeServer.Encoder encoder, byte[] message, int maxUnacknowledged,
+                                        long now) {
+        if (unacknowledged.size() >= maxUnacknowledged) {
+            return null;
+        }
+        int sequenceNumber = nextSequenceNumber;
+        nextSequenceNumber = (sequenceNumber + 1) & 0xFF;
+        encoder.begin(BattlEyePacketType.Acknowledge, sequenceNumber).put(message);
+        ByteBuffer packet = encoder.finish();
+        unacknowledged.put(sequenceNumber, new PendingMessage(packet, now));
+        return packet;
+    }
+
+    /**
+     * Adds the messages which are due for a retransmission to the list.
+     *
+     * @return <tt>false</tt> if a message was transmitted too often without acknowledge, or too many messages are
+     * unacknowledged
+     */
+    synchronized boolean retransmit(long now, long delay, int maxTransmissions, int maxUnacknowledged,
+                                    List<ByteBuffer> packets) {
+        if (unacknowledged.size() >= maxUnacknowledged) {
+            return false;
+        }
+        for (PendingMessage message : unacknowledged.values()) {
+            if (now - message.sentTime < delay) {
+                continue;
+            }
+            if (message.transmissions >= maxTransmissions) {
+                return false;
+            }
+            message.transmissions++;
+            message.sentTime = now;
+            packets.add(message.packet);
+        }
+        return true;
+    }
+
+    private static final class PendingMessage {
+        final ByteBuffer packet;
+        long sentTime;
+        int transmissions;
+
+        PendingMessage(ByteBuffer packet, long sentTime) {
+            this.packet = packet;
+            this.sentTime = sentTime;
+            transmissions = 1;
+        }
+    }
+}
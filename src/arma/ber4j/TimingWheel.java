@@ -0,0 +1,201 @@
+package arma.ber4j;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel which runs the timeouts of many connections on one thread.
+ * <p>Timeouts are put into one of {@code wheelSize} buckets by their deadline tick, so scheduling and cancelling is
+ * O(1) regardless of the number of timeouts. The worker thread doesn't tick while nothing is due: it sleeps until
+ * the earliest deadline and is only woken early if an earlier timeout is scheduled. Timeouts are run on the worker
+ * thread and must not block.</p>
+ */
+final class TimingWheel {
+    private static final Logger log = LoggerFactory.getLogger(TimingWheel.class);
+
+    /**
+     * Shared by all clients, started with the first timeout.
+     */
+    static final TimingWheel SHARED = new TimingWheel("ber4j timer", 10, 512);
+
+    private final String name;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime;
+    private final Queue<Timeout> pendingTimeouts; // scheduled, but not yet put into a bucket
+    private volatile Thread worker;
+    private volatile long wakeupTick; // tick the worker sleeps until, Long.MAX_VALUE while it is awake
+
+    TimingWheel(String name, long tickMillis, int wheelSize) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize must be a power of two");
+        }
+        this.name = name;
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = wheelSize - 1;
+        startTime = System.nanoTime();
+        pendingTimeouts = new ConcurrentLinkedQueue<>();
+        wakeupTick = Long.MAX_VALUE;
+    }
+
+    /**
+     * Runs the task on the worker thread after the given delay, rounded up to the next tick.
+     */
+    Timeout schedule(Runnable task, long delayMillis) {
+        long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        Timeout timeout = new Timeout(task, (deadline + tickNanos - 1) / tickNanos);
+        pendingTimeouts.offer(timeout);
+        Thread thread = worker;
+        if (thread == null) {
+            start();
+        } else if (timeout.deadlineTick < wakeupTick) {
+            LockSupport.unpark(thread);
+        }
+        return timeout;
+    }
+
+    private synchronized void start() {
+        if (worker == null) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            }, name);
+            thread.setDaemon(true);
+            worker = thread;
+            thread.start();
+        }
+    }
+
+    private long currentTick() {
+        return (System.nanoTime() - startTime) / tickNanos;
+    }
+
+    private void work() {
+        log.trace("start {}", name);
+        long lastTick = currentTick();
+        while (true) {
+            long tick = currentTick();
+            // visit every bucket once if more than one rotation passed
+            long from = Math.max(lastTick + 1, tick - mask);
+            for (long t = from; t <= tick; t++) {
+                wheel[(int) (t & mask)].expire(tick);
+            }
+            lastTick = tick;
+            transferPendingTimeouts(tick);
+
+            long next = nextDeadlineTick();
+            wakeupTick = next;
+            if (!pendingTimeouts.isEmpty()) {
+                wakeupTick = Long.MAX_VALUE; // scheduled in the meantime, may be earlier
+                continue;
+            }
+            if (next == Long.MAX_VALUE) {
+                LockSupport.park(this);
+            } else {
+                long delay = next * tickNanos - (System.nanoTime() - startTime);
+                if (delay > 0) {
+                    LockSupport.parkNanos(this, delay);
+                }
+            }
+            wakeupTick = Long.MAX_VALUE;
+        }
+    }
+
+    private void transferPendingTimeouts(long tick) {
+        Timeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            if (timeout.deadlineTick <= tick) {
+                timeout.expire();
+            } else {
+                wheel[(int) (timeout.deadlineTick & mask)].add(timeout);
+            }
+        }
+    }
+
+    private long nextDeadlineTick() {
+        long next = Long.MAX_VALUE;
+        for (Bucket bucket : wheel) {
+            if (bucket.minDeadlineTick < next) {
+                next = bucket.minDeadlineTick;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * A scheduled task, cancelled timeouts are removed from their bucket when the bucket is visited.
+     */
+    static final class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private volatile boolean cancelled;
+        private Timeout next; // only accessed by the worker
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        private void expire() {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("unhandled exception in timeout", e);
+            }
+        }
+    }
+
+    // only accessed by the worker
+    private static final class Bucket {
+        private Timeout head;
+        private long minDeadlineTick = Long.MAX_VALUE;
+
+        void add(Timeout timeout) {
+            timeout.next = head;
+            head = timeout;
+            if (timeout.deadlineTick < minDeadlineTick) {
+                minDeadlineTick = timeout.deadlineTick;
+            }
+        }
+
+        void expire(long tick) {
+            if (minDeadlineTick > tick) {
+                return; // nothing due in this round
+            }
+            Timeout timeout = head;
+            head = null;
+            minDeadlineTick = Long.MAX_VALUE;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                timeout.next = null;
+                if (!timeout.cancelled) {
+                    if (timeout.deadlineTick <= tick) {
+                        timeout.expire();
+                    } else {
+                        add(timeout);
+                    }
+                }
+                timeout = next;
+            }
+        }
+    }
+}
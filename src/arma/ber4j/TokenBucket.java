@@ -0,0 +1,58 @@
+package arma.ber4j;
+
+/**
+ * Token bucket which limits the rate of sent commands, not thread safe.
+ * <p>The bucket holds up to <tt>burst</tt> tokens and gains <tt>rate</tt> tokens per second, every command takes
+ * one token.</p>
+ */
+final class TokenBucket {
+    private final double rate; // tokens per millisecond
+    private final int burst;
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(double commandsPerSecond, int burst, long time) {
+        rate = commandsPerSecond / 1000;
+        this.burst = burst;
+        tokens = burst;
+        lastRefill = time;
+    }
+
+    double getCommandsPerSecond() {
+        return rate * 1000;
+    }
+
+    int getBurst() {
+        return burst;
+    }
+
+    /**
+     * @return <tt>true</tt> if a token was taken
+     */
+    boolean tryAcquire(long time) {
+        refill(time);
+        if (tokens >= 1) {
+            tokens--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the time the next token is available
+     */
+    long nextTokenTime(long time) {
+        refill(time);
+        if (tokens >= 1) {
+            return time;
+        }
+        return time + (long) Math.ceil((1 - tokens) / rate);
+    }
+
+    private void refill(long time) {
+        if (time > lastRefill) {
+            tokens = Math.min(burst, tokens + (time - lastRefill) * rate);
+            lastRefill = time;
+        }
+    }
+}
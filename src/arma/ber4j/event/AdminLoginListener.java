@@ -0,0 +1,5 @@
+package arma.ber4j.event;
+
+public interface AdminLoginListener {
+    void onAdminLogin(int admin, String address, int port);
+}
@@ -0,0 +1,8 @@
+package arma.ber4j.event;
+
+public interface ChatListener {
+    /**
+     * @param channel the chat channel without parentheses, e.g. <tt>Global</tt> or <tt>Side</tt>
+     */
+    void onChat(String channel, String player, String text);
+}
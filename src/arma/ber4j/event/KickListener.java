@@ -0,0 +1,8 @@
+package arma.ber4j.event;
+
+public interface KickListener {
+    /**
+     * A player was kicked by BattlEye, e.g. by a restriction filter or by an admin.
+     */
+    void onBeKick(int slot, String name, String guid, String reason);
+}
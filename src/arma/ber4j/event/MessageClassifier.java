@@ -0,0 +1,360 @@
+package arma.ber4j.event;
+
+import arma.ber4j.BattlEyeClient;
+import arma.ber4j.ByteCharSequence;
+import arma.ber4j.MessageHandler;
+import arma.ber4j.RawMessageHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Classifies every server message once and passes the extracted fields to typed listeners.
+ * <p>The message type is found by walking the undecoded message through a trie of the known message prefixes,
+ * followed by a few suffix checks for the player messages. A message is only decoded and parsed if there is a
+ * listener for its type, so a client which only listens to the chat doesn't decode the filter logs.</p>
+ * <p>The classifier is a {@link RawMessageHandler}, the listeners are called on the thread which receives the
+ * messages of the client. Listeners may be added and removed at any time.</p>
+ */
+public class MessageClassifier implements RawMessageHandler {
+    private static final Logger log = LoggerFactory.getLogger(MessageClassifier.class);
+
+    private static final String[] CHAT_CHANNELS = {
+            "Global", "Side", "Command", "Group", "Vehicle", "Direct", "Unknown"
+    };
+    private static final String[] RESTRICTION_FILTERS = {
+            "Script", "CreateVehicle", "DeleteVehicle", "PublicVariable", "PublicVariableVal", "RemoteExec",
+            "RemoteControl", "SetDamage", "SetPos", "SetVariable", "SetVariableVal", "AddBackpackCargo",
+            "AddMagazineCargo", "AddWeaponCargo", "AttachTo", "MPEventHandler", "SelectPlayer", "TeamSwitch",
+            "WaypointCondition", "WaypointStatement"
+    };
+
+    private static final PrefixTrie PREFIXES = new PrefixTrie();
+
+    static {
+        for (String channel : CHAT_CHANNELS) {
+            PREFIXES.add("(" + channel + ") ", MessageType.Chat);
+        }
+        for (String filter : RESTRICTION_FILTERS) {
+            PREFIXES.add(filter + " Log: #", MessageType.RestrictionLog);
+        }
+        PREFIXES.add("Player #", MessageType.PlayerConnected); // refined by the suffix
+        PREFIXES.add("Verified GUID (", MessageType.PlayerGuidVerified);
+        PREFIXES.add("RCon admin #", MessageType.AdminLogin);
+    }
+
+    private static final Pattern CHAT_PATTERN = Pattern.compile("\\((\\w+)\\) (.*?): (.*)", Pattern.DOTALL);
+    private static final Pattern CONNECTED_PATTERN = Pattern.compile("Player #(\\d+) (.*) \\(([^()\\s]+):(\\d+)\\) connected");
+    private static final Pattern GUID_PATTERN = Pattern.compile("Player #(\\d+) (.*) - (?:BE )?GUID: ([0-9a-fA-F]+)(?: \\(unverified\\))?");
+    private static final Pattern VERIFIED_PATTERN = Pattern.compile("Verified GUID \\(([0-9a-fA-F]+)\\) of player #(\\d+) (.*)");
+    private static final Pattern DISCONNECTED_PATTERN = Pattern.compile("Player #(\\d+) (.*) disconnected");
+    private static final Pattern KICK_PATTERN = Pattern.compile("Player #(\\d+) (.*) \\(([0-9a-fA-F]*|-)\\) has been kicked by BattlEye: (.*)", Pattern.DOTALL);
+    private static final Pattern RESTRICTION_LOG_PATTERN = Pattern.compile("(\\w+) Log: #(\\d+) (.*?) \\(([0-9a-fA-F]*|-)\\) - (.*)", Pattern.DOTALL);
+    private static final Pattern ADMIN_LOGIN_PATTERN = Pattern.compile("RCon admin #(\\d+) \\(([^()\\s]+):(\\d+)\\) logged in");
+
+    private final BattlEyeClient client;
+    private final ByteCharSequence sequence; // only used by the receiving thread
+
+    private final List<ChatListener> chatListeners;
+    private final List<PlayerListener> playerListeners;
+    private final List<KickListener> kickListeners;
+    private final List<RestrictionLogListener> restrictionLogListeners;
+    private final List<AdminLoginListener> adminLoginListeners;
+    private final List<MessageHandler> unclassifiedHandlers;
+
+    public MessageClassifier(BattlEyeClient client) {
+        this.client = client;
+        sequence = new ByteCharSequence();
+        chatListeners = new CopyOnWriteArrayList<>();
+        playerListeners = new CopyOnWriteArrayList<>();
+        kickListeners = new CopyOnWriteArrayList<>();
+        restrictionLogListeners = new CopyOnWriteArrayList<>();
+        adminLoginListeners = new CopyOnWriteArrayList<>();
+        unclassifiedHandlers = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Registers this classifier as raw message handler of the client.
+     */
+    public void attach() {
+        client.addRawMessageHandler(this);
+    }
+
+    public void detach() {
+        client.removeRawMessageHandler(this);
+    }
+
+    public void addChatListener(ChatListener listener) {
+        chatListeners.add(listener);
+    }
+
+    public void removeChatListener(ChatListener listener) {
+        chatListeners.remove(listener);
+    }
+
+    public void addPlayerListener(PlayerListener listener) {
+        playerListeners.add(listener);
+    }
+
+    public void removePlayerListener(PlayerListener listener) {
+        playerListeners.remove(listener);
+    }
+
+    public void addKickListener(KickListener listener) {
+        kickListeners.add(listener);
+    }
+
+    public void removeKickListener(KickListener listener) {
+        kickListeners.remove(listener);
+    }
+
+    public void addRestrictionLogListener(RestrictionLogListener listener) {
+        restrictionLogListeners.add(listener);
+    }
+
+    public void removeRestrictionLogListener(RestrictionLogListener listener) {
+        restrictionLogListeners.remove(listener);
+    }
+
+    public void addAdminLoginListener(AdminLoginListener listener) {
+        adminLoginListeners.add(listener);
+    }
+
+    public void removeAdminLoginListener(AdminLoginListener listener) {
+        adminLoginListeners.remove(listener);
+    }
+
+    /**
+     * Adds a handler for the messages which don't match any of the known message types.
+     */
+    public void addUnclassifiedHandler(MessageHandler handler) {
+        unclassifiedHandlers.add(handler);
+    }
+
+    public void removeUnclassifiedHandler(MessageHandler handler) {
+        unclassifiedHandlers.remove(handler);
+    }
+
+    /**
+     * Returns the type of the given message without decoding it. The message is not validated beyond its prefix and
+     * suffix, a message which doesn't match the pattern of its type is treated as unclassified when dispatched.
+     */
+    public static MessageType classify(ByteCharSequence message) {
+        MessageType type = PREFIXES.match(message);
+        if (type == null) {
+            return MessageType.Unclassified;
+        }
+        if (type != MessageType.PlayerConnected) {
+            return type;
+        }
+        // Player #...
+        if (message.endsWith(" disconnected")) {
+            return MessageType.PlayerDisconnected;
+        }
+        if (message.endsWith(") connected")) {
+            return MessageType.PlayerConnected;
+        }
+        if (message.contains(") has been kicked by BattlEye: ")) {
+            return MessageType.BeKick;
+        }
+        if (message.contains(" GUID: ")) {
+            return MessageType.PlayerGuid;
+        }
+        return MessageType.Unclassified;
+    }
+
+    @Override
+    public void onMessageReceived(ByteBuffer message) {
+        MessageType type = classify(sequence.wrap(message));
+        if (!hasListeners(type)) {
+            return; // not decoded at all
+        }
+        String text = sequence.toString(client.getCharset());
+        if (!dispatch(type, text) && type != MessageType.Unclassified) {
+            log.debug("{} message doesn't match its pattern: {}", type, text);
+            dispatch(MessageType.Unclassified, text);
+        }
+    }
+
+    private boolean hasListeners(MessageType type) {
+        switch (type) {
+            case Chat:
+                return !chatListeners.isEmpty();
+            case PlayerConnected:
+            case PlayerGuid:
+            case PlayerGuidVerified:
+            case PlayerDisconnected:
+                return !playerListeners.isEmpty();
+            case BeKick:
+                return !kickListeners.isEmpty();
+            case RestrictionLog:
+                return !restrictionLogListeners.isEmpty();
+            case AdminLogin:
+                return !adminLoginListeners.isEmpty();
+            default:
+                return !unclassifiedHandlers.isEmpty();
+        }
+    }
+
+    /**
+     * @return <tt>false</tt> if the message doesn't match the pattern of the given type
+     */
+    private boolean dispatch(MessageType type, String message) {
+        Matcher matcher;
+        switch (type) {
+            case Chat:
+                if (chatListeners.isEmpty()) {
+                    return true;
+                }
+                matcher = CHAT_PATTERN.matcher(message);
+                if (!matcher.matches()) {
+                    return false;
+                }
+                for (ChatListener listener : chatListeners) {
+                    listener.onChat(matcher.group(1), matcher.group(2), matcher.group(3));
+                }
+                return true;
+            case PlayerConnected:
+                if (playerListeners.isEmpty()) {
+                    return true;
+                }
+                matcher = CONNECTED_PATTERN.matcher(message);
+                if (!matcher.matches()) {
+                    return false;
+                }
+                for (PlayerListener listener : playerListeners) {
+                    listener.onPlayerConnected(Integer.parseInt(matcher.group(1)), matcher.group(2), matcher.group(3),
+                            Integer.parseInt(matcher.group(4)));
+                }
+                return true;
+            case PlayerGuid:
+                if (playerListeners.isEmpty()) {
+                    return true;
+                }
+                matcher = GUID_PATTERN.matcher(message);
+                if (!matcher.matches()) {
+                    return false;
+                }
+                for (PlayerListener listener : playerListeners) {
+                    listener.onPlayerGuid(Integer.parseInt(matcher.group(1)), matcher.group(2), matcher.group(3), false);
+                }
+                return true;
+            case PlayerGuidVerified:
+                if (playerListeners.isEmpty()) {
+                    return true;
+                }
+                matcher = VERIFIED_PATTERN.matcher(message);
+                if (!matcher.matches()) {
+                    return false;
+                }
+                for (PlayerListener listener : playerListeners) {
+                    listener.onPlayerGuid(Integer.parseInt(matcher.group(2)), matcher.group(3), matcher.group(1), true);
+                }
+                return true;
+            case PlayerDisconnected:
+                if (playerListeners.isEmpty()) {
+                    return true;
+                }
+                matcher = DISCONNECTED_PATTERN.matcher(message);
+                if (!matcher.matches()) {
+                    return false;
+                }
+                for (PlayerListener listener : playerListeners) {
+                    listener.onPlayerDisconnected(Integer.parseInt(matcher.group(1)), matcher.group(2));
+                }
+                return true;
+            case BeKick:
+                if (kickListeners.isEmpty()) {
+                    return true;
+                }
+                matcher = KICK_PATTERN.matcher(message);
+                if (!matcher.matches()) {
+                    return false;
+                }
+                for (KickListener listener : kickListeners) {
+                    listener.onBeKick(Integer.parseInt(matcher.group(1)), matcher.group(2), matcher.group(3),
+                            matcher.group(4));
+                }
+                return true;
+            case RestrictionLog:
+                if (restrictionLogListeners.isEmpty()) {
+                    return true;
+                }
+                matcher = RESTRICTION_LOG_PATTERN.matcher(message);
+                if (!matcher.matches()) {
+                    return false;
+                }
+                for (RestrictionLogListener listener : restrictionLogListeners) {
+                    listener.onRestrictionLog(matcher.group(1), Integer.parseInt(matcher.group(2)), matcher.group(3),
+                            matcher.group(4), matcher.group(5));
+                }
+                return true;
+            case AdminLogin:
+                if (adminLoginListeners.isEmpty()) {
+                    return true;
+                }
+                matcher = ADMIN_LOGIN_PATTERN.matcher(message);
+                if (!matcher.matches()) {
+                    return false;
+                }
+                for (AdminLoginListener listener : adminLoginListeners) {
+                    listener.onAdminLogin(Integer.parseInt(matcher.group(1)), matcher.group(2),
+                            Integer.parseInt(matcher.group(3)));
+                }
+                return true;
+            default:
+                for (MessageHandler handler : unclassifiedHandlers) {
+                    handler.onMessageReceived(message);
+                }
+                return true;
+        }
+    }
+
+    /**
+     * Byte trie of message prefixes, matched against the undecoded message. Returns the type of the longest
+     * matching prefix.
+     */
+    private static final class PrefixTrie {
+        private final Node root = new Node();
+
+        void add(String prefix, MessageType type) {
+            Node node = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                int c = prefix.charAt(i) & 0x7F;
+                if (node.next == null) {
+                    node.next = new Node[128];
+                }
+                if (node.next[c] == null) {
+                    node.next[c] = new Node();
+                }
+                node = node.next[c];
+            }
+            node.type = type;
+        }
+
+        MessageType match(ByteCharSequence message) {
+            MessageType type = null;
+            Node node = root;
+            for (int i = 0, length = message.length(); i < length; i++) {
+                char c = message.charAt(i);
+                if (c >= 128 || node.next == null || (node = node.next[c]) == null) {
+                    break;
+                }
+                if (node.type != null) {
+                    type = node.type;
+                }
+            }
+            return type;
+        }
+
+        private static final class Node {
+            Node[] next;
+            MessageType type;
+        }
+    }
+}
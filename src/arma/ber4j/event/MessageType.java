@@ -0,0 +1,48 @@
+package arma.ber4j.event;
+
+/**
+ * The kinds of server messages recognized by the {@link MessageClassifier}.
+ */
+public enum MessageType {
+    /**
+     * <tt>(Global) Name: text</tt>
+     */
+    Chat,
+
+    /**
+     * <tt>Player #1 Name (127.0.0.1:2304) connected</tt>
+     */
+    PlayerConnected,
+
+    /**
+     * <tt>Player #1 Name - BE GUID: 0123456789abcdef0123456789abcdef</tt>
+     */
+    PlayerGuid,
+
+    /**
+     * <tt>Verified GUID (0123456789abcdef0123456789abcdef) of player #1 Name</tt>
+     */
+    PlayerGuidVerified,
+
+    /**
+     * <tt>Player #1 Name disconnected</tt>
+     */
+    PlayerDisconnected,
+
+    /**
+     * <tt>Player #1 Name (0123456789abcdef0123456789abcdef) has been kicked by BattlEye: Reason</tt>
+     */
+    BeKick,
+
+    /**
+     * <tt>Script Log: #1 Name (0123456789abcdef0123456789abcdef) - #0 "text"</tt>
+     */
+    RestrictionLog,
+
+    /**
+     * <tt>RCon admin #0 (127.0.0.1:2306) logged in</tt>
+     */
+    AdminLogin,
+
+    Unclassified
+}
@@ -0,0 +1,18 @@
+package arma.ber4j.event;
+
+/**
+ * Receives the messages about players joining and leaving the server. All methods do nothing by default.
+ */
+public interface PlayerListener {
+    default void onPlayerConnected(int slot, String name, String address, int port) {
+    }
+
+    /**
+     * @param verified <tt>true</tt> if the GUID was verified by the BattlEye master server
+     */
+    default void onPlayerGuid(int slot, String name, String guid, boolean verified) {
+    }
+
+    default void onPlayerDisconnected(int slot, String name) {
+    }
+}
@@ -0,0 +1,11 @@
+package arma.ber4j.event;
+
+public interface RestrictionLogListener {
+    /**
+     * A BattlEye filter logged an action of a player.
+     *
+     * @param filter the name of the filter, e.g. <tt>Script</tt> or <tt>RemoteExec</tt>
+     * @param text   the logged text after the player, starting with the number of the matching filter line
+     */
+    void onRestrictionLog(String filter, int slot, String name, String guid, String text);
+}
@@ -0,0 +1,248 @@
+package arma.ber4j.gateway;
+
+import arma.ber4j.BattlEyeClient;
+import arma.ber4j.BattlEyeServer;
+import arma.ber4j.RawMessageHandler;
+import arma.ber4j.ResponsePartHandler;
+import arma.ber4j.ServerSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Shares the RCon session of one client with many local consumers.
+ * <p>The gateway listens on a local UDP port and speaks the BattlEye RCon protocol, so consumers connect with an
+ * ordinary {@link BattlEyeClient} and the gateway's password instead of the game server's. Server messages received by
+ * the upstream client are sent to every logged in consumer and retransmitted until they are acknowledged. Commands of
+ * all consumers are sent through the upstream client, which numbers them in its own sequence space, and every
+ * response is sent back to the consumer with the consumer's sequence number. Keep alive packets of the consumers are
+ * answered locally.</p>
+ * <p>A command a consumer sends again because the response was lost is not executed twice, the response is sent
+ * again once it was received. While the upstream client is not connected, logins are not answered and the commands of
+ * the consumers fail silently, so the consumers time out and reconnect like they would to a restarting server.</p>
+ * <p>The upstream client is connected and disconnected by the application, the gateway only attaches to it. Raise
+ * its {@link BattlEyeClient#setMaxCommandsInFlight max commands in flight} so the commands of different consumers
+ * don't wait for each other.</p>
+ */
+public class BattlEyeGateway extends BattlEyeServer<BattlEyeGateway.Session> {
+    private static final Logger log = LoggerFactory.getLogger(BattlEyeGateway.class);
+
+    private static final long TICK = 100; // interval of the retransmissions and the session supervision
+    private static final int MAX_UNACKNOWLEDGED = 128; // slow consumers are dropped before the sequence numbers wrap
+    private static final long RESPONSE_CACHE_TIME = 30000; // responses kept for commands sent again
+
+    private final BattlEyeClient upstream;
+    private final RawMessageHandler messageHandler;
+
+    private final AtomicLong commands;
+    private final AtomicLong forwardedCommands;
+    private final AtomicLong repeatedResponses;
+    private final AtomicLong messages;
+
+    /**
+     * Creates a gateway on a free port of the loopback interface.
+     *
+     * @param password the password of the consumers
+     */
+    public BattlEyeGateway(BattlEyeClient upstream, String password) {
+        this(upstream, new InetSocketAddress("127.0.0.1", 0), password);
+    }
+
+    public BattlEyeGateway(BattlEyeClient upstream, InetSocketAddress bindAddress, String password) {
+        super("gateway", bindAddress, password, TICK, MAX_UNACKNOWLEDGED);
+        this.upstream = upstream;
+        messageHandler = new RawMessageHandler() {
+            @Override
+            public void onMessageReceived(ByteBuffer message) {
+                broadcast(message);
+            }
+        };
+
+        commands = new AtomicLong();
+        forwardedCommands = new AtomicLong();
+        repeatedResponses = new AtomicLong();
+        messages = new AtomicLong();
+    }
+
+    @Override
+    public synchronized void start() throws IOException {
+        super.start();
+        upstream.addRawMessageHandler(messageHandler);
+    }
+
+    public BattlEyeClient getUpstream() {
+        return upstream;
+    }
+
+    /**
+     * Detaches from the upstream client and drops all consumers, the upstream client stays connected.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        upstream.removeRawMessageHandler(messageHandler);
+        super.close();
+    }
+
+    @Override
+    protected Session newSession(SocketAddress address) {
+        return new Session(address);
+    }
+
+    @Override
+    protected boolean acceptLogin(SocketAddress address) {
+        if (!upstream.isConnected()) {
+            log.debug("login of {} not answered, upstream not connected", address);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected Charset getCharset() {
+        return upstream.getCharset();
+    }
+
+    @Override
+    protected void commandReceived(final Session session, final int sequenceNumber, String command)
+            throws IOException {
+        if (command.isEmpty()) {
+            // keep alive, the upstream client keeps its own session alive
+            send(session.getAddress(), encodeResponse(sequenceNumber, new byte[0]));
+            return;
+        }
+        commands.incrementAndGet();
+        final PendingCommand pending;
+        ByteBuffer[] response = null;
+        long now = System.currentTimeMillis();
+        synchronized (session) {
+            PendingCommand previous = session.commands[sequenceNumber];
+            if (previous != null && previous.command.equals(command) && now - previous.receivedTime < RESPONSE_CACHE_TIME) {
+                // sent again, the response was lost or is still on its way
+                response = previous.response;
+                pending = null;
+            } else {
+                pending = new PendingCommand(command, now);
+                session.commands[sequenceNumber] = pending;
+                // the sequence numbers of a consumer increase, the opposite half belongs to older commands
+                session.commands[(sequenceNumber + 128) & 0xFF] = null;
+            }
+        }
+        if (pending == null) {
+            if (response != null) {
+                repeatedResponses.incrementAndGet();
+                send(session.getAddress(), response);
+            }
+            return;
+        }
+        forwardedCommands.incrementAndGet();
+        final ResponseCollector collector = new ResponseCollector();
+        CompletableFuture<Void> future = upstream.stream(command, collector);
+        future.whenComplete(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void result, Throwable throwable) {
+                if (throwable != null) {
+                    log.debug("command of {} failed: {}", session.getAddress(), throwable.toString());
+                    synchronized (session) {
+                        if (session.commands[sequenceNumber] == pending) {
+                            session.commands[sequenceNumber] = null; // forwarded again if the consumer retransmits
+                        }
+                    }
+                    return;
+                }
+                ByteBuffer[] response = encodeResponse(sequenceNumber, collector.toByteArray());
+                synchronized (session) {
+                    pending.response = response;
+                }
+                if (isLoggedIn(session)) {
+                    try {
+                        send(session.getAddress(), response);
+                    } catch (IOException e) {
+                        log.debug("gateway could not send response", e);
+                    }
+                }
+            }
+        });
+    }
+
+    // called on the receiving thread of the upstream client
+    private void broadcast(ByteBuffer message) {
+        if (getSessionCount() == 0) {
+            return;
+        }
+        messages.incrementAndGet();
+        byte[] bytes = new byte[message.remaining()];
+        message.get(bytes);
+        for (Session session : getSessions()) {
+            sendMessage(session, bytes); // a consumer which falls behind is dropped by the next tick
+        }
+    }
+
+    /**
+     * @return the number of commands received from the consumers, including commands sent again
+     */
+    public long getCommands() {
+        return commands.get();
+    }
+
+    /**
+     * @return the number of commands sent to the server
+     */
+    public long getForwardedCommands() {
+        return forwardedCommands.get();
+    }
+
+    /**
+     * @return the number of responses sent again to consumers which sent a command again
+     */
+    public long getRepeatedResponses() {
+        return repeatedResponses.get();
+    }
+
+    /**
+     * @return the number of server messages broadcast to the consumers
+     */
+    public long getMessages() {
+        return messages.get();
+    }
+
+    /**
+     * Collects the raw response of a forwarded command, the parts are received on the upstream client's thread.
+     */
+    private static final class ResponseCollector extends ByteArrayOutputStream implements ResponsePartHandler {
+        @Override
+        public void onResponsePart(ByteBuffer part) {
+            while (part.hasRemaining()) {
+                write(part.get());
+            }
+        }
+    }
+
+    static final class Session extends ServerSession {
+        final PendingCommand[] commands; // by the consumer's sequence number, guarded by this
+
+        Session(SocketAddress address) {
+            super(address);
+            commands = new PendingCommand[256];
+        }
+    }
+
+    private static final class PendingCommand {
+        final String command;
+        final long receivedTime;
+        ByteBuffer[] response; // null until received (guarded by the session)
+
+        PendingCommand(String command, long receivedTime) {
+            this.command = command;
+            this.receivedTime = receivedTime;
+        }
+    }
+}
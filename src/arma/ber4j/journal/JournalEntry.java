@@ -0,0 +1,77 @@
+package arma.ber4j.journal;
+
+import java.nio.charset.Charset;
+
+/**
+ * A server message read from a {@link MessageJournal}.
+ */
+public final class JournalEntry {
+    private final long sequence;
+    private final long timestamp;
+    private final int serverId;
+    private final int sequenceNumber;
+    private final byte[] message;
+
+    JournalEntry(long sequence, long timestamp, int serverId, int sequenceNumber, byte[] message) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.serverId = serverId;
+        this.sequenceNumber = sequenceNumber;
+        this.message = message;
+    }
+
+    /**
+     * @return the sequence number of the message in the journal, assigned in the order of writing
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the time the message was received in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getServerId() {
+        return serverId;
+    }
+
+    /**
+     * @return the sequence number the server sent the message with, 0 to 255, or
+     * {@link MessageJournal#NO_SEQUENCE_NUMBER} if it was appended without one
+     */
+    public int getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * @return the undecoded message, a copy
+     */
+    public byte[] getBytes() {
+        return message.clone();
+    }
+
+    public String getMessage(Charset charset) {
+        return new String(message, charset);
+    }
+
+    /**
+     * Decodes the message with the default charset, like {@link arma.ber4j.BattlEyeClient} does by default.
+     */
+    public String getMessage() {
+        return getMessage(Charset.defaultCharset());
+    }
+
+    @Override
+    public String toString() {
+        return "JournalEntry{" +
+                "sequence=" + sequence +
+                ", timestamp=" + timestamp +
+                ", serverId=" + serverId +
+                ", sequenceNumber=" + sequenceNumber +
+                ", message='" + getMessage() + '\'' +
+                '}';
+    }
+}
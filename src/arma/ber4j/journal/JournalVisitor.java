@@ -0,0 +1,11 @@
+package arma.ber4j.journal;
+
+/**
+ * Receives the entries of a journal query in the order they were written.
+ */
+public interface JournalVisitor {
+    /**
+     * @return <tt>false</tt> to stop the query
+     */
+    boolean visit(JournalEntry entry);
+}
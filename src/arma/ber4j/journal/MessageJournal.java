@@ -0,0 +1,402 @@
+package arma.ber4j.journal;
+
+import arma.ber4j.BattlEyeClient;
+import arma.ber4j.BattlEyeThreads;
+import arma.ber4j.RawMessageHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the server messages of one or more clients, e.g. for audits.
+ * <p>Every message is written with the id of its server, its receive time, the sequence number it was sent with and
+ * a sequence number of the journal into segment files which are memory-mapped for writing. The receiving thread only copies the message into a bounded queue, a writer
+ * thread appends it to the current segment. If the writer falls behind by more than {@code maxPendingMessages}
+ * messages, new messages are dropped and counted instead of blocking the receiving thread.</p>
+ * <p>Full segments are rolled and compressed in the background. A sparse index of the time range of every block of
+ * about {@code blockSize} bytes lets queries skip segments and blocks outside the requested time range or without
+ * messages of the requested server.</p>
+ * <p>Written messages reach the operating system immediately, but are only forced to the disk when a segment is
+ * rolled or the journal is closed.</p>
+ */
+public class MessageJournal implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(MessageJournal.class);
+
+    /**
+     * Server id of queries over all servers.
+     */
+    public static final int ALL_SERVERS = -1;
+
+    /**
+     * Sequence number of messages which were appended without the sequence number of the server.
+     */
+    public static final int NO_SEQUENCE_NUMBER = -1;
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+    public static final int DEFAULT_BLOCK_SIZE = 64 << 10;
+    public static final int DEFAULT_MAX_PENDING_MESSAGES = 65536;
+
+    private static final int MIN_SEGMENT_SIZE = 1 << 20; // larger than the largest message
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int blockSize;
+    private final int maxPendingMessages;
+
+    private final List<Segment> segments; // ordered by sequence, the last one is written
+    private final Map<BattlEyeClient, RawMessageHandler> attachedClients;
+    private final Queue<Record> queue;
+    private final AtomicInteger pendingMessages;
+    private final AtomicLong writtenCount;
+    private final AtomicLong droppedCount;
+    private final ExecutorService compressor;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // only accessed by the writer
+    private long nextSequence;
+    private Segment current;
+
+    public MessageJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_PENDING_MESSAGES);
+    }
+
+    /**
+     * Opens the journal in the given directory. Segments left by a previous run are indexed and compressed if
+     * necessary, new messages are written to a new segment.
+     */
+    public MessageJournal(Path directory, int segmentSize, int blockSize, int maxPendingMessages) throws IOException {
+        if (segmentSize < MIN_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be at least " + MIN_SEGMENT_SIZE);
+        }
+        if (blockSize < 1 || blockSize > segmentSize || maxPendingMessages < 1) {
+            throw new IllegalArgumentException("0 < blockSize <= segmentSize and 0 < maxPendingMessages required");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.blockSize = blockSize;
+        this.maxPendingMessages = maxPendingMessages;
+        segments = new CopyOnWriteArrayList<>();
+        attachedClients = new ConcurrentHashMap<>();
+        queue = new ConcurrentLinkedQueue<>();
+        pendingMessages = new AtomicInteger();
+        writtenCount = new AtomicLong();
+        droppedCount = new AtomicLong();
+        compressor = Executors.newSingleThreadExecutor(BattlEyeThreads.platformThreadFactory("ber4j journal compressor ", true));
+
+        Files.createDirectories(directory);
+        open();
+        current = Segment.create(directory, nextSequence, segmentSize, blockSize);
+        segments.add(current);
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "ber4j journal writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void open() throws IOException {
+        List<Segment> recovered = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + Segment.RAW_SUFFIX)) {
+            for (Path file : files) {
+                log.debug("recovering journal segment {}", file);
+                recovered.add(Segment.recover(file, blockSize));
+            }
+        }
+        List<Long> compressed = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + Segment.INDEX_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                compressed.add(Long.parseLong(name.substring(0, name.length() - Segment.INDEX_SUFFIX.length())));
+            }
+        }
+        for (Long firstSequence : compressed) {
+            boolean raw = false;
+            for (Segment segment : recovered) {
+                raw |= segment.getFirstSequence() == firstSequence;
+            }
+            if (!raw) { // otherwise the compression of the raw segment didn't finish
+                recovered.add(Segment.load(directory, firstSequence, blockSize));
+            }
+        }
+        Collections.sort(recovered, new Comparator<Segment>() {
+            @Override
+            public int compare(Segment s1, Segment s2) {
+                return Long.compare(s1.getFirstSequence(), s2.getFirstSequence());
+            }
+        });
+        for (Segment segment : recovered) {
+            nextSequence = Math.max(nextSequence, segment.getLastSequence() + 1);
+            if (segment.getLastSequence() < segment.getFirstSequence()) {
+                segment.delete(); // e.g. the current segment when the journal was closed
+            } else {
+                if (!segment.isCompressed()) {
+                    compress(segment);
+                }
+                segments.add(segment);
+            }
+        }
+    }
+
+    /**
+     * Writes the messages of the client to this journal with the given server id.
+     */
+    public void attach(BattlEyeClient client, final int serverId) {
+        if (serverId < 0) {
+            throw new IllegalArgumentException("serverId must not be negative");
+        }
+        RawMessageHandler handler = new RawMessageHandler() {
+            @Override
+            public void onMessageReceived(ByteBuffer message) {
+                append(serverId, System.currentTimeMillis(), NO_SEQUENCE_NUMBER, message);
+            }
+
+            @Override
+            public void onMessageReceived(int sequenceNumber, ByteBuffer message) {
+                append(serverId, System.currentTimeMillis(), sequenceNumber, message);
+            }
+        };
+        if (attachedClients.putIfAbsent(client, handler) == null) {
+            client.addRawMessageHandler(handler);
+        }
+    }
+
+    public void detach(BattlEyeClient client) {
+        RawMessageHandler handler = attachedClients.remove(client);
+        if (handler != null) {
+            client.removeRawMessageHandler(handler);
+        }
+    }
+
+    public boolean append(int serverId, long timestamp, ByteBuffer message) {
+        return append(serverId, timestamp, NO_SEQUENCE_NUMBER, message);
+    }
+
+    /**
+     * Queues the remaining bytes of the buffer for writing, never blocks.
+     *
+     * @param sequenceNumber the sequence number the server sent the message with, or {@link #NO_SEQUENCE_NUMBER}
+     * @return <tt>false</tt> if the message was dropped because the journal is closed or too many messages are
+     * waiting to be written
+     */
+    public boolean append(int serverId, long timestamp, int sequenceNumber, ByteBuffer message) {
+        if (serverId < 0) {
+            throw new IllegalArgumentException("serverId must not be negative");
+        }
+        if (closed) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        int pending = pendingMessages.getAndIncrement();
+        if (pending >= maxPendingMessages) {
+            pendingMessages.decrementAndGet();
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        byte[] bytes = new byte[message.remaining()];
+        message.duplicate().get(bytes);
+        queue.offer(new Record(serverId, timestamp, sequenceNumber, bytes));
+        if (pending == 0) {
+            LockSupport.unpark(writer); // the writer may be idle
+        }
+        return true;
+    }
+
+    private void write() {
+        log.trace("start journal writer");
+        CRC32 crc = new CRC32();
+        while (true) {
+            Record record = queue.poll();
+            if (record == null) {
+                if (pendingMessages.get() == 0) {
+                    if (closed) {
+                        break;
+                    }
+                    LockSupport.park(this);
+                } else {
+                    Thread.yield(); // a message is about to be queued
+                }
+                continue;
+            }
+            pendingMessages.decrementAndGet();
+            try {
+                if (!current.append(nextSequence, record.timestamp, record.serverId, record.sequenceNumber,
+                        record.message, crc)) {
+                    roll();
+                    current.append(nextSequence, record.timestamp, record.serverId, record.sequenceNumber,
+                            record.message, crc);
+                }
+                nextSequence++;
+                writtenCount.incrementAndGet();
+            } catch (Exception e) {
+                droppedCount.incrementAndGet();
+                log.error("unhandled exception while writing the journal", e);
+            }
+        }
+        current.seal();
+        log.trace("exit journal writer");
+    }
+
+    private void roll() throws IOException {
+        Segment full = current;
+        full.seal();
+        current = Segment.create(directory, nextSequence, segmentSize, blockSize);
+        segments.add(current);
+        log.debug("journal rolled to segment {}", Segment.baseName(nextSequence));
+        compress(full);
+    }
+
+    private void compress(final Segment segment) {
+        compressor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    segment.compress();
+                } catch (IOException e) {
+                    log.error("journal segment compression failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Passes the messages received in the given time range to the visitor, in the order they were written.
+     *
+     * @param from     start of the time range in milliseconds since the epoch, inclusive
+     * @param to       end of the time range, inclusive
+     * @param serverId the server of the messages, or {@link #ALL_SERVERS}
+     */
+    public void query(long from, long to, int serverId, JournalVisitor visitor) throws IOException {
+        for (Segment segment : segments) {
+            if (!segment.scan(from, to, serverId, visitor)) {
+                return;
+            }
+        }
+    }
+
+    public void query(long from, long to, JournalVisitor visitor) throws IOException {
+        query(from, to, ALL_SERVERS, visitor);
+    }
+
+    /**
+     * Returns the messages received in the given time range. Use a {@link JournalVisitor} for large ranges.
+     */
+    public List<JournalEntry> query(long from, long to, int serverId) throws IOException {
+        final List<JournalEntry> entries = new ArrayList<>();
+        query(from, to, serverId, new JournalVisitor() {
+            @Override
+            public boolean visit(JournalEntry entry) {
+                entries.add(entry);
+                return true;
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * Deletes the compressed segments which only contain messages received before the given time.
+     *
+     * @return the number of deleted segments
+     */
+    public int deleteBefore(long timestamp) throws IOException {
+        int count = 0;
+        for (Segment segment : segments) {
+            if (segment.isCompressed() && segment.getMaxTimestamp() < timestamp) {
+                segments.remove(segment);
+                segment.delete();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return the number of messages waiting to be written
+     */
+    public int getPendingCount() {
+        return pendingMessages.get();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * @return the number of messages which were not written, see {@link #append(int, long, int, ByteBuffer)}
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Detaches all clients, writes the waiting messages and waits for running compressions. The current segment is
+     * compressed when the journal is opened again.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        for (BattlEyeClient client : attachedClients.keySet()) {
+            detach(client);
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+            compressor.shutdown();
+            compressor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while closing the journal", e);
+        }
+    }
+
+    private static final class Record {
+        final int serverId;
+        final long timestamp;
+        final int sequenceNumber;
+        final byte[] message;
+
+        Record(int serverId, long timestamp, int sequenceNumber, byte[] message) {
+            this.serverId = serverId;
+            this.timestamp = timestamp;
+            this.sequenceNumber = sequenceNumber;
+            this.message = message;
+        }
+    }
+}
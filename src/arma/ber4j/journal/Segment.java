@@ -0,0 +1,494 @@
+package arma.ber4j.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One file of a {@link MessageJournal}.
+ * <p>A segment is written through a memory mapping of a preallocated file. Its records are grouped into blocks of
+ * about {@code blockSize} bytes, the sparse index keeps the sequence and time range of every block. After the
+ * segment is sealed, every block is deflated separately into a <tt>.segz</tt> file and the index is written to an
+ * <tt>.idx</tt> file, so queries of old segments only inflate the blocks of the requested time range.</p>
+ * <pre>
+ * segment: magic | first sequence | record*
+ * record:  length | CRC32 of the following bytes | sequence | timestamp | server id | message sequence number | message
+ * index:   magic | block count | (position | raw length | offset | length | first sequence | count | min time | max time)* | server count | server id*
+ * </pre>
+ * <p>Only the journal's writer thread appends and seals, only its compressor thread compresses. Queries may run on
+ * any thread, they see the records up to the last committed one.</p>
+ */
+final class Segment {
+    private static final Logger log = LoggerFactory.getLogger(Segment.class);
+
+    static final String RAW_SUFFIX = ".seg";
+    static final String COMPRESSED_SUFFIX = ".segz";
+    static final String INDEX_SUFFIX = ".idx";
+
+    private static final int SEGMENT_MAGIC = 0x42454A53; // BEJS
+    private static final int INDEX_MAGIC = 0x42454A49; // BEJI
+    static final int HEADER_SIZE = 12;
+    static final int RECORD_HEADER_SIZE = 32;
+    private static final int BLOCK_ENTRY_SIZE = 48;
+
+    private final Path directory;
+    private final long firstSequence;
+    private final int blockSize;
+    private final Set<Integer> serverIds;
+    private volatile View view;
+    private volatile int committed; // end of the last complete record of a raw segment
+    private volatile long minTimestamp;
+    private volatile long maxTimestamp;
+    private volatile boolean deleted;
+
+    // only accessed by the writer
+    private ByteBuffer writeBuffer;
+    private int position;
+    private int blockStart;
+    private long blockFirstSequence;
+    private int blockCount;
+    private long blockMinTimestamp;
+    private long blockMaxTimestamp;
+
+    private Segment(Path directory, long firstSequence, int blockSize) {
+        this.directory = directory;
+        this.firstSequence = firstSequence;
+        this.blockSize = blockSize;
+        serverIds = ConcurrentHashMap.newKeySet();
+        minTimestamp = Long.MAX_VALUE;
+        maxTimestamp = Long.MIN_VALUE;
+    }
+
+    static String baseName(long firstSequence) {
+        return String.format("%020d", firstSequence);
+    }
+
+    /**
+     * Creates and maps a new segment file of the given size.
+     */
+    static Segment create(Path directory, long firstSequence, int size, int blockSize) throws IOException {
+        Segment segment = new Segment(directory, firstSequence, blockSize);
+        MappedByteBuffer mapped;
+        try (RandomAccessFile file = new RandomAccessFile(segment.path(RAW_SUFFIX).toFile(), "rw")) {
+            file.setLength(size);
+            mapped = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        mapped.putInt(0, SEGMENT_MAGIC);
+        mapped.putLong(4, firstSequence);
+        segment.position = HEADER_SIZE;
+        segment.startBlock(firstSequence);
+        segment.committed = HEADER_SIZE;
+        segment.view = new View(new Block[0], mapped, false);
+        segment.writeBuffer = mapped.duplicate();
+        return segment;
+    }
+
+    /**
+     * Maps a raw segment left by a previous run and indexes its valid records. The segment is sealed.
+     */
+    static Segment recover(Path file, int blockSize) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (mapped.capacity() < HEADER_SIZE || mapped.getInt(0) != SEGMENT_MAGIC) {
+            throw new IOException("not a journal segment: " + file);
+        }
+        Segment segment = new Segment(file.getParent(), mapped.getLong(4), blockSize);
+        segment.view = new View(new Block[0], mapped, false);
+        segment.position = HEADER_SIZE;
+        segment.startBlock(segment.firstSequence);
+        CRC32 crc = new CRC32();
+        ByteBuffer record = mapped.duplicate();
+        int p = HEADER_SIZE;
+        while (p + RECORD_HEADER_SIZE <= mapped.capacity()) {
+            int length = mapped.getInt(p);
+            if (length < RECORD_HEADER_SIZE || p + length > mapped.capacity()) {
+                break; // end of the written records
+            }
+            record.limit(p + length).position(p + 8);
+            crc.reset();
+            crc.update(record);
+            if ((int) crc.getValue() != mapped.getInt(p + 4)) {
+                log.warn("journal segment {} is truncated at position {}", file, p);
+                break;
+            }
+            segment.index(mapped.getLong(p + 8), mapped.getLong(p + 16), mapped.getInt(p + 24));
+            p += length;
+            segment.position = p;
+            if (p - segment.blockStart >= blockSize) {
+                segment.closeBlock();
+                segment.startBlock(mapped.getLong(p - length + 8) + 1);
+            }
+        }
+        segment.committed = p;
+        segment.closeBlock();
+        return segment;
+    }
+
+    /**
+     * Loads the index of a compressed segment.
+     */
+    static Segment load(Path directory, long firstSequence, int blockSize) throws IOException {
+        Segment segment = new Segment(directory, firstSequence, blockSize);
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(segment.path(INDEX_SUFFIX)));
+        if (index.getInt() != INDEX_MAGIC) {
+            throw new IOException("not a journal index: " + segment.path(INDEX_SUFFIX));
+        }
+        Block[] blocks = new Block[index.getInt()];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = new Block(index.getInt(), index.getInt(), index.getLong(), index.getInt(), index.getLong(),
+                    index.getInt(), index.getLong(), index.getLong());
+            segment.minTimestamp = Math.min(segment.minTimestamp, blocks[i].minTimestamp);
+            segment.maxTimestamp = Math.max(segment.maxTimestamp, blocks[i].maxTimestamp);
+        }
+        for (int i = index.getInt(); i > 0; i--) {
+            segment.serverIds.add(index.getInt());
+        }
+        segment.view = new View(blocks, null, true);
+        return segment;
+    }
+
+    Path path(String suffix) {
+        return directory.resolve(baseName(firstSequence) + suffix);
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    /**
+     * @return the sequence number of the last record, or <tt>firstSequence - 1</tt> if the segment is empty
+     */
+    long getLastSequence() {
+        Block[] blocks = view.blocks;
+        if (blocks.length == 0) {
+            return firstSequence - 1;
+        }
+        Block last = blocks[blocks.length - 1];
+        return last.firstSequence + last.count - 1;
+    }
+
+    long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    boolean isCompressed() {
+        return view.compressed;
+    }
+
+    /**
+     * Appends a record, called by the writer.
+     *
+     * @return <tt>false</tt> if the segment is full
+     */
+    boolean append(long sequence, long timestamp, int serverId, int sequenceNumber, byte[] message, CRC32 crc) {
+        ByteBuffer record = writeBuffer;
+        int length = RECORD_HEADER_SIZE + message.length;
+        if (position + length > record.capacity()) {
+            return false;
+        }
+        record.limit(record.capacity()).position(position + RECORD_HEADER_SIZE);
+        record.putLong(position + 8, sequence);
+        record.putLong(position + 16, timestamp);
+        record.putInt(position + 24, serverId);
+        record.putInt(position + 28, sequenceNumber);
+        record.put(message);
+        record.limit(position + length).position(position + 8);
+        crc.reset();
+        crc.update(record);
+        record.putInt(position + 4, (int) crc.getValue());
+        record.putInt(position, length);
+        index(sequence, timestamp, serverId);
+        position += length;
+        committed = position; // publishes the record to queries
+        if (position - blockStart >= blockSize) {
+            closeBlock();
+            startBlock(sequence + 1);
+        }
+        return true;
+    }
+
+    private void index(long sequence, long timestamp, int serverId) {
+        if (blockCount == 0) {
+            blockFirstSequence = sequence;
+        }
+        blockCount++;
+        blockMinTimestamp = Math.min(blockMinTimestamp, timestamp);
+        blockMaxTimestamp = Math.max(blockMaxTimestamp, timestamp);
+        // receive times of different servers may be slightly out of order
+        if (timestamp < minTimestamp) {
+            minTimestamp = timestamp;
+        }
+        if (timestamp > maxTimestamp) {
+            maxTimestamp = timestamp;
+        }
+        serverIds.add(serverId);
+    }
+
+    private void startBlock(long sequence) {
+        blockStart = position;
+        blockFirstSequence = sequence;
+        blockCount = 0;
+        blockMinTimestamp = Long.MAX_VALUE;
+        blockMaxTimestamp = Long.MIN_VALUE;
+    }
+
+    private void closeBlock() {
+        if (blockCount == 0) {
+            return;
+        }
+        View current = view;
+        Block[] blocks = Arrays.copyOf(current.blocks, current.blocks.length + 1);
+        blocks[blocks.length - 1] = new Block(blockStart, position - blockStart, -1, 0, blockFirstSequence,
+                blockCount, blockMinTimestamp, blockMaxTimestamp);
+        view = new View(blocks, current.mapped, false);
+    }
+
+    /**
+     * Closes the last block and flushes the mapping to the file, called by the writer before rolling.
+     */
+    void seal() {
+        closeBlock();
+        startBlock(blockFirstSequence + blockCount);
+        view.mapped.force();
+    }
+
+    /**
+     * Deflates the blocks of a sealed segment into a compressed file and deletes the raw file.
+     */
+    void compress() throws IOException {
+        View current = view;
+        if (current.compressed || deleted) {
+            return;
+        }
+        Path compressedTemp = path(COMPRESSED_SUFFIX + ".tmp");
+        Path indexTemp = path(INDEX_SUFFIX + ".tmp");
+        Block[] blocks = new Block[current.blocks.length];
+        Deflater deflater = new Deflater();
+        try (FileChannel out = FileChannel.open(compressedTemp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            byte[] input = new byte[0];
+            byte[] output = new byte[0];
+            long offset = 0;
+            for (int i = 0; i < blocks.length; i++) {
+                Block block = current.blocks[i];
+                if (input.length < block.rawLength) {
+                    input = new byte[block.rawLength];
+                    output = new byte[block.rawLength + block.rawLength / 100 + 64];
+                }
+                ByteBuffer raw = current.mapped.duplicate();
+                raw.position(block.position);
+                raw.get(input, 0, block.rawLength);
+                deflater.reset();
+                deflater.setInput(input, 0, block.rawLength);
+                deflater.finish();
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == output.length) {
+                        output = Arrays.copyOf(output, output.length * 2);
+                    }
+                    length += deflater.deflate(output, length, output.length - length);
+                }
+                ByteBuffer compressed = ByteBuffer.wrap(output, 0, length);
+                while (compressed.hasRemaining()) {
+                    out.write(compressed);
+                }
+                blocks[i] = new Block(block.position, block.rawLength, offset, length, block.firstSequence,
+                        block.count, block.minTimestamp, block.maxTimestamp);
+                offset += length;
+            }
+            out.force(true);
+        } finally {
+            deflater.end();
+        }
+
+        Integer[] servers = serverIds.toArray(new Integer[0]);
+        ByteBuffer index = ByteBuffer.allocate(8 + blocks.length * BLOCK_ENTRY_SIZE + 4 + servers.length * 4);
+        index.putInt(INDEX_MAGIC).putInt(blocks.length);
+        for (Block block : blocks) {
+            index.putInt(block.position).putInt(block.rawLength).putLong(block.offset).putInt(block.length)
+                    .putLong(block.firstSequence).putInt(block.count)
+                    .putLong(block.minTimestamp).putLong(block.maxTimestamp);
+        }
+        index.putInt(servers.length);
+        for (Integer server : servers) {
+            index.putInt(server);
+        }
+        Files.write(indexTemp, index.array());
+
+        // the raw file stays authoritative until both files are complete
+        Files.move(compressedTemp, path(COMPRESSED_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(indexTemp, path(INDEX_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+        view = new View(blocks, null, true);
+        Files.deleteIfExists(path(RAW_SUFFIX));
+        log.debug("journal segment {} compressed", baseName(firstSequence));
+    }
+
+    void delete() throws IOException {
+        deleted = true;
+        Files.deleteIfExists(path(RAW_SUFFIX));
+        Files.deleteIfExists(path(COMPRESSED_SUFFIX));
+        Files.deleteIfExists(path(INDEX_SUFFIX));
+    }
+
+    /**
+     * Passes the records in the time range of the given server, or of all servers if the server id is
+     * {@link MessageJournal#ALL_SERVERS}, to the visitor.
+     *
+     * @return <tt>false</tt> if the visitor stopped the query
+     */
+    boolean scan(long from, long to, int serverId, JournalVisitor visitor) throws IOException {
+        if (maxTimestamp < from || minTimestamp > to
+                || (serverId != MessageJournal.ALL_SERVERS && !serverIds.contains(serverId))) {
+            return true;
+        }
+        View current = view;
+        if (current.compressed) {
+            return scanCompressed(current.blocks, from, to, serverId, visitor);
+        }
+        int end = committed; // read after the view, records of blocks closed in the meantime are in the tail
+        int tail = HEADER_SIZE;
+        for (Block block : current.blocks) {
+            if (block.overlaps(from, to)
+                    && !scanRecords(current.mapped, block.position, block.position + block.rawLength, from, to, serverId, visitor)) {
+                return false;
+            }
+            tail = block.position + block.rawLength;
+        }
+        return scanRecords(current.mapped, tail, end, from, to, serverId, visitor);
+    }
+
+    private boolean scanCompressed(Block[] blocks, long from, long to, int serverId, JournalVisitor visitor)
+            throws IOException {
+        List<Block> matching = new ArrayList<>();
+        for (Block block : blocks) {
+            if (block.overlaps(from, to)) {
+                matching.add(block);
+            }
+        }
+        if (matching.isEmpty()) {
+            return true;
+        }
+        Inflater inflater = new Inflater();
+        try (FileChannel in = FileChannel.open(path(COMPRESSED_SUFFIX), StandardOpenOption.READ)) {
+            for (Block block : matching) {
+                ByteBuffer compressed = ByteBuffer.allocate(block.length);
+                while (compressed.hasRemaining()) {
+                    if (in.read(compressed, block.offset + compressed.position()) < 0) {
+                        throw new IOException("journal segment " + baseName(firstSequence) + " is truncated");
+                    }
+                }
+                byte[] raw = new byte[block.rawLength];
+                inflater.reset();
+                inflater.setInput(compressed.array());
+                try {
+                    int length = 0;
+                    while (length < raw.length && !inflater.finished() && !inflater.needsInput()) {
+                        length += inflater.inflate(raw, length, raw.length - length);
+                    }
+                    if (length != raw.length) {
+                        throw new IOException("journal segment " + baseName(firstSequence) + " is corrupt");
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("journal segment " + baseName(firstSequence) + " is corrupt", e);
+                }
+                if (!scanRecords(ByteBuffer.wrap(raw), 0, raw.length, from, to, serverId, visitor)) {
+                    return false;
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        return true;
+    }
+
+    private static boolean scanRecords(ByteBuffer buffer, int start, int end, long from, long to, int serverId,
+                                       JournalVisitor visitor) {
+        int p = start;
+        while (p + RECORD_HEADER_SIZE <= end) {
+            int length = buffer.getInt(p);
+            if (length < RECORD_HEADER_SIZE || p + length > end) {
+                break;
+            }
+            long timestamp = buffer.getLong(p + 16);
+            int server = buffer.getInt(p + 24);
+            if (timestamp >= from && timestamp <= to && (serverId == MessageJournal.ALL_SERVERS || server == serverId)) {
+                byte[] message = new byte[length - RECORD_HEADER_SIZE];
+                ByteBuffer record = buffer.duplicate();
+                record.position(p + RECORD_HEADER_SIZE);
+                record.get(message);
+                JournalEntry entry = new JournalEntry(buffer.getLong(p + 8), timestamp, server, buffer.getInt(p + 28),
+                        message);
+                if (!visitor.visit(entry)) {
+                    return false;
+                }
+            }
+            p += length;
+        }
+        return true;
+    }
+
+    /**
+     * Blocks and mapping of a segment, replaced as a whole so queries see a consistent state.
+     */
+    private static final class View {
+        final Block[] blocks;
+        final MappedByteBuffer mapped; // null if compressed
+        final boolean compressed;
+
+        View(Block[] blocks, MappedByteBuffer mapped, boolean compressed) {
+            this.blocks = blocks;
+            this.mapped = mapped;
+            this.compressed = compressed;
+        }
+    }
+
+    /**
+     * Sparse index entry.
+     */
+    private static final class Block {
+        final int position; // in the raw segment
+        final int rawLength;
+        final long offset; // in the compressed segment, -1 if not compressed
+        final int length;
+        final long firstSequence;
+        final int count;
+        final long minTimestamp;
+        final long maxTimestamp;
+
+        Block(int position, int rawLength, long offset, int length, long firstSequence, int count,
+              long minTimestamp, long maxTimestamp) {
+            this.position = position;
+            this.rawLength = rawLength;
+            this.offset = offset;
+            this.length = length;
+            this.firstSequence = firstSequence;
+            this.count = count;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+        }
+
+        boolean overlaps(long from, long to) {
+            return maxTimestamp >= from && minTimestamp <= to;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package arma.ber4j.response;
+
+/**
+ * A ban as listed by the <tt>bans</tt> command.
+ */
+public class Ban {
+
+    public enum Type {
+        Guid,
+        Ip
+    }
+
+    public static final int PERMANENT = -1;
+
+    private final int number;
+    private final Type type;
+    private final String id;
+    private final int minutesLeft;
+    private final String reason;
+
+    public Ban(int number, Type type, String id, int minutesLeft, String reason) {
+        this.number = number;
+        this.type = type;
+        this.id = id;
+        this.minutesLeft = minutesLeft;
+        this.reason = reason;
+    }
+
+    /**
+     * @return the ban number used by the <tt>removeBan</tt> command, it changes when a ban with a lower number is
+     * removed
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the banned GUID or IP address, depending on the type
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the minutes until the ban expires, {@link #PERMANENT} for permanent bans and 0 for expired bans
+     */
+    public int getMinutesLeft() {
+        return minutesLeft;
+    }
+
+    public boolean isPermanent() {
+        return minutesLeft == PERMANENT;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        return "Ban{" +
+                "number=" + number +
+                ", type=" + type +
+                ", id='" + id + '\'' +
+                ", minutesLeft=" + minutesLeft +
+                ", reason='" + reason + '\'' +
+                '}';
+    }
+}
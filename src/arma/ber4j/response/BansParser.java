@@ -0,0 +1,105 @@
+package arma.ber4j.response;
+
+import arma.ber4j.BattlEyeClient;
+import arma.ber4j.BattlEyeCommand;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the response of the <tt>bans</tt> command.
+ * <pre>
+ * GUID Bans:
+ * [#] [GUID] [Minutes left] [Reason]
+ * ----------------------------------------
+ * 0  0123456789abcdef0123456789abcdef perm Cheating
+ *
+ * IP Bans:
+ * [#] [IP Address] [Minutes left] [Reason]
+ * ----------------------------------------------
+ * 1  127.0.0.1       120 Spamming
+ * </pre>
+ */
+public class BansParser extends LineParser {
+    private static final Pattern BAN_PATTERN = Pattern.compile("(\\d+)\\s+(\\S+)\\s+(perm|-|-?\\d+)(?:\\s+(.*))?");
+    private static final Pattern GUID_PATTERN = Pattern.compile("[0-9a-fA-F]{32}");
+
+    private final Consumer<Ban> consumer;
+    private Ban.Type section;
+
+    public BansParser(Consumer<Ban> consumer) {
+        this(consumer, Charset.defaultCharset());
+    }
+
+    public BansParser(Consumer<Ban> consumer, Charset charset) {
+        super(charset);
+        this.consumer = consumer;
+    }
+
+    @Override
+    protected void onLine(String line) {
+        String trimmed = line.trim();
+        if (trimmed.startsWith("GUID Bans:")) {
+            section = Ban.Type.Guid;
+            return;
+        }
+        if (trimmed.startsWith("IP Bans:")) {
+            section = Ban.Type.Ip;
+            return;
+        }
+        Ban ban = parseLine(trimmed, section);
+        if (ban != null) {
+            consumer.accept(ban);
+        }
+    }
+
+    /**
+     * @param type the type of the section the line belongs to, or <tt>null</tt> to guess it from the banned id
+     * @return the ban of the given line, or <tt>null</tt> if the line is a header
+     */
+    public static Ban parseLine(String line, Ban.Type type) {
+        Matcher matcher = BAN_PATTERN.matcher(line.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        String id = matcher.group(2);
+        if (type == null) {
+            type = GUID_PATTERN.matcher(id).matches() ? Ban.Type.Guid : Ban.Type.Ip;
+        }
+        String time = matcher.group(3);
+        int minutesLeft;
+        if ("perm".equals(time)) {
+            minutesLeft = Ban.PERMANENT;
+        } else if ("-".equals(time)) {
+            minutesLeft = 0; // expired
+        } else {
+            minutesLeft = Math.max(0, Integer.parseInt(time));
+        }
+        String reason = matcher.group(4);
+        return new Ban(Integer.parseInt(matcher.group(1)), type, id, minutesLeft, reason != null ? reason.trim() : "");
+    }
+
+    public static List<Ban> parse(String response) {
+        List<Ban> bans = new ArrayList<>();
+        new BansParser(bans::add).parseLines(response);
+        return bans;
+    }
+
+    /**
+     * Requests the ban list and passes every ban to the consumer while the response arrives, without keeping the
+     * whole list in memory.
+     */
+    public static CompletableFuture<Void> requestBans(BattlEyeClient client, Consumer<Ban> consumer) {
+        return client.stream(BattlEyeCommand.Bans, new BansParser(consumer, client.getCharset()));
+    }
+
+    public static CompletableFuture<List<Ban>> requestBans(BattlEyeClient client) {
+        List<Ban> bans = new ArrayList<>();
+        return requestBans(client, bans::add).thenApply(v -> bans);
+    }
+}
@@ -0,0 +1,79 @@
+package arma.ber4j.response;
+
+import arma.ber4j.ResponsePartHandler;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Splits a streamed command response into lines.
+ * <p>Lines are split on the raw bytes, so lines and multi-byte characters may span several response parts. Every
+ * line is decoded once, without the line terminator.</p>
+ */
+public abstract class LineParser implements ResponsePartHandler {
+    private final Charset charset;
+    private byte[] lineBuffer;
+    private int lineLength;
+
+    protected LineParser(Charset charset) {
+        this.charset = charset;
+        lineBuffer = new byte[256];
+    }
+
+    @Override
+    public void onResponsePart(ByteBuffer part) {
+        while (part.hasRemaining()) {
+            byte b = part.get();
+            if (b == '\n') {
+                emitLine();
+            } else {
+                if (lineLength == lineBuffer.length) {
+                    byte[] buffer = new byte[lineBuffer.length * 2];
+                    System.arraycopy(lineBuffer, 0, buffer, 0, lineLength);
+                    lineBuffer = buffer;
+                }
+                lineBuffer[lineLength++] = b;
+            }
+        }
+    }
+
+    @Override
+    public void onResponseComplete() {
+        if (lineLength > 0) {
+            emitLine();
+        }
+    }
+
+    /**
+     * Parses a response which was received as a whole.
+     */
+    public void parseLines(String response) {
+        int start = 0;
+        int end;
+        while ((end = response.indexOf('\n', start)) >= 0) {
+            onLine(stripCarriageReturn(response.substring(start, end)));
+            start = end + 1;
+        }
+        if (start < response.length()) {
+            onLine(stripCarriageReturn(response.substring(start)));
+        }
+    }
+
+    private void emitLine() {
+        int length = lineLength;
+        if (length > 0 && lineBuffer[length - 1] == '\r') {
+            length--;
+        }
+        lineLength = 0;
+        onLine(new String(lineBuffer, 0, length, charset));
+    }
+
+    private static String stripCarriageReturn(String line) {
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    /**
+     * Called for every line of the response, including headers and empty lines.
+     */
+    protected abstract void onLine(String line);
+}
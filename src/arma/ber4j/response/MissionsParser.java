@@ -0,0 +1,51 @@
+package arma.ber4j.response;
+
+import arma.ber4j.BattlEyeClient;
+import arma.ber4j.BattlEyeCommand;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Parses the response of the <tt>missions</tt> command into mission names, as used by the <tt>#mission</tt> command.
+ * <pre>
+ * Missions on server:
+ * co10_Escape.Altis
+ * MP_Bootcamp_01.Stratis
+ * </pre>
+ */
+public class MissionsParser extends LineParser {
+    private final Consumer<String> consumer;
+
+    public MissionsParser(Consumer<String> consumer) {
+        this(consumer, Charset.defaultCharset());
+    }
+
+    public MissionsParser(Consumer<String> consumer, Charset charset) {
+        super(charset);
+        this.consumer = consumer;
+    }
+
+    @Override
+    protected void onLine(String line) {
+        String mission = line.trim();
+        if (!mission.isEmpty() && !mission.endsWith(":")) {
+            consumer.accept(mission);
+        }
+    }
+
+    public static List<String> parse(String response) {
+        List<String> missions = new ArrayList<>();
+        new MissionsParser(missions::add).parseLines(response);
+        return missions;
+    }
+
+    public static CompletableFuture<List<String>> requestMissions(BattlEyeClient client) {
+        List<String> missions = new ArrayList<>();
+        return client.stream(BattlEyeCommand.Missions, new MissionsParser(missions::add, client.getCharset()))
+                .thenApply(v -> missions);
+    }
+}
@@ -0,0 +1,79 @@
+package arma.ber4j.response;
+
+/**
+ * A player as listed by the <tt>players</tt> command.
+ */
+public class Player {
+    private final int slot;
+    private final String address;
+    private final int port;
+    private final int ping;
+    private final String guid;
+    private final boolean verified;
+    private final String name;
+    private final boolean lobby;
+
+    public Player(int slot, String address, int port, int ping, String guid, boolean verified, String name, boolean lobby) {
+        this.slot = slot;
+        this.address = address;
+        this.port = port;
+        this.ping = ping;
+        this.guid = guid;
+        this.verified = verified;
+        this.name = name;
+        this.lobby = lobby;
+    }
+
+    /**
+     * @return the player number used by commands like <tt>kick</tt> or <tt>say</tt>
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getPing() {
+        return ping;
+    }
+
+    public String getGuid() {
+        return guid;
+    }
+
+    /**
+     * @return <tt>true</tt> if the GUID was verified by the BattlEye master server (<tt>(OK)</tt> instead of
+     * <tt>(?)</tt>)
+     */
+    public boolean isVerified() {
+        return verified;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isLobby() {
+        return lobby;
+    }
+
+    @Override
+    public String toString() {
+        return "Player{" +
+                "slot=" + slot +
+                ", address='" + address + '\'' +
+                ", port=" + port +
+                ", ping=" + ping +
+                ", guid='" + guid + '\'' +
+                ", verified=" + verified +
+                ", name='" + name + '\'' +
+                ", lobby=" + lobby +
+                '}';
+    }
+}
@@ -0,0 +1,82 @@
+package arma.ber4j.response;
+
+import arma.ber4j.BattlEyeClient;
+import arma.ber4j.BattlEyeCommand;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the response of the <tt>players</tt> command.
+ * <pre>
+ * Players on server:
+ * [#] [IP Address]:[Port] [Ping] [GUID] [Name]
+ * --------------------------------------------------
+ * 0   127.0.0.1:2304     47   0123456789abcdef0123456789abcdef(OK) Name
+ * 1   127.0.0.1:2306     63   0123456789abcdef0123456789abcdef(?) Name (Lobby)
+ * 2   127.0.0.1:2308     0    -   Name
+ * (3 players in total)
+ * </pre>
+ */
+public class PlayersParser extends LineParser {
+    private static final Pattern PLAYER_PATTERN = Pattern.compile(
+            "(\\d+)\\s+(\\S+):(\\d+)\\s+(-?\\d+)\\s+(\\S*?)(?:\\((OK|\\?)\\))?\\s+(.*?)( \\(Lobby\\))?");
+
+    private final Consumer<Player> consumer;
+
+    public PlayersParser(Consumer<Player> consumer) {
+        this(consumer, Charset.defaultCharset());
+    }
+
+    public PlayersParser(Consumer<Player> consumer, Charset charset) {
+        super(charset);
+        this.consumer = consumer;
+    }
+
+    @Override
+    protected void onLine(String line) {
+        Player player = parseLine(line);
+        if (player != null) {
+            consumer.accept(player);
+        }
+    }
+
+    /**
+     * @return the player of the given line, or <tt>null</tt> if the line is a header or footer
+     */
+    public static Player parseLine(String line) {
+        Matcher matcher = PLAYER_PATTERN.matcher(line.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        return new Player(
+                Integer.parseInt(matcher.group(1)),
+                matcher.group(2),
+                Integer.parseInt(matcher.group(3)),
+                Integer.parseInt(matcher.group(4)),
+                matcher.group(5),
+                "OK".equals(matcher.group(6)),
+                matcher.group(7),
+                matcher.group(8) != null);
+    }
+
+    public static List<Player> parse(String response) {
+        List<Player> players = new ArrayList<>();
+        new PlayersParser(players::add).parseLines(response);
+        return players;
+    }
+
+    /**
+     * Requests the player list and parses it while the response arrives.
+     */
+    public static CompletableFuture<List<Player>> requestPlayers(BattlEyeClient client) {
+        List<Player> players = new ArrayList<>();
+        return client.stream(BattlEyeCommand.Players, new PlayersParser(players::add, client.getCharset()))
+                .thenApply(v -> players);
+    }
+}
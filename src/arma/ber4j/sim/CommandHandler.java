@@ -0,0 +1,14 @@
+package arma.ber4j.sim;
+
+/**
+ * Answers the commands received by a {@link ServerSimulator}.
+ */
+public interface CommandHandler {
+    /**
+     * Called on the simulator's receive thread, must not block.
+     *
+     * @param command the command, empty for keep alive packets
+     * @return the response, <tt>null</tt> or empty for an empty response
+     */
+    String execute(String command);
+}
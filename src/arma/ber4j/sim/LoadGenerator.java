@@ -0,0 +1,193 @@
+package arma.ber4j.sim;
+
+import arma.ber4j.BattlEyeClient;
+import arma.ber4j.BattlEyeCommand;
+import arma.ber4j.BattlEyeEngine;
+import arma.ber4j.RawMessageHandler;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+
+/**
+ * Connects many clients driven by one engine to a {@link ServerSimulator}, or to a real server, and prints the
+ * throughput and the command round trip times every second.
+ * <pre>
+ * java arma.ber4j.sim.LoadGenerator clients=2000 duration=60 messageRate=2 commandRate=0.5 loss=0.01 latency=20
+ * </pre>
+ * <table summary="options">
+ * <tr><td>clients</td><td>number of clients (100)</td></tr>
+ * <tr><td>duration</td><td>seconds (30)</td></tr>
+ * <tr><td>eventLoops</td><td>event loops of the engine (number of processors)</td></tr>
+ * <tr><td>commandRate</td><td><tt>players</tt> commands per second and client (1)</td></tr>
+ * <tr><td>messageRate, loss, duplication, reordering, latency, jitter, players</td><td>simulator settings</td></tr>
+ * <tr><td>host, port, password</td><td>server to use instead of a simulator</td></tr>
+ * </table>
+ */
+public class LoadGenerator {
+
+    private final List<BattlEyeClient> clients;
+    private final AtomicLong messages;
+    private final AtomicLong responses;
+    private final AtomicLong failures;
+    private final AtomicLongArray roundTripTimes; // histogram, bucket i counts times below 2^i microseconds
+
+    private LoadGenerator() {
+        clients = new ArrayList<>();
+        messages = new AtomicLong();
+        responses = new AtomicLong();
+        failures = new AtomicLong();
+        roundTripTimes = new AtomicLongArray(40);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int i = arg.indexOf('=');
+            if (i < 0) {
+                System.err.println("usage: LoadGenerator [option=value]...");
+                System.exit(1);
+            }
+            options.put(arg.substring(0, i), arg.substring(i + 1));
+        }
+        new LoadGenerator().run(options);
+    }
+
+    private void run(Map<String, String> options) throws Exception {
+        int clientCount = Integer.parseInt(option(options, "clients", "100"));
+        int duration = Integer.parseInt(option(options, "duration", "30"));
+        int eventLoops = Integer.parseInt(option(options, "eventLoops", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        double commandRate = Double.parseDouble(option(options, "commandRate", "1"));
+        String password = option(options, "password", "password");
+
+        ServerSimulator simulator = null;
+        InetSocketAddress address;
+        if (options.containsKey("host")) {
+            address = new InetSocketAddress(options.get("host"), Integer.parseInt(option(options, "port", "2302")));
+        } else {
+            simulator = new ServerSimulator(password);
+            simulator.setMessageRate(Double.parseDouble(option(options, "messageRate", "1")));
+            simulator.setPacketLoss(Double.parseDouble(option(options, "loss", "0")));
+            simulator.setDuplication(Double.parseDouble(option(options, "duplication", "0")));
+            simulator.setReordering(Double.parseDouble(option(options, "reordering", "0")));
+            simulator.setLatency(Long.parseLong(option(options, "latency", "0")));
+            simulator.setJitter(Long.parseLong(option(options, "jitter", "0")));
+            simulator.setPlayerCount(Integer.parseInt(option(options, "players", "20")));
+            simulator.start();
+            address = simulator.getAddress();
+        }
+
+        BattlEyeEngine engine = new BattlEyeEngine(eventLoops);
+        RawMessageHandler messageCounter = new RawMessageHandler() {
+            @Override
+            public void onMessageReceived(ByteBuffer message) {
+                messages.incrementAndGet();
+            }
+        };
+        for (int i = 0; i < clientCount; i++) {
+            BattlEyeClient client = new BattlEyeClient(address, engine);
+            client.addRawMessageHandler(messageCounter);
+            client.connect(password);
+            clients.add(client);
+        }
+
+        System.out.println("  time connected  messages/s  responses/s  failures     p50 rtt     p99 rtt     max rtt");
+        long start = System.currentTimeMillis();
+        double commandCredit = 0;
+        long lastMessages = 0;
+        long lastResponses = 0;
+        for (int second = 1; second <= duration; second++) {
+            // spread the commands over the second
+            for (int tick = 0; tick < 10; tick++) {
+                commandCredit += commandRate * clientCount / 10;
+                for (int i = 0; commandCredit >= 1; i++, commandCredit--) {
+                    sendCommand(clients.get((int) ((second * 10L + tick + i * 7919L) % clientCount)));
+                }
+                long next = start + (second - 1) * 1000L + (tick + 1) * 100L;
+                Thread.sleep(Math.max(0, next - System.currentTimeMillis()));
+            }
+            int connected = 0;
+            for (BattlEyeClient client : clients) {
+                if (client.isConnected()) {
+                    connected++;
+                }
+            }
+            long messageCount = messages.get();
+            long responseCount = responses.get();
+            System.out.printf("%6d %9d %11d %12d %9d %9dus %9dus %9dus%n", second, connected,
+                    messageCount - lastMessages, responseCount - lastResponses, failures.get(),
+                    percentile(0.5), percentile(0.99), percentile(1));
+            lastMessages = messageCount;
+            lastResponses = responseCount;
+            for (int i = 0; i < roundTripTimes.length(); i++) {
+                roundTripTimes.set(i, 0);
+            }
+        }
+
+        for (BattlEyeClient client : clients) {
+            client.setAutoReconnect(false);
+            client.disconnect();
+        }
+        engine.close();
+        if (simulator != null) {
+            System.out.printf("simulator: %d logins, %d commands, %d messages, %d retransmissions, %d dropped packets%n",
+                    simulator.getLogins(), simulator.getCommands(), simulator.getMessages(),
+                    simulator.getRetransmissions(), simulator.getDroppedPackets());
+            simulator.close();
+        }
+    }
+
+    private void sendCommand(BattlEyeClient client) {
+        if (!client.isConnected()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        CompletableFuture<String> future = client.execute(BattlEyeCommand.Players);
+        future.whenComplete(new BiConsumer<String, Throwable>() {
+            @Override
+            public void accept(String response, Throwable throwable) {
+                if (throwable != null) {
+                    failures.incrementAndGet();
+                    return;
+                }
+                responses.incrementAndGet();
+                long micros = Math.max(1, (System.nanoTime() - start) / 1000);
+                roundTripTimes.incrementAndGet(Math.min(roundTripTimes.length() - 1, 64 - Long.numberOfLeadingZeros(micros)));
+            }
+        });
+    }
+
+    /**
+     * @return the upper bound of the histogram bucket which contains the percentile
+     */
+    private long percentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < roundTripTimes.length(); i++) {
+            total += roundTripTimes.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile);
+        long count = 0;
+        for (int i = 0; i < roundTripTimes.length(); i++) {
+            count += roundTripTimes.get(i);
+            if (count >= rank) {
+                return 1L << i;
+            }
+        }
+        return 1L << (roundTripTimes.length() - 1);
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+}
@@ -0,0 +1,333 @@
+package arma.ber4j.sim;
+
+import arma.ber4j.BattlEyeServer;
+import arma.ber4j.ServerSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local UDP server which speaks the BattlEye RCon protocol, for tests and load tests of clients.
+ * <p>The simulator accepts logins with the configured password, answers commands through a {@link CommandHandler}
+ * and splits long responses into multi packet responses. Server messages are generated at a configurable rate per
+ * session and retransmitted until they are acknowledged, like a game server does. Sessions which don't send any
+ * packet within the session timeout, or don't acknowledge a message after
+ * {@value BattlEyeServer#MAX_TRANSMISSIONS} transmissions, are dropped.</p>
+ * <p>Packet loss applies to both directions, latency, jitter, reordering and duplication to the sent packets. All
+ * settings may be changed while the simulator is running. One receive thread and one timer thread serve all
+ * sessions, so a simulator can serve thousands of clients.</p>
+ */
+public class ServerSimulator extends BattlEyeServer<ServerSimulator.Session> {
+    private static final Logger log = LoggerFactory.getLogger(ServerSimulator.class);
+
+    private static final long TICK = 10; // interval of the message generation and the retransmissions
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    private volatile CommandHandler commandHandler;
+    private volatile double messageRate;
+    private volatile double packetLoss;
+    private volatile double duplication;
+    private volatile double reordering;
+    private volatile long latency;
+    private volatile long jitter;
+    private volatile int playerCount;
+
+    private final AtomicLong sentPackets;
+    private final AtomicLong droppedPackets;
+    private final AtomicLong commands;
+    private final AtomicLong messages;
+    private final AtomicLong messageCounter; // numbers the generated messages
+
+    /**
+     * Creates a simulator on a free port of the loopback interface.
+     */
+    public ServerSimulator(String password) {
+        this(new InetSocketAddress("127.0.0.1", 0), password);
+    }
+
+    public ServerSimulator(InetSocketAddress bindAddress, String password) {
+        super("simulator", bindAddress, password, TICK, Integer.MAX_VALUE);
+        commandHandler = new DefaultCommandHandler();
+        playerCount = 20;
+
+        sentPackets = new AtomicLong();
+        droppedPackets = new AtomicLong();
+        commands = new AtomicLong();
+        messages = new AtomicLong();
+        messageCounter = new AtomicLong();
+    }
+
+    /**
+     * Sends a server message to every logged in session.
+     */
+    public void broadcast(String message) {
+        byte[] bytes = message.getBytes(CHARSET);
+        for (Session session : getSessions()) {
+            if (sendMessage(session, bytes)) {
+                messages.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drops all sessions without telling the clients, like a restarted game server.
+     */
+    public void dropSessions() {
+        getSessions().clear();
+    }
+
+    @Override
+    protected Session newSession(SocketAddress address) {
+        return new Session(address);
+    }
+
+    @Override
+    protected void commandReceived(Session session, int sequenceNumber, String command) throws IOException {
+        commands.incrementAndGet();
+        String response = commandHandler.execute(command);
+        byte[] bytes = (response != null ? response : "").getBytes(CHARSET);
+        send(session.getAddress(), encodeResponse(sequenceNumber, bytes));
+    }
+
+    @Override
+    protected void tick(Session session, long now) {
+        session.messageCredit += messageRate * TICK / 1000;
+        while (session.messageCredit >= 1) {
+            session.messageCredit--;
+            if (sendMessage(session, nextMessage().getBytes(CHARSET))) {
+                messages.incrementAndGet();
+            }
+        }
+    }
+
+    private String nextMessage() {
+        long n = messageCounter.getAndIncrement();
+        int slot = (int) (n % 100);
+        switch ((int) (n % 4)) {
+            case 0:
+                return "Player #" + slot + " Player" + slot + " (127.0.0.1:" + (2304 + slot) + ") connected";
+            case 1:
+                return "Player #" + slot + " Player" + slot + " - BE GUID: " + guid(slot);
+            case 2:
+                return "(Global) Player" + slot + ": message " + n;
+            default:
+                return "Player #" + slot + " Player" + slot + " disconnected";
+        }
+    }
+
+    private static String guid(int slot) {
+        return String.format("%032x", slot + 1);
+    }
+
+    /**
+     * Sends the packet with the configured faults.
+     */
+    @Override
+    protected void send(final SocketAddress address, final ByteBuffer packet) throws IOException {
+        if (lose()) {
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int copies = duplication > 0 && random.nextDouble() < duplication ? 2 : 1;
+        for (int i = 0; i < copies; i++) {
+            long delay = latency;
+            if (jitter > 0) {
+                delay += random.nextLong(jitter + 1);
+            }
+            if (reordering > 0 && random.nextDouble() < reordering) {
+                // overtaken by the following packets
+                delay += 1 + random.nextLong(Math.max(10, 2 * latency));
+            }
+            sentPackets.incrementAndGet();
+            if (delay == 0) {
+                super.send(address, packet);
+            } else {
+                schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            ServerSimulator.super.send(address, packet);
+                        } catch (IOException e) {
+                            log.debug("simulator could not send delayed packet", e);
+                        }
+                    }
+                }, delay);
+            }
+        }
+    }
+
+    @Override
+    protected boolean dropReceived() {
+        return lose();
+    }
+
+    private boolean lose() {
+        if (packetLoss > 0 && ThreadLocalRandom.current().nextDouble() < packetLoss) {
+            droppedPackets.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public CommandHandler getCommandHandler() {
+        return commandHandler;
+    }
+
+    /**
+     * Sets the handler which answers the commands, by default <tt>players</tt>, <tt>bans</tt> and <tt>missions</tt>
+     * are answered with generated lists and all other commands with an empty response.
+     */
+    public void setCommandHandler(CommandHandler commandHandler) {
+        this.commandHandler = commandHandler != null ? commandHandler : new DefaultCommandHandler();
+    }
+
+    public double getMessageRate() {
+        return messageRate;
+    }
+
+    /**
+     * Sets the number of generated server messages per second and session, defaults to 0.
+     */
+    public void setMessageRate(double messageRate) {
+        this.messageRate = messageRate;
+    }
+
+    public double getPacketLoss() {
+        return packetLoss;
+    }
+
+    /**
+     * Sets the probability that a received or sent packet is lost.
+     */
+    public void setPacketLoss(double packetLoss) {
+        this.packetLoss = packetLoss;
+    }
+
+    public double getDuplication() {
+        return duplication;
+    }
+
+    /**
+     * Sets the probability that a sent packet is sent twice.
+     */
+    public void setDuplication(double duplication) {
+        this.duplication = duplication;
+    }
+
+    public double getReordering() {
+        return reordering;
+    }
+
+    /**
+     * Sets the probability that a sent packet is delayed by up to twice the latency, at least 10 ms, so that it is
+     * overtaken by the following packets.
+     */
+    public void setReordering(double reordering) {
+        this.reordering = reordering;
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * Sets the delay of every sent packet in milliseconds.
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    public long getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Sets the max random delay in milliseconds which is added to the latency.
+     */
+    public void setJitter(long jitter) {
+        this.jitter = jitter;
+    }
+
+    public int getPlayerCount() {
+        return playerCount;
+    }
+
+    /**
+     * Sets the number of players in the response of the default command handler to <tt>players</tt>.
+     */
+    public void setPlayerCount(int playerCount) {
+        this.playerCount = playerCount;
+    }
+
+    public long getSentPackets() {
+        return sentPackets.get();
+    }
+
+    /**
+     * @return the number of received and sent packets lost on purpose
+     */
+    public long getDroppedPackets() {
+        return droppedPackets.get();
+    }
+
+    public long getCommands() {
+        return commands.get();
+    }
+
+    public long getMessages() {
+        return messages.get();
+    }
+
+    private final class DefaultCommandHandler implements CommandHandler {
+        private String players; // cached response, only accessed by the receive thread
+        private int playersCount;
+
+        @Override
+        public String execute(String command) {
+            String name = command.trim().toLowerCase();
+            if (name.equals("players")) {
+                int count = playerCount;
+                if (players == null || playersCount != count) {
+                    players = players(count);
+                    playersCount = count;
+                }
+                return players;
+            }
+            if (name.equals("bans")) {
+                return "GUID Bans:\n[#] [GUID] [Minutes left] [Reason]\n----------------------------------------\n\n"
+                        + "IP Bans:\n[#] [IP Address] [Minutes left] [Reason]\n----------------------------------------------";
+            }
+            if (name.equals("missions")) {
+                return "Missions on server:\nsimulation.Altis";
+            }
+            return "";
+        }
+
+        private String players(int count) {
+            StringBuilder sb = new StringBuilder(64 + count * 80);
+            sb.append("Players on server:\n[#] [IP Address]:[Port] [Ping] [GUID] [Name]\n")
+                    .append("--------------------------------------------------\n");
+            for (int i = 0; i < count; i++) {
+                sb.append(i).append("   127.0.0.1:").append(2304 + i).append("     ").append(20 + i % 80)
+                        .append("   ").append(guid(i)).append("(OK) Player").append(i).append('\n');
+            }
+            return sb.append('(').append(count).append(" players in total)").toString();
+        }
+    }
+
+    static final class Session extends ServerSession {
+        double messageCredit; // only accessed by the timer
+
+        Session(SocketAddress address) {
+            super(address);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package arma.ber4j.state;
+
+import arma.ber4j.response.Ban;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The changes which turn the ban list of a server into a desired ban list.
+ */
+public class BanDiff {
+    private final List<Ban> removed;
+    private final List<Ban> added;
+
+    BanDiff(List<Ban> removed, List<Ban> added) {
+        this.removed = Collections.unmodifiableList(removed);
+        this.added = Collections.unmodifiableList(added);
+    }
+
+    /**
+     * @return the bans of the server to remove, ordered by descending ban number, so removing a ban doesn't change
+     * the numbers of the bans which are removed after it
+     */
+    public List<Ban> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the desired bans which the server doesn't have yet
+     */
+    public List<Ban> getAdded() {
+        return added;
+    }
+
+    public boolean isEmpty() {
+        return removed.isEmpty() && added.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "BanDiff{" +
+                "removed=" + removed.size() +
+                ", added=" + added.size() +
+                '}';
+    }
+}
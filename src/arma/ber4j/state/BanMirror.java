@@ -0,0 +1,278 @@
+package arma.ber4j.state;
+
+import arma.ber4j.BattlEyeClient;
+import arma.ber4j.BattlEyeCommand;
+import arma.ber4j.response.Ban;
+import arma.ber4j.response.BansParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Local copy of the ban list of the server of one client.
+ * <p>The copy is indexed by ban number and by banned GUID or IP address. It is replaced as a whole by
+ * {@link #refresh()}, reads never block and always see a complete ban list.</p>
+ * <p>{@link #sync(Collection)} turns the ban list of the server into a desired ban list with the least number of
+ * <tt>removeBan</tt> and <tt>addBan</tt> commands, followed by one <tt>writeBans</tt>. Bans are identified by type
+ * and id, a ban is replaced if its reason or its permanence differ. The remaining minutes of temporary bans are not
+ * compared, they decrease while the ban is active. Expired bans are left to <tt>writeBans</tt>.</p>
+ */
+public class BanMirror {
+    private static final Logger log = LoggerFactory.getLogger(BanMirror.class);
+
+    private static final Snapshot EMPTY = new Snapshot(new ArrayList<Ban>());
+
+    private final BattlEyeClient client;
+    private volatile Snapshot snapshot;
+    private int addWindow;
+
+    // guarded by this
+    private CompletableFuture<Void> pendingRefresh;
+
+    public BanMirror(BattlEyeClient client) {
+        this.client = client;
+        snapshot = EMPTY;
+        addWindow = 16;
+    }
+
+    public int getAddWindow() {
+        return addWindow;
+    }
+
+    /**
+     * Sets the number of <tt>addBan</tt> commands which are sent without waiting for their responses, defaults to
+     * 16. The commands are sent with the pipelining of the client, see {@link BattlEyeClient#setMaxCommandsInFlight}.
+     * <tt>removeBan</tt> commands are always sent one after another, a reordered <tt>removeBan</tt> would remove the
+     * wrong ban.
+     */
+    public void setAddWindow(int addWindow) {
+        if (addWindow < 1) {
+            throw new IllegalArgumentException("addWindow must be positive");
+        }
+        this.addWindow = addWindow;
+    }
+
+    /**
+     * Downloads the ban list of the server and replaces the local copy once it was received completely. Returns the
+     * pending download if the ban list is already requested.
+     */
+    public synchronized CompletableFuture<Void> refresh() {
+        if (pendingRefresh == null) {
+            log.debug("request ban list");
+            final List<Ban> bans = new ArrayList<>();
+            final CompletableFuture<Void> refresh = BansParser.requestBans(client, bans::add)
+                    .thenRun(() -> {
+                        snapshot = new Snapshot(bans);
+                        log.debug("ban list received: {} bans", bans.size());
+                    });
+            pendingRefresh = refresh;
+            refresh.whenComplete((v, e) -> refreshCompleted(refresh));
+        }
+        return pendingRefresh;
+    }
+
+    private synchronized void refreshCompleted(CompletableFuture<Void> refresh) {
+        if (pendingRefresh == refresh) {
+            pendingRefresh = null;
+        }
+    }
+
+    /**
+     * @return all bans ordered by ban number
+     */
+    public List<Ban> getBans() {
+        return snapshot.bans;
+    }
+
+    public int getBanCount() {
+        return snapshot.bans.size();
+    }
+
+    public Ban getBan(int number) {
+        return snapshot.byNumber.get(number);
+    }
+
+    /**
+     * @return the bans of the given GUID or IP address, never <tt>null</tt>
+     */
+    public List<Ban> getBans(String id) {
+        List<Ban> bans = snapshot.byId.get(normalize(id));
+        return bans != null ? Collections.unmodifiableList(bans) : Collections.<Ban>emptyList();
+    }
+
+    /**
+     * @return <tt>true</tt> if the given GUID or IP address has a ban which didn't expire
+     */
+    public boolean isBanned(String id) {
+        for (Ban ban : getBans(id)) {
+            if (!isExpired(ban)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes the changes which turn the local copy into the desired ban list. The ban numbers of the desired bans
+     * are ignored.
+     */
+    public BanDiff diff(Collection<Ban> desired) {
+        Map<String, Ban> desiredByKey = new LinkedHashMap<>();
+        for (Ban ban : desired) {
+            desiredByKey.put(key(ban), ban);
+        }
+        List<Ban> removed = new ArrayList<>();
+        List<Ban> current = snapshot.bans;
+        // descending, so every removal keeps the numbers of the bans removed after it
+        for (int i = current.size() - 1; i >= 0; i--) {
+            Ban ban = current.get(i);
+            if (isExpired(ban)) {
+                continue; // purged by writeBans
+            }
+            String key = key(ban);
+            Ban wanted = desiredByKey.get(key);
+            if (wanted != null && matches(ban, wanted)) {
+                desiredByKey.remove(key); // keep the first matching ban, remove duplicates
+            } else {
+                removed.add(ban);
+            }
+        }
+        return new BanDiff(removed, new ArrayList<>(desiredByKey.values()));
+    }
+
+    /**
+     * Downloads the ban list, applies the changes to the desired ban list and downloads the ban list again, so the
+     * local copy has the new ban numbers. The returned future completes with the applied changes, or exceptionally
+     * if a command failed, in which case the remaining commands are not sent.
+     */
+    public CompletableFuture<BanDiff> sync(final Collection<Ban> desired) {
+        return refresh()
+                .thenCompose(v -> {
+                    BanDiff diff = diff(desired);
+                    log.debug("sync bans: {}", diff);
+                    if (diff.isEmpty()) {
+                        return CompletableFuture.completedFuture(diff);
+                    }
+                    return apply(diff)
+                            .thenCompose(x -> refresh())
+                            .thenApply(x -> diff);
+                });
+    }
+
+    /**
+     * Sends the commands for the given changes, followed by one <tt>writeBans</tt>. The local copy is not updated,
+     * the ban numbers are changed by the server.
+     */
+    public CompletableFuture<Void> apply(BanDiff diff) {
+        List<String> removeCommands = new ArrayList<>(diff.getRemoved().size());
+        for (Ban ban : diff.getRemoved()) {
+            removeCommands.add(BattlEyeCommand.RemoveBan.getCommandString() + ' ' + ban.getNumber());
+        }
+        final List<String> addCommands = new ArrayList<>(diff.getAdded().size());
+        for (Ban ban : diff.getAdded()) {
+            StringBuilder command = new StringBuilder(BattlEyeCommand.AddBan.getCommandString())
+                    .append(' ').append(ban.getId())
+                    .append(' ').append(ban.isPermanent() ? 0 : ban.getMinutesLeft());
+            if (ban.getReason() != null && !ban.getReason().isEmpty()) {
+                command.append(' ').append(ban.getReason());
+            }
+            addCommands.add(command.toString());
+        }
+        return new Batch(removeCommands.iterator(), 1).start()
+                .thenCompose(v -> new Batch(addCommands.iterator(), addWindow).start())
+                .thenCompose(v -> client.execute(BattlEyeCommand.WriteBans))
+                .thenApply(response -> null);
+    }
+
+    private static boolean matches(Ban ban, Ban wanted) {
+        String reason = wanted.getReason() != null ? wanted.getReason() : "";
+        return ban.isPermanent() == wanted.isPermanent() && ban.getReason().equals(reason.trim());
+    }
+
+    private static boolean isExpired(Ban ban) {
+        return ban.getMinutesLeft() == 0;
+    }
+
+    private static String key(Ban ban) {
+        return ban.getType() + " " + normalize(ban.getId());
+    }
+
+    private static String normalize(String id) {
+        return id.toLowerCase();
+    }
+
+    /**
+     * Sends commands while less than <tt>window</tt> commands wait for their responses.
+     */
+    private final class Batch {
+        private final Iterator<String> commands;
+        private final int window;
+        private final CompletableFuture<Void> result;
+        private int running; // guarded by this
+
+        Batch(Iterator<String> commands, int window) {
+            this.commands = commands;
+            this.window = window;
+            result = new CompletableFuture<>();
+        }
+
+        CompletableFuture<Void> start() {
+            sendNext();
+            return result;
+        }
+
+        private synchronized void sendNext() {
+            while (running < window && commands.hasNext() && !result.isDone()) {
+                running++;
+                String command = commands.next();
+                log.trace("send ban command: {}", command);
+                client.execute(command).whenComplete((response, e) -> completed(e));
+            }
+            if (running == 0 && !commands.hasNext()) {
+                result.complete(null);
+            }
+        }
+
+        private synchronized void completed(Throwable e) {
+            running--;
+            if (e != null) {
+                result.completeExceptionally(e);
+                return;
+            }
+            sendNext();
+        }
+    }
+
+    private static final class Snapshot {
+        final List<Ban> bans;
+        final Map<Integer, Ban> byNumber;
+        final Map<String, List<Ban>> byId;
+
+        Snapshot(List<Ban> bans) {
+            bans.sort(Comparator.comparingInt(Ban::getNumber));
+            this.bans = Collections.unmodifiableList(bans);
+            byNumber = new HashMap<>(bans.size() * 2);
+            Map<String, List<Ban>> byId = new HashMap<>(bans.size() * 2);
+            for (Ban ban : bans) {
+                byNumber.put(ban.getNumber(), ban);
+                List<Ban> list = byId.get(normalize(ban.getId()));
+                if (list == null) {
+                    list = new ArrayList<>(1);
+                    byId.put(normalize(ban.getId()), list);
+                }
+                list.add(ban);
+            }
+            this.byId = byId;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package arma.ber4j.state;
+
+import arma.ber4j.BattlEyeClient;
+import arma.ber4j.ConnectionHandler;
+import arma.ber4j.DisconnectType;
+import arma.ber4j.event.MessageClassifier;
+import arma.ber4j.event.PlayerListener;
+import arma.ber4j.response.Player;
+import arma.ber4j.response.PlayersParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Keeps track of the players on the server of one client.
+ * <p>The registry requests the player list once after every login and then follows the server messages about
+ * connecting, verified and disconnecting players, so the player list doesn't have to be polled. The list is only
+ * requested again if a message doesn't fit to the known players, e.g. the GUID of a player who never connected.</p>
+ * <p>The messages are parsed by a {@link MessageClassifier}, the registry is one of its player listeners.
+ * Reads never block, the indexes are concurrent maps which are only updated by the thread receiving the server
+ * messages. A player object is never modified, it is replaced if new information about the player is received.</p>
+ * <pre>
+ * Player #1 Name (127.0.0.1:2304) connected
+ * Player #1 Name - BE GUID: 0123456789abcdef0123456789abcdef
+ * Verified GUID (0123456789abcdef0123456789abcdef) of player #1 Name
+ * Player #1 Name disconnected
+ * </pre>
+ */
+public class PlayerRegistry implements ConnectionHandler, PlayerListener {
+    private static final Logger log = LoggerFactory.getLogger(PlayerRegistry.class);
+
+    private final BattlEyeClient client;
+    private final MessageClassifier classifier;
+    private final boolean ownClassifier; // attached and detached with the registry
+    private final Map<Integer, Player> playersBySlot;
+    private final Map<String, Player> playersByGuid;
+    private final Map<String, List<Player>> playersByAddress; // immutable lists, replaced on every change
+
+    // guarded by this
+    private CompletableFuture<List<Player>> pendingSync; // null if no sync is in progress
+    private List<BooleanSupplier> pendingEvents; // player events received while the player list is requested
+    private volatile boolean synchronizedState;
+    private volatile int syncCount;
+
+    /**
+     * Creates a registry with its own message classifier.
+     */
+    public PlayerRegistry(BattlEyeClient client) {
+        this(client, new MessageClassifier(client), true);
+    }
+
+    /**
+     * Creates a registry which listens to the given classifier, the classifier is attached to the client by the
+     * caller.
+     */
+    public PlayerRegistry(BattlEyeClient client, MessageClassifier classifier) {
+        this(client, classifier, false);
+    }
+
+    private PlayerRegistry(BattlEyeClient client, MessageClassifier classifier, boolean ownClassifier) {
+        this.client = client;
+        this.classifier = classifier;
+        this.ownClassifier = ownClassifier;
+        playersBySlot = new ConcurrentHashMap<>();
+        playersByGuid = new ConcurrentHashMap<>();
+        playersByAddress = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Registers this registry as connection handler of the client and player listener of the classifier and
+     * requests the player list if the client is already connected.
+     */
+    public void attach() {
+        client.addConnectionHandler(this);
+        classifier.addPlayerListener(this);
+        if (ownClassifier) {
+            classifier.attach();
+        }
+        if (client.isConnected()) {
+            sync();
+        }
+    }
+
+    public void detach() {
+        client.removeConnectionHandler(this);
+        classifier.removePlayerListener(this);
+        if (ownClassifier) {
+            classifier.detach();
+        }
+    }
+
+    public Player getPlayer(int slot) {
+        return playersBySlot.get(slot);
+    }
+
+    public Player getPlayerByGuid(String guid) {
+        return playersByGuid.get(guid.toLowerCase());
+    }
+
+    /**
+     * @return the players connected from the given IP address, never <tt>null</tt>
+     */
+    public List<Player> getPlayersByAddress(String address) {
+        List<Player> players = playersByAddress.get(address);
+        return players != null ? players : Collections.<Player>emptyList();
+    }
+
+    /**
+     * @return an unmodifiable live view of all players
+     */
+    public Collection<Player> getPlayers() {
+        return Collections.unmodifiableCollection(playersBySlot.values());
+    }
+
+    public int getPlayerCount() {
+        return playersBySlot.size();
+    }
+
+    /**
+     * @return <tt>true</tt> if the player list was received since the last login and all messages since then were
+     * consistent with it
+     */
+    public boolean isSynchronized() {
+        return synchronizedState;
+    }
+
+    /**
+     * @return how often the player list was requested, once per login if no inconsistency was detected
+     */
+    public int getSyncCount() {
+        return syncCount;
+    }
+
+    /**
+     * Requests the player list and replaces the known players with it. Messages received in the meantime are
+     * applied afterwards. Does nothing if the player list is already requested.
+     */
+    public synchronized CompletableFuture<Void> sync() {
+        if (pendingSync == null) {
+            log.debug("request player list");
+            synchronizedState = false;
+            syncCount++;
+            pendingEvents = new ArrayList<>();
+            final CompletableFuture<List<Player>> sync = PlayersParser.requestPlayers(client);
+            pendingSync = sync;
+            sync.whenComplete((players, e) -> syncCompleted(sync, players, e));
+        }
+        return pendingSync.thenApply(players -> null);
+    }
+
+    private synchronized void syncCompleted(CompletableFuture<List<Player>> sync, List<Player> players, Throwable e) {
+        if (sync != pendingSync) {
+            return;
+        }
+        List<BooleanSupplier> events = pendingEvents;
+        pendingSync = null;
+        pendingEvents = null;
+        if (e != null) {
+            log.debug("player list request failed: {}", e.toString());
+            return; // requested again after the next login
+        }
+        clear();
+        for (Player player : players) {
+            put(player);
+        }
+        synchronizedState = true;
+        log.debug("player list received: {} players", players.size());
+        for (BooleanSupplier event : events) {
+            event.getAsBoolean();
+        }
+    }
+
+    @Override
+    public void onConnected() {
+        sync();
+    }
+
+    @Override
+    public synchronized void onDisconnected(DisconnectType disconnectType) {
+        // keep the last known players, the server may still be up
+        synchronizedState = false;
+    }
+
+    @Override
+    public void onPlayerConnected(int slot, String name, String address, int port) {
+        playerEvent(() -> connected(slot, name, address, port), "connected", slot);
+    }
+
+    @Override
+    public void onPlayerGuid(int slot, String name, String guid, boolean verified) {
+        playerEvent(() -> guidReceived(slot, guid.toLowerCase(), verified), "GUID", slot);
+    }
+
+    @Override
+    public void onPlayerDisconnected(int slot, String name) {
+        // also sent for kicked players
+        playerEvent(() -> remove(slot) != null, "disconnected", slot);
+    }
+
+    /**
+     * Applies the event, or keeps it until the requested player list was received.
+     */
+    private void playerEvent(BooleanSupplier event, String type, int slot) {
+        boolean resync;
+        synchronized (this) {
+            if (pendingSync != null) {
+                pendingEvents.add(event);
+                return;
+            }
+            resync = !event.getAsBoolean() && synchronizedState;
+        }
+        if (resync) {
+            log.debug("inconsistent player message, request player list: {} #{}", type, slot);
+            sync();
+        }
+    }
+
+    // the following methods must hold the lock and return false if the event doesn't fit to the known players
+
+    private boolean connected(int slot, String name, String address, int port) {
+        Player previous = playersBySlot.get(slot);
+        // players join in the lobby, the ping is unknown until the player list is requested
+        put(new Player(slot, address, port, -1, null, false, name, true));
+        return previous == null;
+    }
+
+    private boolean guidReceived(int slot, String guid, boolean verified) {
+        Player player = playersBySlot.get(slot);
+        if (player == null) {
+            return false;
+        }
+        if (verified && hasGuid(player) && !player.getGuid().equals(guid)) {
+            return false;
+        }
+        put(new Player(player.getSlot(), player.getAddress(), player.getPort(), player.getPing(), guid, verified,
+                player.getName(), player.isLobby()));
+        return true;
+    }
+
+    private void put(Player player) {
+        Player previous = playersBySlot.put(player.getSlot(), player);
+        if (previous != null) {
+            unindex(previous);
+        }
+        if (hasGuid(player)) {
+            playersByGuid.put(player.getGuid().toLowerCase(), player);
+        }
+        List<Player> players = new ArrayList<>(getPlayersByAddress(player.getAddress()));
+        players.add(player);
+        playersByAddress.put(player.getAddress(), Collections.unmodifiableList(players));
+    }
+
+    private Player remove(int slot) {
+        Player player = playersBySlot.remove(slot);
+        if (player != null) {
+            unindex(player);
+        }
+        return player;
+    }
+
+    private void unindex(Player player) {
+        if (hasGuid(player)) {
+            playersByGuid.remove(player.getGuid().toLowerCase(), player);
+        }
+        List<Player> players = playersByAddress.get(player.getAddress());
+        if (players != null && players.contains(player)) {
+            if (players.size() == 1) {
+                playersByAddress.remove(player.getAddress());
+            } else {
+                List<Player> remaining = new ArrayList<>(players);
+                remaining.remove(player);
+                playersByAddress.put(player.getAddress(), Collections.unmodifiableList(remaining));
+            }
+        }
+    }
+
+    private static boolean hasGuid(Player player) {
+        // the player list shows '-' until the GUID is known
+        return player.getGuid() != null && !player.getGuid().isEmpty() && !player.getGuid().equals("-");
+    }
+
+    private void clear() {
+        playersBySlot.clear();
+        playersByGuid.clear();
+        playersByAddress.clear();
+    }
+}
@@ -0,0 +1,86 @@
+package arma.ber4j;
+
+import arma.ber4j.sim.CommandHandler;
+import arma.ber4j.sim.ServerSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BattlEyeFleetTest {
+    private ServerSimulator server1;
+    private ServerSimulator server2;
+    private BattlEyeFleet fleet;
+
+    @Before
+    public void setUp() throws Exception {
+        server1 = start();
+        server2 = start();
+        fleet = new BattlEyeFleet();
+        fleet.add("server1", connect(server1));
+        fleet.add("server2", connect(server2));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (BattlEyeClient client : fleet.getClients().values()) {
+            client.disconnect();
+        }
+        server1.close();
+        server2.close();
+    }
+
+    @Test
+    public void sendsCommandToAllServers() throws Exception {
+        FleetResult result = fleet.execute(BattlEyeCommand.Say, "-1", "restart in 5 minutes").get(5, TimeUnit.SECONDS);
+        assertTrue(result.isSuccess());
+        assertEquals("echo say -1 restart in 5 minutes", result.getResponses().get("server1"));
+        assertEquals("echo say -1 restart in 5 minutes", result.getResponses().get("server2"));
+    }
+
+    @Test
+    public void reportsServersWithoutResponseAtTheDeadline() throws Exception {
+        server2.setPacketLoss(1);
+        FleetResult result = fleet.execute("players", 300).get(5, TimeUnit.SECONDS);
+        assertFalse(result.isSuccess());
+        assertEquals("echo players", result.getResponses().get("server1"));
+        assertTrue(result.getFailures().get("server2") instanceof TimeoutException);
+    }
+
+    private static ServerSimulator start() throws Exception {
+        ServerSimulator simulator = new ServerSimulator("password");
+        simulator.setCommandHandler(new CommandHandler() {
+            @Override
+            public String execute(String command) {
+                return command.isEmpty() ? "" : "echo " + command;
+            }
+        });
+        simulator.start();
+        return simulator;
+    }
+
+    private static BattlEyeClient connect(ServerSimulator simulator) throws Exception {
+        BattlEyeClient client = new BattlEyeClient(simulator.getAddress());
+        final CountDownLatch connected = new CountDownLatch(1);
+        client.addConnectionHandler(new ConnectionHandler() {
+            @Override
+            public void onConnected() {
+                connected.countDown();
+            }
+
+            @Override
+            public void onDisconnected(DisconnectType disconnectType) {
+            }
+        });
+        client.connect("password");
+        assertTrue("not connected", connected.await(5, TimeUnit.SECONDS));
+        return client;
+    }
+}
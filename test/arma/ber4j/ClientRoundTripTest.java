@@ -0,0 +1,146 @@
+package arma.ber4j;
+
+import arma.ber4j.sim.CommandHandler;
+import arma.ber4j.sim.ServerSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClientRoundTripTest {
+    private ServerSimulator simulator;
+    private BattlEyeClient client;
+    private Map<String, Integer> messages;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new ServerSimulator("password");
+        simulator.setCommandHandler(new CommandHandler() {
+            @Override
+            public String execute(String command) {
+                return command.isEmpty() ? "" : "echo " + command;
+            }
+        });
+        simulator.start();
+        client = new BattlEyeClient(simulator.getAddress());
+        client.setMaxCommandsInFlight(8);
+        messages = new ConcurrentHashMap<>();
+        client.addMessageHandler(new MessageHandler() {
+            @Override
+            public void onMessageReceived(String message) {
+                messages.merge(message, 1, Integer::sum);
+            }
+        });
+        final CountDownLatch connected = new CountDownLatch(1);
+        client.addConnectionHandler(new ConnectionHandler() {
+            @Override
+            public void onConnected() {
+                connected.countDown();
+            }
+
+            @Override
+            public void onDisconnected(DisconnectType disconnectType) {
+            }
+        });
+        client.connect("password");
+        assertTrue("not connected", connected.await(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.disconnect();
+        simulator.close();
+    }
+
+    @Test
+    public void survivesLossDuplicationAndReordering() throws Exception {
+        simulator.setPacketLoss(0.1);
+        simulator.setDuplication(0.1);
+        simulator.setReordering(0.1);
+        simulator.setLatency(5);
+
+        List<CompletableFuture<String>> responses = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            responses.add(client.execute("command " + i));
+            simulator.broadcast("message " + i);
+            Thread.sleep(5); // less than 256 unacknowledged messages
+        }
+        for (int i = 0; i < responses.size(); i++) {
+            assertEquals("echo command " + i, responses.get(i).get(20, TimeUnit.SECONDS));
+        }
+        long deadline = System.currentTimeMillis() + 20000;
+        while (messages.size() < 50 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        for (int i = 0; i < 50; i++) {
+            assertEquals("message " + i, Integer.valueOf(1), messages.get("message " + i));
+        }
+        assertEquals(50, messages.size());
+        assertTrue(client.isConnected());
+    }
+
+    @Test
+    public void dropsPacketsWithInvalidChecksum() throws Exception {
+        final AtomicInteger received = new AtomicInteger();
+        client.addMessageHandler(new MessageHandler() {
+            @Override
+            public void onMessageReceived(String message) {
+                received.incrementAndGet();
+            }
+        });
+        ByteBuffer packet = ByteBuffer.allocate(BattlEyeCodec.MAX_PACKET_SIZE);
+        BattlEyeCodec.writeHeader(packet, BattlEyePacketType.Acknowledge, 200);
+        packet.put("corrupted".getBytes("US-ASCII"));
+        BattlEyeCodec.writeChecksum(packet, new CRC32());
+        packet.put(BattlEyeCodec.HEADER_SIZE + 1, (byte) 'C'); // payload changed after the checksum was computed
+
+        assertFalse(client.processDatagram(packet));
+        assertEquals(1, client.getInvalidPackets());
+        assertEquals(0, received.get());
+    }
+
+    @Test
+    public void failsCommandsOutsideTheCommandLock() throws Exception {
+        simulator.setPacketLoss(1); // the command stays in flight
+        final AtomicBoolean lockFree = new AtomicBoolean();
+        CompletableFuture<String> future = client.execute("players");
+        future.whenComplete(new BiConsumer<String, Throwable>() {
+            @Override
+            public void accept(String response, Throwable throwable) {
+                // another thread needs the client's lock while the callback runs, like a registry which resyncs
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        client.getCommandRateLimit();
+                    }
+                });
+                thread.start();
+                try {
+                    thread.join(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                lockFree.set(!thread.isAlive());
+            }
+        });
+        client.disconnect();
+        assertTrue(future.isCompletedExceptionally());
+        assertTrue("callback called while holding the command lock", lockFree.get());
+    }
+}
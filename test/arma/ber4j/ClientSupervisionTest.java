@@ -0,0 +1,130 @@
+package arma.ber4j;
+
+import arma.ber4j.sim.ServerSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import static org.junit.Assert.assertTrue;
+
+public class ClientSupervisionTest {
+    private static final long KEEP_ALIVE_DELAY = 100;
+
+    private ServerSimulator slowServer;
+    private ServerSimulator server;
+    private BattlEyeClient slowClient;
+    private BattlEyeClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        slowServer = new ServerSimulator("password");
+        slowServer.start();
+        server = new ServerSimulator("password");
+        server.start();
+        slowClient = connect(slowServer, 30000);
+        client = connect(server, KEEP_ALIVE_DELAY);
+        // the first keep alive follows the check of the login timeout
+        long deadline = System.currentTimeMillis() + 10000;
+        while (server.getReceivedPackets() < 3) {
+            assertTrue("no keep alives", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        slowClient.disconnect();
+        client.disconnect();
+        slowServer.close();
+        server.close();
+    }
+
+    @Test
+    public void slowCallbackDoesNotDelayKeepAlivesOfOtherClients() throws Exception {
+        // the second command expires in the queue, its future is completed by the supervision of the slow client
+        slowClient.setCommandRateLimit(1, 1);
+        slowClient.setQueuedCommandTimeout(50);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        slowClient.execute("players");
+        CompletableFuture<String> expiring = slowClient.execute("players");
+        expiring.whenComplete(new BiConsumer<String, Throwable>() {
+            @Override
+            public void accept(String response, Throwable e) {
+                blocked.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue("command didn't expire", blocked.await(2, TimeUnit.SECONDS));
+        try {
+            long packets = server.getReceivedPackets();
+            Thread.sleep(20 * KEEP_ALIVE_DELAY);
+            long keepAlives = server.getReceivedPackets() - packets;
+            assertTrue("only " + keepAlives + " keep alives while the other client blocked", keepAlives >= 10);
+            assertTrue(client.isConnected());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void runsSupervisionOnThreadsOfTheFactory() throws Exception {
+        final AtomicInteger threads = new AtomicInteger();
+        BattlEyeClient factoryClient = connect(server, KEEP_ALIVE_DELAY, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                threads.incrementAndGet();
+                Thread thread = new Thread(task, "factory client");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            // the receive thread and the supervision which follows the check of the login timeout
+            long deadline = System.currentTimeMillis() + 10000;
+            while (threads.get() < 2) {
+                assertTrue("supervision doesn't use the thread factory", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+            assertTrue(factoryClient.isConnected());
+        } finally {
+            factoryClient.disconnect();
+        }
+    }
+
+    private static BattlEyeClient connect(ServerSimulator simulator, long keepAliveDelay) throws Exception {
+        return connect(simulator, keepAliveDelay, null);
+    }
+
+    private static BattlEyeClient connect(ServerSimulator simulator, long keepAliveDelay, ThreadFactory threadFactory)
+            throws Exception {
+        BattlEyeClient client = new BattlEyeClient(simulator.getAddress());
+        client.maxKeepAliveDelay = keepAliveDelay;
+        client.setThreadFactory(threadFactory);
+        CountDownLatch connected = new CountDownLatch(1);
+        client.addConnectionHandler(new ConnectionHandler() {
+            @Override
+            public void onConnected() {
+                connected.countDown();
+            }
+
+            @Override
+            public void onDisconnected(DisconnectType disconnectType) {
+            }
+        });
+        client.connect("password");
+        assertTrue("not connected", connected.await(5, TimeUnit.SECONDS));
+        return client;
+    }
+}
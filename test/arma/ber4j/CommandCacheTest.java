@@ -0,0 +1,112 @@
+package arma.ber4j;
+
+import arma.ber4j.sim.CommandHandler;
+import arma.ber4j.sim.ServerSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CommandCacheTest {
+    private static final long LATENCY = 100;
+
+    private ServerSimulator simulator;
+    private AtomicInteger players;
+    private BattlEyeClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new ServerSimulator("password");
+        players = new AtomicInteger();
+        // answers players with the number of players commands received so far
+        simulator.setCommandHandler(new CommandHandler() {
+            @Override
+            public String execute(String command) {
+                return command.equals("players") ? "players " + players.incrementAndGet() : "";
+            }
+        });
+        simulator.start();
+        client = new BattlEyeClient(simulator.getAddress());
+        final CountDownLatch connected = new CountDownLatch(1);
+        client.addConnectionHandler(new ConnectionHandler() {
+            @Override
+            public void onConnected() {
+                connected.countDown();
+            }
+
+            @Override
+            public void onDisconnected(DisconnectType disconnectType) {
+            }
+        });
+        client.connect("password");
+        assertTrue("not connected", connected.await(5, TimeUnit.SECONDS));
+        client.setMaxCommandsInFlight(8);
+        simulator.setLatency(LATENCY);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.disconnect();
+        simulator.close();
+    }
+
+    @Test
+    public void coalescesIdenticalCommands() throws Exception {
+        CommandCache cache = new CommandCache(0, 64);
+        client.setCommandCache(cache);
+
+        CompletableFuture<String> first = client.execute("players");
+        CompletableFuture<String> second = client.execute("players");
+        CompletableFuture<String> third = client.execute(" PLAYERS ");
+        assertEquals("players 1", first.get(5, TimeUnit.SECONDS));
+        assertEquals("players 1", second.get(5, TimeUnit.SECONDS));
+        assertEquals("players 1", third.get(5, TimeUnit.SECONDS));
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getCoalesced());
+
+        // not cached without a time to live
+        assertEquals("players 2", client.execute("players").get(5, TimeUnit.SECONDS));
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void cachesResponsesForTheTimeToLive() throws Exception {
+        CommandCache cache = new CommandCache(500, 64);
+        client.setCommandCache(cache);
+
+        assertEquals("players 1", client.execute("players").get(5, TimeUnit.SECONDS));
+        assertEquals("players 1", client.execute("players").get(5, TimeUnit.SECONDS));
+        assertEquals(1, cache.getHits());
+        Thread.sleep(600);
+        assertEquals("players 2", client.execute("players").get(5, TimeUnit.SECONDS));
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, players.get());
+    }
+
+    @Test
+    public void doesNotCacheResponsesInvalidatedInFlight() throws Exception {
+        CommandCache cache = new CommandCache(60000, 64);
+        client.setCommandCache(cache);
+
+        CompletableFuture<String> stale = client.execute("players");
+        client.execute("kick 0"); // sent before the response of players arrives
+        assertEquals(1, cache.getInvalidations());
+        // doesn't share the response requested before the state changed
+        CompletableFuture<String> fresh = client.execute("players");
+        assertEquals("players 1", stale.get(5, TimeUnit.SECONDS));
+        assertEquals("players 2", fresh.get(5, TimeUnit.SECONDS));
+
+        // the response requested after the state changed is cached
+        assertEquals("players 2", client.execute("players").get(5, TimeUnit.SECONDS));
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, players.get());
+    }
+}
@@ -0,0 +1,150 @@
+package arma.ber4j;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CommandQueueTest {
+    private BattlEyeServer<ServerSession> server;
+    private List<String> commands;
+    private Set<Integer> keepAlives;
+    private BattlEyeClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        commands = new CopyOnWriteArrayList<>();
+        keepAlives = new HashSet<>();
+        // answers commands and records their order, keep alive packets are recorded by sequence number and ignored
+        server = new BattlEyeServer<ServerSession>("test", new InetSocketAddress("127.0.0.1", 0), "password", 100,
+                Integer.MAX_VALUE) {
+            @Override
+            protected ServerSession newSession(SocketAddress address) {
+                return new ServerSession(address);
+            }
+
+            @Override
+            protected void commandReceived(ServerSession session, int sequenceNumber, String command)
+                    throws IOException {
+                if (command.isEmpty()) {
+                    synchronized (keepAlives) {
+                        keepAlives.add(sequenceNumber);
+                    }
+                    return;
+                }
+                commands.add(command);
+                send(session.getAddress(), encodeResponse(sequenceNumber, command.getBytes(StandardCharsets.UTF_8)));
+            }
+        };
+        server.start();
+        client = new BattlEyeClient(server.getAddress());
+        final CountDownLatch connected = new CountDownLatch(1);
+        client.addConnectionHandler(new ConnectionHandler() {
+            @Override
+            public void onConnected() {
+                connected.countDown();
+            }
+
+            @Override
+            public void onDisconnected(DisconnectType disconnectType) {
+            }
+        });
+        client.connect("password");
+        assertTrue("not connected", connected.await(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.disconnect();
+        server.close();
+    }
+
+    @Test
+    public void sendsQueuedCommandsByPriority() throws Exception {
+        client.setCommandRateLimit(20, 1);
+        List<CompletableFuture<String>> responses = new ArrayList<>();
+        for (String command : Arrays.asList("version", "say -1 hello", "players", "kick 1", "#lock")) {
+            responses.add(client.execute(command));
+        }
+        for (CompletableFuture<String> response : responses) {
+            response.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(Arrays.asList("version", "kick 1", "#lock", "players", "say -1 hello"), commands);
+    }
+
+    @Test
+    public void rejectsCommandsWhileTheQueueIsFull() throws Exception {
+        client.setCommandRateLimit(1, 1);
+        client.setMaxQueuedCommands(2);
+        client.execute("version"); // takes the token
+        assertTrue(client.sendCommand("players") >= 0);
+        assertTrue(client.sendCommand("players") >= 0);
+        assertEquals(-2, client.sendCommand("players"));
+        try {
+            client.execute("missions").get(5, TimeUnit.SECONDS);
+            fail("command accepted by a full queue");
+        } catch (ExecutionException e) {
+            assertEquals("command queue is full", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void expiresQueuedCommands() throws Exception {
+        client.setCommandRateLimit(0.5, 1);
+        client.setQueuedCommandTimeout(100);
+        client.execute("version"); // takes the token
+        CompletableFuture<String> expiring = client.execute("players");
+        try {
+            expiring.get(5, TimeUnit.SECONDS);
+            fail("queued command didn't expire");
+        } catch (ExecutionException e) {
+            assertEquals("command expired in the queue", e.getCause().getMessage());
+        }
+        assertEquals(1, client.getExpiredCommands());
+        assertEquals(Arrays.asList("version"), commands);
+    }
+
+    @Test
+    public void sendsOneKeepAliveDespiteRateLimitAndExpiry() throws Exception {
+        client.maxKeepAliveDelay = 100;
+        client.setMaxCommandsInFlight(8); // doesn't hold further keep alive packets
+        client.setCommandRateLimit(0.2, 1);
+        client.setQueuedCommandTimeout(50);
+        client.execute("version").get(5, TimeUnit.SECONDS); // takes the token for 5 s
+
+        // the first supervision follows the check of the login timeout
+        long deadline = System.currentTimeMillis() + 4500;
+        while (keepAliveCount() == 0) {
+            assertTrue("keep alive held by the rate limit", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        Thread.sleep(500); // unanswered, the supervision runs every keep alive delay
+        assertEquals("keep alive packets with different sequence numbers", 1, keepAliveCount());
+        assertEquals(0, client.getExpiredCommands());
+        assertTrue(client.isConnected());
+    }
+
+    private int keepAliveCount() {
+        synchronized (keepAlives) {
+            return keepAlives.size();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package arma.ber4j;
+
+import arma.ber4j.sim.ServerSimulator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DatagramReplayerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysRecordedSession() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("session.berc");
+        ServerSimulator simulator = new ServerSimulator("password");
+        simulator.start();
+        BattlEyeClient client = new BattlEyeClient(simulator.getAddress());
+        DatagramRecorder recorder = new DatagramRecorder(file);
+        try {
+            recorder.attach(client);
+            final CountDownLatch received = new CountDownLatch(100);
+            client.addMessageHandler(new MessageHandler() {
+                @Override
+                public void onMessageReceived(String message) {
+                    received.countDown();
+                }
+            });
+            final CountDownLatch connected = new CountDownLatch(1);
+            client.addConnectionHandler(new ConnectionHandler() {
+                @Override
+                public void onConnected() {
+                    connected.countDown();
+                }
+
+                @Override
+                public void onDisconnected(DisconnectType disconnectType) {
+                }
+            });
+            client.connect("password");
+            assertTrue("not connected", connected.await(5, TimeUnit.SECONDS));
+            client.execute("players").get(5, TimeUnit.SECONDS); // the response is dropped by the replay
+            for (int i = 0; i < 100; i++) {
+                simulator.broadcast("message " + i);
+            }
+            assertTrue("messages not received", received.await(5, TimeUnit.SECONDS));
+        } finally {
+            client.disconnect();
+            recorder.close();
+            simulator.close();
+        }
+
+        List<String> messages = replay(file);
+        assertEquals(100, messages.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("message " + i, messages.get(i));
+        }
+    }
+
+    @Test
+    public void stopsAtTruncatedFinalRecord() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("truncated.berc");
+        try (DatagramRecorder recorder = new DatagramRecorder(file)) {
+            record(recorder, BattlEyePacketType.Login, -1, "\u0001");
+            for (int i = 0; i < 3; i++) {
+                record(recorder, BattlEyePacketType.Acknowledge, i, "message " + i);
+            }
+        }
+        List<String> messages = replay(file);
+        assertEquals(3, messages.size());
+
+        // a crash while the recorder wrote the last record
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+        messages = replay(file);
+        assertEquals(2, messages.size());
+        assertEquals("message 1", messages.get(1));
+
+        // only a part of the header of the last record is left
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - ("message 2".length() + 8));
+        }
+        assertEquals(2, replay(file).size());
+    }
+
+    private static void record(DatagramRecorder recorder, BattlEyePacketType type, int sequenceNumber,
+                               String payload) {
+        ByteBuffer packet = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        BattlEyeCodec.encode(packet, type, sequenceNumber, payload, StandardCharsets.ISO_8859_1.newEncoder(),
+                new CRC32());
+        recorder.received(packet, packet.limit());
+    }
+
+    private static List<String> replay(Path file) throws IOException {
+        try (DatagramReplayer replayer = new DatagramReplayer(file)) {
+            BattlEyeClient client = replayer.createClient();
+            final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+            client.addMessageHandler(new MessageHandler() {
+                @Override
+                public void onMessageReceived(String message) {
+                    messages.add(message);
+                }
+            });
+            try {
+                replayer.replay(client, false);
+            } finally {
+                client.disconnect();
+            }
+            return messages;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package arma.ber4j;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventDispatcherTest {
+    private BattlEyeClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        client = new BattlEyeClient(new InetSocketAddress("127.0.0.1", 2302));
+    }
+
+    @Test
+    public void interruptReleasesBlockedMessage() throws Exception {
+        final EventDispatcher dispatcher = new EventDispatcher(new StalledExecutor(), 1, OverflowPolicy.Block);
+        dispatcher.message(client, "buffered");
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread thread = publishBlocked(dispatcher, new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.message(client, "blocked");
+            }
+        }, interrupted);
+        thread.interrupt();
+        thread.join(1000);
+        assertFalse("receiving thread still blocked after interrupt", thread.isAlive());
+        assertTrue("interrupt not restored", interrupted.get());
+        assertEquals(1, dispatcher.getDroppedNewestCount());
+        assertEquals(1, dispatcher.getSize());
+    }
+
+    @Test
+    public void interruptReleasesBlockedConnectionEvent() throws Exception {
+        final EventDispatcher dispatcher = new EventDispatcher(new StalledExecutor(), 1, OverflowPolicy.DropNewest);
+        dispatcher.message(client, "buffered");
+        for (int i = 0; i < EventDispatcher.CONNECTION_EVENT_RESERVE; i++) {
+            dispatcher.connected(client);
+        }
+        Thread thread = publishBlocked(dispatcher, new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.disconnected(client, DisconnectType.ConnectionLost);
+            }
+        }, new AtomicBoolean());
+        thread.interrupt();
+        thread.join(1000);
+        assertFalse("receiving thread still blocked after interrupt", thread.isAlive());
+        assertEquals(1 + EventDispatcher.CONNECTION_EVENT_RESERVE, dispatcher.getSize());
+    }
+
+    private static Thread publishBlocked(EventDispatcher dispatcher, final Runnable publish,
+                                         final AtomicBoolean interrupted) throws InterruptedException {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                publish.run();
+                interrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        thread.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.getBlockedCount() == 0) {
+            assertTrue("receiving thread didn't block", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        return thread;
+    }
+
+    // accepts the drain tasks but never runs them, like an executor whose threads are all busy
+    private static final class StalledExecutor implements Executor {
+        @Override
+        public void execute(Runnable task) {
+        }
+    }
+}
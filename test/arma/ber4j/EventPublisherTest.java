@@ -0,0 +1,77 @@
+package arma.ber4j;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventPublisherTest {
+    private EventPublisher<String> publisher;
+
+    @Before
+    public void setUp() throws Exception {
+        BattlEyeClient client = new BattlEyeClient(new InetSocketAddress("127.0.0.1", 2302));
+        publisher = client.messagePublisher(1, OverflowPolicy.Block);
+        publisher.subscribe(new Flow.Subscriber<String>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                // never requests
+            }
+
+            @Override
+            public void onNext(String item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        publisher.publish("buffered");
+    }
+
+    @Test
+    public void closeReleasesBlockedPublisher() throws Exception {
+        Thread thread = publishBlocked(new AtomicBoolean());
+        publisher.close();
+        thread.join(1000);
+        assertFalse("publisher still blocked after close", thread.isAlive());
+    }
+
+    @Test
+    public void interruptReleasesBlockedPublisher() throws Exception {
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread thread = publishBlocked(interrupted);
+        thread.interrupt();
+        thread.join(1000);
+        assertFalse("publisher still blocked after interrupt", thread.isAlive());
+        assertTrue("interrupt not restored", interrupted.get());
+        assertEquals(1, publisher.getDroppedCount());
+    }
+
+    private Thread publishBlocked(final AtomicBoolean interrupted) throws InterruptedException {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                publisher.publish("blocked");
+                interrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        thread.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (publisher.getBlockedCount() == 0) {
+            assertTrue("publisher didn't block", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        return thread;
+    }
+}
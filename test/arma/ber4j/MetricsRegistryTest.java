@@ -0,0 +1,63 @@
+package arma.ber4j;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MetricsRegistryTest {
+    private MBeanServer server;
+    private MetricsRegistry registry;
+    private BattlEyeClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = MBeanServerFactory.newMBeanServer();
+        registry = new MetricsRegistry(server, "test");
+        client = new BattlEyeClient(new InetSocketAddress("127.0.0.1", 2302));
+    }
+
+    @Test
+    public void registersClientAndAggregate() throws Exception {
+        registry.register("server1", client);
+        assertTrue(client.isMetricsEnabled());
+        assertTrue(server.isRegistered(new ObjectName("test:type=Client,name=\"server1\"")));
+        assertEquals(1, server.getAttribute(new ObjectName("test:type=Clients"), "Clients"));
+
+        registry.close();
+        assertFalse(client.isMetricsEnabled());
+        assertEquals(0, server.queryNames(new ObjectName("test:*"), null).size());
+    }
+
+    @Test
+    public void failedRegistrationLeavesNoMBean() throws Exception {
+        ObjectName aggregate = new ObjectName("test:type=Clients");
+        server.registerMBean(new Blocker(), aggregate);
+        try {
+            registry.register("server1", client);
+            fail("registered although the aggregate name is taken");
+        } catch (IllegalArgumentException expected) {
+            // the name of the aggregate is taken
+        }
+        assertFalse(client.isMetricsEnabled());
+        assertEquals(1, server.queryNames(new ObjectName("test:*"), null).size());
+
+        server.unregisterMBean(aggregate);
+        registry.register("server1", client);
+        assertTrue(server.isRegistered(new ObjectName("test:type=Client,name=\"server1\"")));
+    }
+
+    public interface BlockerMBean {
+    }
+
+    public static class Blocker implements BlockerMBean {
+    }
+}
@@ -0,0 +1,96 @@
+package arma.ber4j;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReconnectTest {
+    private volatile boolean serverDown;
+    private BattlEyeServer<ServerSession> server;
+    private BattlEyeClient client;
+    private CountDownLatch connectionLost;
+
+    @Before
+    public void setUp() throws Exception {
+        // neither answers commands nor logins while it is down
+        server = new BattlEyeServer<ServerSession>("test", new InetSocketAddress("127.0.0.1", 0), "password", 100,
+                Integer.MAX_VALUE) {
+            @Override
+            protected ServerSession newSession(SocketAddress address) {
+                return new ServerSession(address);
+            }
+
+            @Override
+            protected boolean acceptLogin(SocketAddress address) {
+                return !serverDown;
+            }
+
+            @Override
+            protected void commandReceived(ServerSession session, int sequenceNumber, String command)
+                    throws IOException {
+                if (!serverDown) {
+                    byte[] response = command.getBytes(StandardCharsets.UTF_8);
+                    send(session.getAddress(), encodeResponse(sequenceNumber, response));
+                }
+            }
+        };
+        server.start();
+        client = new BattlEyeClient(server.getAddress());
+        client.setReconnectPolicy(new ReconnectPolicy(10, 10));
+        final CountDownLatch connected = new CountDownLatch(1);
+        connectionLost = new CountDownLatch(1);
+        client.addConnectionHandler(new ConnectionHandler() {
+            @Override
+            public void onConnected() {
+                connected.countDown();
+            }
+
+            @Override
+            public void onDisconnected(DisconnectType disconnectType) {
+                if (disconnectType == DisconnectType.ConnectionLost) {
+                    connectionLost.countDown();
+                }
+            }
+        });
+        client.connect("password");
+        assertTrue("not connected", connected.await(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.disconnect();
+        server.close();
+    }
+
+    @Test
+    public void disconnectAbortsPendingReconnect() throws Exception {
+        serverDown = true;
+        client.execute("unanswered");
+        assertTrue("connection not lost", connectionLost.await(20, TimeUnit.SECONDS));
+        // the permit is taken before the reconnect runs on the client thread
+        long deadline = System.currentTimeMillis() + 5000;
+        while (client.getReconnectAttempts() == 0) {
+            assertTrue("no reconnect handshake", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertEquals(1, ReconnectPolicy.getActiveHandshakes());
+
+        client.disconnect();
+        assertEquals("handshake permit still held", 0, ReconnectPolicy.getActiveHandshakes());
+        serverDown = false;
+        Thread.sleep(500);
+        assertFalse("connected after disconnect", client.isConnected());
+        assertEquals("reconnected after disconnect", 1, client.getReconnectAttempts());
+    }
+}
@@ -0,0 +1,105 @@
+package arma.ber4j;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RetransmissionTest {
+    private BattlEyeServer<ServerSession> server;
+    private Map<String, Integer> transmissions;
+    private BattlEyeClient client;
+    private AtomicInteger responses;
+
+    @Before
+    public void setUp() throws Exception {
+        transmissions = new ConcurrentHashMap<>();
+        // ignores the first transmission of commands starting with "lost", the second is answered twice, like a
+        // server whose answer to the first transmission was delayed
+        server = new BattlEyeServer<ServerSession>("test", new InetSocketAddress("127.0.0.1", 0), "password", 100,
+                Integer.MAX_VALUE) {
+            @Override
+            protected ServerSession newSession(SocketAddress address) {
+                return new ServerSession(address);
+            }
+
+            @Override
+            protected void commandReceived(ServerSession session, int sequenceNumber, String command)
+                    throws IOException {
+                int count = transmissions.merge(command, 1, Integer::sum);
+                byte[] response = (command.isEmpty() ? "" : "echo " + command).getBytes(StandardCharsets.UTF_8);
+                if (command.startsWith("lost")) {
+                    if (count == 1) {
+                        return;
+                    }
+                    send(session.getAddress(), encodeResponse(sequenceNumber, response));
+                }
+                send(session.getAddress(), encodeResponse(sequenceNumber, response));
+            }
+        };
+        server.start();
+        client = new BattlEyeClient(server.getAddress());
+        responses = new AtomicInteger();
+        client.addCommandResponseHandler(new CommandResponseHandler() {
+            @Override
+            public void onCommandResponseReceived(String commandResponse, int id) {
+                responses.incrementAndGet();
+            }
+        });
+        final CountDownLatch connected = new CountDownLatch(1);
+        client.addConnectionHandler(new ConnectionHandler() {
+            @Override
+            public void onConnected() {
+                connected.countDown();
+            }
+
+            @Override
+            public void onDisconnected(DisconnectType disconnectType) {
+            }
+        });
+        client.connect("password");
+        assertTrue("not connected", connected.await(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.disconnect();
+        server.close();
+    }
+
+    @Test
+    public void retransmitsLostCommand() throws Exception {
+        assertEquals("echo lost", client.execute("lost").get(5, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(2), transmissions.get("lost"));
+    }
+
+    @Test
+    public void doesNotSampleRetransmittedCommands() throws Exception {
+        client.execute("lost").get(5, TimeUnit.SECONDS);
+        assertEquals("no sample from a retransmitted command (Karn)", -1, client.getRoundTripTime());
+        assertEquals(RttEstimator.INITIAL_RTO, client.getRetransmissionTimeout());
+
+        client.execute("answered").get(5, TimeUnit.SECONDS);
+        assertTrue(client.getRoundTripTime() >= 0);
+        assertTrue(client.getRetransmissionTimeout() >= RttEstimator.MIN_RTO);
+    }
+
+    @Test
+    public void passesDuplicateResponsesOnlyOnce() throws Exception {
+        client.execute("lost").get(5, TimeUnit.SECONDS);
+        client.execute("answered").get(5, TimeUnit.SECONDS); // after the duplicate
+        assertEquals(2, responses.get());
+    }
+}
@@ -0,0 +1,57 @@
+package arma.ber4j;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RttEstimatorTest {
+
+    @Test
+    public void startsWithInitialTimeout() {
+        RttEstimator estimator = new RttEstimator();
+        assertEquals(-1, estimator.getSmoothedRtt());
+        assertEquals(RttEstimator.INITIAL_RTO, estimator.getRto());
+    }
+
+    @Test
+    public void followsSamples() {
+        RttEstimator estimator = new RttEstimator();
+        estimator.sample(200);
+        assertEquals(200, estimator.getSmoothedRtt());
+        assertEquals(100, estimator.getRttVariation());
+        assertEquals(200 + 4 * 100, estimator.getRto());
+
+        estimator.sample(120);
+        assertEquals((7 * 200 + 120) / 8, estimator.getSmoothedRtt());
+        assertEquals((3 * 100 + 80) / 4, estimator.getRttVariation());
+    }
+
+    @Test
+    public void boundsTimeout() {
+        RttEstimator estimator = new RttEstimator();
+        estimator.sample(1);
+        assertEquals(RttEstimator.MIN_RTO, estimator.getRto());
+        for (int i = 0; i < 20; i++) {
+            estimator.sample(20000);
+        }
+        assertEquals(RttEstimator.MAX_RTO, estimator.getRto());
+    }
+
+    @Test
+    public void doublesTimeoutPerRetransmission() {
+        RttEstimator estimator = new RttEstimator();
+        estimator.sample(200); // rto 600
+        assertEquals(600, estimator.getRto(1));
+        assertEquals(1200, estimator.getRto(2));
+        assertEquals(2400, estimator.getRto(3));
+        assertEquals(4800, estimator.getRto(4));
+        assertEquals(RttEstimator.MAX_RTO, estimator.getRto(5));
+    }
+
+    @Test
+    public void ignoresNegativeSamples() {
+        RttEstimator estimator = new RttEstimator();
+        estimator.sample(-5);
+        assertEquals(-1, estimator.getSmoothedRtt());
+    }
+}
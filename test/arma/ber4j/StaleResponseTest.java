@@ -0,0 +1,91 @@
+package arma.ber4j;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StaleResponseTest {
+    private BattlEyeServer<ServerSession> server;
+    private BattlEyeClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        // answers the command "stale" on every sequence number, like late answers to earlier commands
+        server = new BattlEyeServer<ServerSession>("test", new InetSocketAddress("127.0.0.1", 0), "password", 100,
+                Integer.MAX_VALUE) {
+            @Override
+            protected ServerSession newSession(SocketAddress address) {
+                return new ServerSession(address);
+            }
+
+            @Override
+            protected void commandReceived(final ServerSession session, int sequenceNumber, String command)
+                    throws IOException {
+                if (command.equals("stale")) {
+                    schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                for (int id = 0; id < 256; id++) {
+                                    send(session.getAddress(),
+                                            encodeResponse(id, "stale".getBytes(StandardCharsets.UTF_8)));
+                                }
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                    }, 200); // after the client queued the next command
+                    return;
+                }
+                byte[] response = (command.isEmpty() ? "" : "echo " + command).getBytes(StandardCharsets.UTF_8);
+                send(session.getAddress(), encodeResponse(sequenceNumber, response));
+            }
+        };
+        server.start();
+        client = new BattlEyeClient(server.getAddress());
+        final CountDownLatch connected = new CountDownLatch(1);
+        client.addConnectionHandler(new ConnectionHandler() {
+            @Override
+            public void onConnected() {
+                connected.countDown();
+            }
+
+            @Override
+            public void onDisconnected(DisconnectType disconnectType) {
+            }
+        });
+        client.connect("password");
+        assertTrue("not connected", connected.await(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.disconnect();
+        server.close();
+    }
+
+    @Test
+    public void ignoresResponsesForQueuedCommands() throws Exception {
+        client.setCommandRateLimit(1, 1); // the second command waits in the queue for a second
+        CompletableFuture<String> sent = client.execute("stale");
+        CompletableFuture<String> queued = client.execute("queued");
+
+        assertEquals("stale", sent.get(5, TimeUnit.SECONDS));
+        Thread.sleep(100); // the stale responses to the other ids
+        assertFalse("queued command completed by a stale response", queued.isDone());
+        assertEquals("echo queued", queued.get(5, TimeUnit.SECONDS));
+    }
+}
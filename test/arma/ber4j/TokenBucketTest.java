@@ -0,0 +1,42 @@
+package arma.ber4j;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    @Test
+    public void allowsBurstThenRate() {
+        TokenBucket bucket = new TokenBucket(10, 3, 1000);
+        assertTrue(bucket.tryAcquire(1000));
+        assertTrue(bucket.tryAcquire(1000));
+        assertTrue(bucket.tryAcquire(1000));
+        assertFalse(bucket.tryAcquire(1000));
+        assertEquals(1100, bucket.nextTokenTime(1000));
+        assertFalse(bucket.tryAcquire(1099));
+        assertTrue(bucket.tryAcquire(1100));
+        assertFalse(bucket.tryAcquire(1100));
+    }
+
+    @Test
+    public void refillsUpToBurst() {
+        TokenBucket bucket = new TokenBucket(10, 2, 1000);
+        assertTrue(bucket.tryAcquire(1000));
+        assertTrue(bucket.tryAcquire(1000));
+        // a quiet period only refills the burst
+        assertEquals(11000, bucket.nextTokenTime(11000));
+        assertTrue(bucket.tryAcquire(11000));
+        assertTrue(bucket.tryAcquire(11000));
+        assertFalse(bucket.tryAcquire(11000));
+    }
+
+    @Test
+    public void ignoresTimeGoingBackwards() {
+        TokenBucket bucket = new TokenBucket(10, 1, 1000);
+        assertTrue(bucket.tryAcquire(1000));
+        assertFalse(bucket.tryAcquire(500));
+    }
+}
@@ -0,0 +1,123 @@
+package arma.ber4j.gateway;
+
+import arma.ber4j.BattlEyeClient;
+import arma.ber4j.ConnectionHandler;
+import arma.ber4j.DisconnectType;
+import arma.ber4j.MessageHandler;
+import arma.ber4j.sim.CommandHandler;
+import arma.ber4j.sim.ServerSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BattlEyeGatewayTest {
+    private ServerSimulator simulator;
+    private BattlEyeClient upstream;
+    private BattlEyeGateway gateway;
+    private List<BattlEyeClient> consumers;
+    private List<Map<String, Integer>> messages;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new ServerSimulator("password");
+        simulator.setCommandHandler(new CommandHandler() {
+            @Override
+            public String execute(String command) {
+                return command.isEmpty() ? "" : "echo " + command;
+            }
+        });
+        simulator.start();
+        upstream = connect(simulator.getAddress(), "password");
+        upstream.setMaxCommandsInFlight(8);
+        gateway = new BattlEyeGateway(upstream, "gateway");
+        gateway.start();
+        consumers = new ArrayList<>();
+        messages = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            BattlEyeClient consumer = connect(gateway.getAddress(), "gateway");
+            final Map<String, Integer> received = new ConcurrentHashMap<>();
+            consumer.addMessageHandler(new MessageHandler() {
+                @Override
+                public void onMessageReceived(String message) {
+                    received.merge(message, 1, Integer::sum);
+                }
+            });
+            consumers.add(consumer);
+            messages.add(received);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (BattlEyeClient consumer : consumers) {
+            consumer.disconnect();
+        }
+        gateway.close();
+        upstream.disconnect();
+        simulator.close();
+    }
+
+    @Test
+    public void forwardsCommandsAndFansOutMessages() throws Exception {
+        assertEquals(2, gateway.getSessionCount());
+
+        List<CompletableFuture<String>> responses = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            for (int c = 0; c < consumers.size(); c++) {
+                responses.add(consumers.get(c).execute("command " + c + " " + i));
+            }
+            simulator.broadcast("message " + i);
+        }
+        for (int i = 0; i < 10; i++) {
+            for (int c = 0; c < consumers.size(); c++) {
+                assertEquals("echo command " + c + " " + i,
+                        responses.get(i * consumers.size() + c).get(5, TimeUnit.SECONDS));
+            }
+        }
+        assertEquals(20, gateway.getForwardedCommands());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((messages.get(0).size() < 10 || messages.get(1).size() < 10) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        for (Map<String, Integer> received : messages) {
+            for (int i = 0; i < 10; i++) {
+                assertEquals("message " + i, Integer.valueOf(1), received.get("message " + i));
+            }
+            assertEquals(10, received.size());
+        }
+        assertEquals(10, gateway.getMessages());
+        assertTrue(consumers.get(0).isConnected());
+        assertTrue(consumers.get(1).isConnected());
+    }
+
+    private static BattlEyeClient connect(InetSocketAddress address, String password) throws Exception {
+        BattlEyeClient client = new BattlEyeClient(address);
+        final CountDownLatch connected = new CountDownLatch(1);
+        client.addConnectionHandler(new ConnectionHandler() {
+            @Override
+            public void onConnected() {
+                connected.countDown();
+            }
+
+            @Override
+            public void onDisconnected(DisconnectType disconnectType) {
+            }
+        });
+        client.connect(password);
+        assertTrue("not connected to " + address, connected.await(5, TimeUnit.SECONDS));
+        return client;
+    }
+}
@@ -0,0 +1,171 @@
+package arma.ber4j.journal;
+
+import arma.ber4j.BattlEyeClient;
+import arma.ber4j.sim.ServerSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MessageJournalTest {
+    private static final int SEGMENT_SIZE = 1 << 20;
+    private static final int BLOCK_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private MessageJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.getRoot().toPath();
+        journal = new MessageJournal(directory, SEGMENT_SIZE, BLOCK_SIZE, 100000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journal.close();
+    }
+
+    @Test
+    public void queriesTimeRangeAndServer() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            append(i % 2, 1000 + i, i & 0xFF, "message " + i);
+        }
+        awaitWritten(1000);
+
+        List<JournalEntry> entries = journal.query(1100, 1109, 1);
+        assertEquals(5, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            JournalEntry entry = entries.get(i);
+            int n = 101 + 2 * i;
+            assertEquals("message " + n, entry.getMessage(StandardCharsets.UTF_8));
+            assertEquals(1000 + n, entry.getTimestamp());
+            assertEquals(1, entry.getServerId());
+            assertEquals(n, entry.getSequence());
+            assertEquals(n & 0xFF, entry.getSequenceNumber());
+        }
+        assertEquals(10, journal.query(1100, 1109, MessageJournal.ALL_SERVERS).size());
+        assertEquals(1000, journal.query(0, Long.MAX_VALUE, MessageJournal.ALL_SERVERS).size());
+        assertEquals(0, journal.query(0, 999, MessageJournal.ALL_SERVERS).size());
+        assertEquals(0, journal.query(0, Long.MAX_VALUE, 2).size());
+    }
+
+    @Test
+    public void recoversRolledAndTruncatedSegments() throws Exception {
+        // about three segments, the first two are rolled and compressed
+        byte[] padding = new byte[1000];
+        for (int i = 0; i < 2500; i++) {
+            append(0, 1000 + i, i & 0xFF, i + " " + new String(padding, StandardCharsets.UTF_8));
+        }
+        awaitWritten(2500);
+        assertEquals(3, journal.getSegmentCount());
+        journal.close();
+
+        // the rolled segments are compressed on close, a crash while the last record was written
+        Path last;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + Segment.RAW_SUFFIX)) {
+            Iterator<Path> iterator = files.iterator();
+            last = iterator.next();
+            assertFalse(iterator.hasNext());
+        }
+        String name = last.getFileName().toString();
+        long firstSequence = Long.parseLong(name.substring(0, name.length() - Segment.RAW_SUFFIX.length()));
+        corruptRecord(last, 2499 - firstSequence);
+
+        journal = new MessageJournal(directory, SEGMENT_SIZE, BLOCK_SIZE, 100000);
+        List<JournalEntry> entries = journal.query(0, Long.MAX_VALUE, 0);
+        assertEquals(2499, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(i, entries.get(i).getSequence());
+            assertEquals(i & 0xFF, entries.get(i).getSequenceNumber());
+            assertTrue(entries.get(i).getMessage(StandardCharsets.UTF_8).startsWith(i + " "));
+        }
+        assertEquals(1, journal.query(3000, 3000, 0).size());
+
+        // new messages continue after the last valid record in a new segment
+        append(0, 5000, 7, "after recovery");
+        awaitWritten(1);
+        JournalEntry entry = journal.query(5000, 5000, 0).get(0);
+        assertEquals(2499, entry.getSequence());
+        assertEquals("after recovery", entry.getMessage(StandardCharsets.UTF_8));
+        assertEquals(4, journal.getSegmentCount());
+    }
+
+    @Test
+    public void storesSequenceNumbersOfTheServer() throws Exception {
+        ServerSimulator simulator = new ServerSimulator("password");
+        simulator.start();
+        BattlEyeClient client = new BattlEyeClient(simulator.getAddress());
+        try {
+            journal.attach(client, 3);
+            client.connect("password");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!client.isConnected()) {
+                assertTrue("not connected", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+            for (int i = 0; i < 3; i++) {
+                simulator.broadcast("message " + i);
+            }
+            awaitWritten(3);
+        } finally {
+            client.disconnect();
+            simulator.close();
+        }
+
+        List<JournalEntry> entries = journal.query(0, Long.MAX_VALUE, 3);
+        assertEquals(3, entries.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("message " + i, entries.get(i).getMessage());
+            assertEquals(i, entries.get(i).getSequenceNumber());
+        }
+    }
+
+    private void append(int serverId, long timestamp, int sequenceNumber, String message) {
+        assertTrue(journal.append(serverId, timestamp, sequenceNumber,
+                ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private void awaitWritten(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (journal.getWrittenCount() < count) {
+            assertTrue("only " + journal.getWrittenCount() + " messages written",
+                    System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Flips a byte of the message of the record with the given index in the raw segment file.
+     */
+    private static void corruptRecord(Path file, long index) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            long p = Segment.HEADER_SIZE;
+            for (long i = 0; i < index; i++) {
+                raf.seek(p);
+                p += raf.readInt();
+            }
+            raf.seek(p + Segment.RECORD_HEADER_SIZE);
+            int b = raf.read();
+            raf.seek(p + Segment.RECORD_HEADER_SIZE);
+            raf.write(b ^ 0xFF);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package arma.ber4j.response;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PlayersParserTest {
+    private static final String RESPONSE = "Players on server:\n" +
+            "[#] [IP Address]:[Port] [Ping] [GUID] [Name]\n" +
+            "--------------------------------------------------\n" +
+            "0   127.0.0.1:2304     47   0123456789abcdef0123456789abcdef(OK) Verified Name\n" +
+            "1   127.0.0.1:2306     63   fedcba9876543210fedcba9876543210(?) Waiting (Lobby)\n" +
+            "2   127.0.0.1:2308     -1   -   Joining\n" +
+            "(3 players in total)";
+
+    @Test
+    public void parsesAllRows() {
+        List<Player> players = PlayersParser.parse(RESPONSE);
+        assertEquals(3, players.size());
+
+        Player verified = players.get(0);
+        assertEquals(0, verified.getSlot());
+        assertEquals("127.0.0.1", verified.getAddress());
+        assertEquals(2304, verified.getPort());
+        assertEquals(47, verified.getPing());
+        assertEquals("0123456789abcdef0123456789abcdef", verified.getGuid());
+        assertTrue(verified.isVerified());
+        assertEquals("Verified Name", verified.getName());
+        assertFalse(verified.isLobby());
+
+        Player lobby = players.get(1);
+        assertEquals("fedcba9876543210fedcba9876543210", lobby.getGuid());
+        assertFalse(lobby.isVerified());
+        assertEquals("Waiting", lobby.getName());
+        assertTrue(lobby.isLobby());
+    }
+
+    @Test
+    public void parsesPlayerWithoutGuid() {
+        Player joining = PlayersParser.parseLine("2   127.0.0.1:2308     -1   -   Joining");
+        assertEquals(2, joining.getSlot());
+        assertEquals(-1, joining.getPing());
+        assertEquals("-", joining.getGuid());
+        assertFalse(joining.isVerified());
+        assertEquals("Joining", joining.getName());
+        assertFalse(joining.isLobby());
+    }
+
+    @Test
+    public void ignoresHeaderAndFooter() {
+        assertNull(PlayersParser.parseLine("Players on server:"));
+        assertNull(PlayersParser.parseLine("[#] [IP Address]:[Port] [Ping] [GUID] [Name]"));
+        assertNull(PlayersParser.parseLine("--------------------------------------------------"));
+        assertNull(PlayersParser.parseLine("(3 players in total)"));
+    }
+}
@@ -0,0 +1,108 @@
+package arma.ber4j.state;
+
+import arma.ber4j.BattlEyeClient;
+import arma.ber4j.sim.CommandHandler;
+import arma.ber4j.sim.ServerSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PlayerRegistryTest {
+    private static final String GUID = "0123456789abcdef0123456789abcdef";
+
+    private ServerSimulator simulator;
+    private BattlEyeClient client;
+    private PlayerRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new ServerSimulator("password");
+        simulator.setCommandHandler(new CommandHandler() {
+            @Override
+            public String execute(String command) {
+                return command.equals("players") ? "Players on server:\n" +
+                        "[#] [IP Address]:[Port] [Ping] [GUID] [Name]\n" +
+                        "--------------------------------------------------\n" +
+                        "0   127.0.0.1:2304     47   " + GUID + "(OK) Verified\n" +
+                        "1   127.0.0.1:2306     -1   -   Joining\n" +
+                        "(2 players in total)" : "";
+            }
+        });
+        simulator.start();
+        client = new BattlEyeClient(simulator.getAddress());
+        registry = new PlayerRegistry(client);
+        registry.attach();
+        client.connect("password");
+        await(new Condition() {
+            @Override
+            public boolean isTrue() {
+                return registry.isSynchronized();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        registry.detach();
+        client.disconnect();
+        simulator.close();
+    }
+
+    @Test
+    public void keepsPlayersWithoutGuid() {
+        assertEquals(2, registry.getPlayerCount());
+        assertEquals("-", registry.getPlayer(1).getGuid());
+        assertEquals("Verified", registry.getPlayerByGuid(GUID).getName());
+    }
+
+    @Test
+    public void followsPlayerMessages() throws Exception {
+        simulator.broadcast("Player #1 Joining - BE GUID: FEDCBA9876543210FEDCBA9876543210");
+        simulator.broadcast("Verified GUID (fedcba9876543210fedcba9876543210) of player #1 Joining");
+        simulator.broadcast("Player #2 Late (127.0.0.2:2304) connected");
+        simulator.broadcast("Player #0 Verified disconnected");
+        await(new Condition() {
+            @Override
+            public boolean isTrue() {
+                return registry.getPlayer(0) == null && registry.getPlayer(2) != null
+                        && registry.getPlayer(1).isVerified();
+            }
+        });
+
+        assertEquals("fedcba9876543210fedcba9876543210", registry.getPlayer(1).getGuid());
+        assertEquals("127.0.0.2", registry.getPlayer(2).getAddress());
+        assertNull(registry.getPlayerByGuid(GUID));
+        assertTrue(registry.isSynchronized());
+        assertEquals(1, registry.getSyncCount());
+    }
+
+    @Test
+    public void requestsPlayerListOnInconsistentMessage() throws Exception {
+        simulator.broadcast("Verified GUID (fedcba9876543210fedcba9876543210) of player #5 Unknown");
+        await(new Condition() {
+            @Override
+            public boolean isTrue() {
+                return registry.getSyncCount() == 2 && registry.isSynchronized();
+            }
+        });
+        assertEquals(2, registry.getPlayerCount());
+    }
+
+    static void await(Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.isTrue()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("condition not met within 5 s");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    interface Condition {
+        boolean isTrue();
+    }
+}
@@ -0,0 +1,29 @@
+#!/bin/sh
+# Compiles the library and the tests and runs them, arguments select test classes, e.g.
+#   test/run.sh                                    all tests
+#   test/run.sh arma.ber4j.response.PlayersParserTest
+# The JUnit jars are downloaded from Maven Central into lib/junit on the first run.
+set -e
+cd "$(dirname "$0")/.."
+
+LIB=lib/junit
+OUT=out/test
+
+fetch() {
+    if [ ! -f "$LIB/$2" ]; then
+        curl -sSfL -o "$LIB/$2" "https://repo1.maven.org/maven2/$1/$2"
+    fi
+}
+
+mkdir -p "$LIB"
+fetch junit/junit/4.13.2 junit-4.13.2.jar
+fetch org/hamcrest/hamcrest-core/1.3 hamcrest-core-1.3.jar
+
+CLASSPATH="lib/slf4j/*:$LIB/*"
+rm -rf "$OUT"
+mkdir -p "$OUT"
+javac -encoding UTF-8 -cp "$CLASSPATH" -d "$OUT" $(find src test -name '*.java')
+if [ $# -eq 0 ]; then
+    set -- $(cd test && find . -name '*Test.java' | sed -e 's|^\./||' -e 's|\.java$||' -e 's|/|.|g')
+fi
+java -cp "$OUT:$CLASSPATH" org.junit.runner.JUnitCore "$@"